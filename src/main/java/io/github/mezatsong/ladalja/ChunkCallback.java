@@ -0,0 +1,34 @@
+/**
+ * 
+ */
+package io.github.mezatsong.ladalja;
+
+import java.util.List;
+
+/**
+ * The work to run on each chunk of rows given by 
+ * {@link io.github.mezatsong.ladalja.query.QueryBuilder#chunk(int, ChunkCallback)} or 
+ * {@link io.github.mezatsong.ladalja.query.QueryBuilder#chunkById(int, ChunkCallback)}.<br>
+ * For example
+ * <pre>
+ * ModelRepository.chunkById(User.class, 500, new ChunkCallback&lt;User&gt;() {
+ *     public boolean handle(List&lt;User&gt; users) {
+ *         for (User user : users) {
+ *             ...
+ *         }
+ *         return true;
+ *     }
+ * });
+ * </pre>
+ * @param <E> the type of the rows
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ */
+public interface ChunkCallback<E> {
+
+	/**
+	 * Process one chunk of rows
+	 * @param rows the rows of the chunk, never empty
+	 * @return false to stop the iteration, true to get the next chunk
+	 */
+	boolean handle(List<E> rows);
+}
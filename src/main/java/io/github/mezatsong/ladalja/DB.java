@@ -5,7 +5,6 @@ package io.github.mezatsong.ladalja;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -14,9 +13,15 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import io.github.mezatsong.ladalja.dialect.Dialect;
+import io.github.mezatsong.ladalja.pool.ConnectionPool;
+import io.github.mezatsong.ladalja.pool.PooledConnection;
+import io.github.mezatsong.ladalja.pool.ReleasingResultSet;
 import io.github.mezatsong.ladalja.query.QueryBuilder;
 import io.github.mezatsong.ladalja.query.QueryListener;
+import io.github.mezatsong.ladalja.query.ResultCache;
 
 /**
  * Ladalja makes interacting with databases extremely simple across a variety of database backends using either raw SQL, the fluent query builder, and the model.<br>
@@ -37,6 +42,19 @@ import io.github.mezatsong.ladalja.query.QueryListener;
  * <p>
  * LADALJA_JDBC_URL=jdbc_url<br>
  * </p>
+ * Connections are taken from a pool, which can be tuned with these optional properties:
+ * <p>
+ *	LADALJA_POOL_MIN_SIZE=connections_kept_open (default 1)<br>
+ *	LADALJA_POOL_MAX_SIZE=maximal_connections (default 10, always 1 for an in-memory SQLite database)<br>
+ *	LADALJA_POOL_TIMEOUT=milliseconds_to_wait_for_a_free_connection (default 30000)<br>
+ *	LADALJA_POOL_IDLE_TIMEOUT=milliseconds_before_closing_an_idle_connection (default 600000)<br>
+ *	LADALJA_POOL_VALIDATION_TIMEOUT=seconds_to_validate_a_connection_on_borrow (default 5, 0 to disable)<br>
+ *	LADALJA_STATEMENT_CACHE_SIZE=prepared_statements_cached_per_connection (default 64, 0 to disable)<br>
+ *	LADALJA_MAX_IN_SIZE=values_bound_in_one_where_in_list (default 500, longer lists are queried by chunks)<br>
+ *	LADALJA_POOL_LEAK_TIMEOUT=milliseconds_before_closing_an_unused_result_set_when_the_pool_runs_dry (default 500, 0 to disable)<br>
+ * </p>
+ * The SQL syntax and the features used, like generated keys or batches rewriting, are chosen from the database
+ * the first connection is made to, see {@link io.github.mezatsong.ladalja.dialect.Dialect}.<br>
  * You can also do without the configuration file by specifying these properties on system properties, using java.lang.System.setProperty method
  * All those properties must be present.<br>
  * In order to indicate these properties, 
@@ -47,8 +65,10 @@ import io.github.mezatsong.ladalja.query.QueryListener;
  * after that you can use DB for anythings, for example if you want a raw select SQL query do like
  * DB.select("select * from users"); and it will return you a java.sql.ResultSet containing your query result.
  * There is method for any type of Query select,insert,update and SQL like ALTER TABLE for this last use {@link io.github.mezatsong.ladalja.DB#statement(String)} method
- * In all request, the transaction process is implemented, but you can if you want do it by yourself using 
- * {@link io.github.mezatsong.ladalja.DB#beginTransaction()} , {@link io.github.mezatsong.ladalja.DB#commit()} and {@link io.github.mezatsong.ladalja.DB#rollBack()} methods
+ * Each query runs atomically on its own, to group several queries in one transaction use 
+ * {@link io.github.mezatsong.ladalja.DB#transaction(TransactionCallback)}, or do it by yourself using 
+ * {@link io.github.mezatsong.ladalja.DB#beginTransaction()} , {@link io.github.mezatsong.ladalja.DB#commit()} and {@link io.github.mezatsong.ladalja.DB#rollBack()} methods.
+ * Transactions can be nested, inner ones use savepoints.
  * <p>
  * If you want to start request using QueryBuilder, you just have to use {@link io.github.mezatsong.ladalja.DB#table(String)} method where the String 
  * parameter is the name of the table on which request will proceed, a new instance of {@link io.github.mezatsong.ladalja.query.QueryBuilder} will be returned.
@@ -60,14 +80,16 @@ import io.github.mezatsong.ladalja.query.QueryListener;
  */
 public final class DB {
 
-	private static Connection connect;
-	private static List<QueryListener> queryListeners;
+	private static volatile ConnectionPool pool;
+	private static final List<QueryListener> queryListeners = new CopyOnWriteArrayList<QueryListener>();
 	public static String CONFIG_FILE;
 
-	private static boolean isInsertGetIdSupported = true;
+	private static volatile Dialect dialect;
 	
 	private static boolean transactional = true;
 	
+	private static volatile int maxInSize = QueryBuilder.DEFAULT_MAX_IN_SIZE;
+	
 	private DB(){}
 	
 	
@@ -84,86 +106,161 @@ public final class DB {
 	
 	
 	/**
-	 * Provide the connection object to database, using the configuration file properties
-	 * @return a java.sql.Connection instance which is used for querying, new instance will be loaded only the first time you call it or at the first querying
+	 * Provide the connection object to database, using the configuration file properties.
+	 * The connection is taken from the pool and stays bound to the current thread until {@link #closeConnection()} is called,
+	 * all queries made by this thread in the meantime will use it.
+	 * @return a java.sql.Connection instance which is used for querying, the pool will be loaded only the first time you call it or at the first querying
 	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is error in configuration file while loading
 	 */
 	public static Connection connection() throws LadaljaException
 	{
-		if(connect == null)
-		{
-			
-			Properties properties = new Properties();
-			
-			String serverTimezone = Calendar.getInstance().getTimeZone().getID();
-			
-			try {
-				properties.load( ClassLoader.getSystemResourceAsStream(CONFIG_FILE) );
-			} catch (NullPointerException e) {
-				properties = System.getProperties();
-			} catch (IOException e) {
-				throw new LadaljaException("Can't load config file: " + CONFIG_FILE, e );
-			}
+		return pool().pin().getConnection();
+	}
 
-			String connectionType = properties.getProperty( "LADALJA_CONNECTION", "sqlite" );
-			String driver = properties.getProperty( "LADALJA_DRIVER" );
-
-			String host = properties.getProperty( "LADALJA_HOST" );
-			String port = properties.getProperty( "LADALJA_PORT" );
-			String database = properties.getProperty( "LADALJA_DATABASE" );
-			String username = properties.getProperty( "LADALJA_USERNAME" );
-			String password = properties.getProperty( "LADALJA_PASSWORD" );
-			String jdbcUrl = properties.getProperty( "LADALJA_JDBC_URL", 
-				"jdbc:" + connectionType + "://" + host + ":" + port + "/" + database + "?serverTimezone=" + serverTimezone 
-			);
-			boolean isSQLite = connectionType.toLowerCase().equals("sqlite");
-			
-			 
-			if (isSQLite) {
-				disableTransaction(); // SQLite does not support transaction
-				isInsertGetIdSupported = false; // SQLite does not support insertGetId
-				final String url = (jdbcUrl != null && !jdbcUrl.isEmpty()) ? jdbcUrl : "jdbc:sqlite:"+database;
-				try {
-					connect = DriverManager.getConnection(url);
-				} catch (SQLException e) {
-					throw new LadaljaException( e );
+
+	/**
+	 * Provide the connection pool used for querying, creating it with the configuration file properties if needed
+	 * @return the connection pool
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is error in configuration file while loading
+	 */
+	public static ConnectionPool pool() throws LadaljaException
+	{
+		ConnectionPool current = pool;
+		if (current == null) {
+			synchronized (DB.class) {
+				current = pool;
+				if (current == null) {
+					current = createPool();
+					dialect = detectDialect(current);
+					pool = current;
 				}
-			} else {
-			
+			}
+		}
+		return current;
+	}
+
+
+	private static ConnectionPool createPool() throws LadaljaException
+	{
+		Properties properties = new Properties();
+		
+		String serverTimezone = Calendar.getInstance().getTimeZone().getID();
+		
+		try {
+			properties.load( ClassLoader.getSystemResourceAsStream(CONFIG_FILE) );
+		} catch (NullPointerException e) {
+			properties = System.getProperties();
+		} catch (IOException e) {
+			throw new LadaljaException("Can't load config file: " + CONFIG_FILE, e );
+		}
+
+		String connectionType = properties.getProperty( "LADALJA_CONNECTION", "sqlite" );
+		String driver = properties.getProperty( "LADALJA_DRIVER" );
+
+		String host = properties.getProperty( "LADALJA_HOST" );
+		String port = properties.getProperty( "LADALJA_PORT" );
+		String database = properties.getProperty( "LADALJA_DATABASE" );
+		String username = properties.getProperty( "LADALJA_USERNAME" );
+		String password = properties.getProperty( "LADALJA_PASSWORD" );
+		String jdbcUrl = properties.getProperty( "LADALJA_JDBC_URL" );
+		if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+			jdbcUrl = connectionType.equalsIgnoreCase("sqlite") 
+				? "jdbc:sqlite:" + (database == null ? "" : database)
+				: "jdbc:" + connectionType + "://" + host + ":" + port + "/" + database + "?serverTimezone=" + serverTimezone;
+		}
+		// the features of the database are given by its dialect, once connected
+		boolean isSQLite = jdbcUrl.startsWith("jdbc:sqlite:");
+
+		int minSize = intProperty(properties, "LADALJA_POOL_MIN_SIZE", 1);
+		int maxSize = intProperty(properties, "LADALJA_POOL_MAX_SIZE", 10);
+		long timeout = intProperty(properties, "LADALJA_POOL_TIMEOUT", 30000);
+		long idleTimeout = intProperty(properties, "LADALJA_POOL_IDLE_TIMEOUT", 600000);
+		int validationTimeout = intProperty(properties, "LADALJA_POOL_VALIDATION_TIMEOUT", 5);
+		int statementCacheSize = intProperty(properties, "LADALJA_STATEMENT_CACHE_SIZE", ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE);
+		long leakTimeout = intProperty(properties, "LADALJA_POOL_LEAK_TIMEOUT", (int) ConnectionPool.DEFAULT_LEAK_TIMEOUT);
+		setMaxInSize(intProperty(properties, "LADALJA_MAX_IN_SIZE", maxInSize));
+		
+		if (isSQLite) {
+			if (jdbcUrl.equals("jdbc:sqlite:") || jdbcUrl.contains(":memory:")) {
+				// each connection to an in-memory database see its own database
+				minSize = Math.min(minSize, 1);
+				maxSize = 1;
+			}
+			return new ConnectionPool(jdbcUrl, null, null, minSize, maxSize, timeout, idleTimeout, validationTimeout, statementCacheSize, leakTimeout);
+		} else {
+			if (driver != null) {
 				try {
 					Class.forName( driver );
-					connect = DriverManager.getConnection(jdbcUrl, username, password);
 				} catch ( ClassNotFoundException e ) {
 					throw new LadaljaException("Can't find driver: " + driver, e );
 				}
-				 catch (SQLException e) {
-					throw new LadaljaException(e);
-				}
 			}
+			return new ConnectionPool(Dialect.tuneUrl(jdbcUrl), username, password, minSize, maxSize, timeout, idleTimeout, validationTimeout, statementCacheSize, leakTimeout);
+		}
+	}
+
+
+	private static Dialect detectDialect(ConnectionPool pool) throws LadaljaException
+	{
+		PooledConnection pooled = pool.acquire();
+		try {
+			return Dialect.of(pooled.getConnection().getMetaData());
+		} catch (SQLException e) {
+			throw new LadaljaException("Can't detect the database dialect", e);
+		} finally {
+			pool.release(pooled);
+		}
+	}
+
+
+	private static int intProperty(Properties properties, String key, int defaultValue) throws LadaljaException
+	{
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new LadaljaException("Invalid value for " + key + ": " + value, e);
 		}
-		
-		return connect;
 	}
 
 
 	/**
-	 * Close the connection object to database if exist
+	 * Give the connection bound to the current thread by {@link #connection()} back to the pool
 	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is error while closing the connection
 	 */
 	public static void closeConnection() throws LadaljaException
 	{
-		try {
-			if (connect != null && connect.isClosed()) {
-				connect.close();
-			}
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
+		ConnectionPool current = pool;
+		if (current != null) {
+			current.unpin();
+		}
+	}
+
+
+	/**
+	 * Close every connection of the pool, the next query will create a new pool
+	 */
+	public static void closePool()
+	{
+		ConnectionPool current;
+		synchronized (DB.class) {
+			current = pool;
+			pool = null;
+		}
+		if (current != null) {
+			current.close();
 		}
 	}
 
 	
 	/**
 	 * Execute a SELECTs SQL query type, using prepared statement.
+	 * The connection stays leased until the ResultSet is read to its end or closed, so close it when you stop reading before,
+	 * preferably in a try-with-resources block. A ResultSet left unused holds its connection until the pool runs dry,
+	 * then the pool closes it, see LADALJA_POOL_LEAK_TIMEOUT.
 	 * @param query the query, eventually with parameters
 	 * @param params list of query parameters
 	 * @return ResultSet the result of query
@@ -177,8 +274,54 @@ public final class DB {
 		}
 		return (ResultSet) execute(query, params);
 	}
-	
-	
+
+
+	/**
+	 * Execute a SELECTs SQL query type with a forward only, read only statement,
+	 * asking the driver to fetch the rows by <code>fetchSize</code> instead of loading them all.
+	 * The statement is not taken from the statement cache, it is closed and the connection released
+	 * when the ResultSet is exhausted or closed.
+	 * Note that MySQL Connector/J only streams rows with a fetch size of Integer.MIN_VALUE,
+	 * or with <code>useCursorFetch=true</code> in the JDBC url.
+	 * @param query the query, eventually with parameters
+	 * @param fetchSize number of rows the driver should fetch per round-trip, 0 let the driver decide
+	 * @param params list of query parameters
+	 * @return ResultSet the result of query, read lazily
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if query is not SELECT type
+	 */
+	public static ResultSet cursor(String query, int fetchSize, Object... params) throws LadaljaException
+	{
+		if(!query.toLowerCase().contains("select")){
+			throw new LadaljaException("using non select sql query type in cursor method");
+		}
+		final ConnectionPool pool = pool();
+		final PooledConnection pooled = pool.acquire();
+		PreparedStatement statement = null;
+		try {
+			statement = pooled.getConnection().prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(fetchSize);
+			bind(statement, params);
+
+			listenQuery(query);
+			ResultSet result = statement.executeQuery();
+			listenResultSet(query, result);
+
+			final PreparedStatement resultStatement = statement;
+			return ReleasingResultSet.wrap(result, pooled, new Runnable() {
+				@Override
+				public void run() {
+					close(resultStatement);
+					pool.release(pooled);
+				}
+			});
+		} catch (SQLException e) {
+			close(statement);
+			pool.release(pooled);
+			throw new LadaljaException(e);
+		}
+	}
+
+
 	/**
 	 * Execute an INSERTs SQL query type.
 	 * @param query the query, eventually with parameters
@@ -196,56 +339,109 @@ public final class DB {
 	
 	
 	/**
-	 * Insert a new row an return the ID of the new inserted row through non prepared statement
+	 * Insert a new row an return the ID of the new inserted row
 	 * The column named id must be present in the table
 	 * @param query the query, eventually with parameters
 	 * @return ID of new inserted row
 	 * @throws io.github.mezatsong.ladalja.LadaljaException if query is not SELECT type or id column doesn't exist
 	 */
 	public static Object insertGetId(String query) throws LadaljaException
+	{
+		return insertGetId(query, new Object[0]);
+	}
+	
+	
+	/**
+	 * Insert a new row with a prepared statement and return the key generated for it, in a single round trip.
+	 * @see io.github.mezatsong.ladalja.dialect.Dialect#supportsGeneratedKeys()
+	 * @param query the INSERT query, with parameters
+	 * @param params list of query parameters
+	 * @return the generated key of the new row
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if query is not INSERT type, or no row was inserted
+	 */
+	public static Object insertGetId(String query, Object... params) throws LadaljaException
 	{
 		if(!query.toLowerCase().contains("insert")){
 			throw new LadaljaException("using non insert sql query type in insertGetId method");
 		}
-		Statement statement = null;
+		ConnectionPool pool = pool();
+		PooledConnection pooled = pool.acquire();
+		PreparedStatement statement = null;
 		try{
-			statement = connection().createStatement();
-			boolean began = false;
-			if(transactional){
-				statement.execute("BEGIN;");
-				began = true;
-			}
+			statement = pooled.getStatementCache().prepare(query, Statement.RETURN_GENERATED_KEYS);
+			
+			bind(statement, params);
 			
 			listenQuery(query);
 			
-			int statut = statement.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
+			int statut = statement.executeUpdate();
+			ResultCache.invalidateQuery(query);
 
 			listenUpdatedRows(query, statut);
 			
-			Object result = 0;
-			ResultSet rs = statement.getGeneratedKeys();
-			listenResultSet(query, rs);
-
-			if (statut > 0 && rs.next()) {
-				result = rs.getObject(1);
-			} else {
+			List<Object> keys = new ArrayList<Object>(1);
+			readKeys(statement, keys);
+			if (statut < 1 || keys.isEmpty()) {
 				throw new LadaljaException("Insertion failled, please check your database constraints");
 			}
-					
-			if (began) {
-				statement.execute("COMMIT;");
-			}
 			
-			return result;
+			return keys.get(0);
 			
 		}catch(SQLException e){
-			if(statement != null)
-				try{
-					statement.execute("ROLLBACK;");
-				}catch(SQLException e1){}
 			throw new LadaljaException(e);
+		}finally{
+			pooled.getStatementCache().release(statement);
+			pool.release(pooled);
+		}
+	}
+	
+	
+	/**
+	 * Execute an INSERT query ending with a <code>returning</code> clause and give the inserted rows, in a single round trip.
+	 * @see io.github.mezatsong.ladalja.dialect.Dialect#supportsReturning()
+	 * @param query the INSERT query, with parameters
+	 * @param params list of query parameters
+	 * @return ResultSet the rows given by the returning clause
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if query is not INSERT type or has no returning clause
+	 */
+	public static ResultSet insertReturning(String query, Object... params) throws LadaljaException
+	{
+		String lowerCase = query.toLowerCase();
+		if(!lowerCase.contains("insert") || !lowerCase.contains("returning")){
+			throw new LadaljaException("using non insert returning sql query type in insertReturning method");
+		}
+		final ConnectionPool pool = pool();
+		final PooledConnection pooled = pool.acquire();
+		boolean released = true;
+		PreparedStatement statement = null;
+		try {
+			statement = pooled.getStatementCache().prepare(query);
+			
+			bind(statement, params);
+			
+			listenQuery(query);
+			
+			ResultSet result = statement.executeQuery();
+			ResultCache.invalidateQuery(query);
+			listenResultSet(query, result);
+			// the connection stays leased until the rows have been read
+			final PreparedStatement resultStatement = statement;
+			released = false;
+			return ReleasingResultSet.wrap(result, pooled, new Runnable() {
+				@Override
+				public void run() {
+					pooled.getStatementCache().release(resultStatement);
+					pool.release(pooled);
+				}
+			});
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		} finally {
+			if (released) {
+				pooled.getStatementCache().release(statement);
+				pool.release(pooled);
+			}
 		}
-		
 	}
 	
 	
@@ -265,6 +461,24 @@ public final class DB {
 	}
 	
 	
+	/**
+	 * Execute an upsert: an INSERT updating the rows which already exist, or a MERGE SQL query type.
+	 * @see io.github.mezatsong.ladalja.dialect.Dialect#upsertQuery(String, List, int, List, List)
+	 * @param query the query, eventually with parameters
+	 * @param params list of query parameters
+	 * @return number of affected rows
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if query is not INSERT or MERGE type
+	 */
+	public static int upsert(String query, Object... params) throws LadaljaException
+	{
+		String lowerCase = query.toLowerCase();
+		if(!lowerCase.contains("insert") && !lowerCase.contains("merge")){
+			throw new LadaljaException("using non insert sql query type in upsert method");
+		}
+		return (Integer) execute(query, params);
+	}
+	
+	
 	/**
 	 * Execute a DELETEs SQL query type.
 	 * @param query the query, eventually with parameters
@@ -280,6 +494,181 @@ public final class DB {
 		return (Integer) execute(query,params);
 	}
 	
+	/**
+	 * Execute the same INSERT, UPDATE or DELETE query for many parameter sets in one JDBC batch.
+	 * Unless a transaction is already running in this thread, the whole batch runs in its own transaction.
+	 * @param query the query, with parameters
+	 * @param paramsList one array of query parameters per execution
+	 * @return number of affected rows for each parameter set, as given by java.sql.Statement#executeBatch()
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if there are error in your query, then nothing is written
+	 */
+	public static int[] batch(String query, List<Object[]> paramsList) throws LadaljaException
+	{
+		if (paramsList == null || paramsList.isEmpty()) {
+			return new int[0];
+		}
+		
+		ConnectionPool pool = pool();
+		PooledConnection pooled = pool.acquire();
+		boolean began = false;
+		PreparedStatement statement = null;
+		try {
+			statement = pooled.getStatementCache().prepare(query);
+			for (Object[] params : paramsList) {
+				bind(statement, params);
+				statement.addBatch();
+			}
+			
+			listenQuery(query);
+			
+			if (!pooled.isInTransaction()) {
+				pooled.beginTransaction();
+				began = true;
+			}
+			int[] counts = statement.executeBatch();
+			ResultCache.invalidateQuery(query);
+			if (began) {
+				began = false;
+				pooled.commit();
+			}
+			
+			int rows = 0;
+			for (int count : counts) {
+				if (count > 0) {
+					rows += count;
+				}
+			}
+			listenUpdatedRows(query, rows);
+			
+			return counts;
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		} finally {
+			if (began) {
+				try {
+					pooled.rollBack();
+				} catch (LadaljaException e) {}
+			}
+			if (statement != null) {
+				try {
+					statement.clearBatch();
+				} catch (SQLException e) {}
+			}
+			if (!pooled.isInTransaction()) {
+				ResultCache.transactionEnded();
+			}
+			pooled.getStatementCache().release(statement);
+			pool.release(pooled);
+		}
+	}
+	
+	
+	/**
+	 * Execute the same INSERT query for many parameter sets and return the generated keys, in the order of the parameter sets.
+	 * When the driver support it, a single JDBC batch is used, otherwise each row is inserted with the same prepared statement. 
+	 * Unless a transaction is already running in this thread, all rows are inserted in one transaction.
+	 * @param query the INSERT query, with parameters
+	 * @param paramsList one array of query parameters per row
+	 * @return the generated key of each row
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if query is not INSERT type, there are error in your query, 
+	 * or the driver did not give a key for each row; then nothing is written
+	 */
+	public static List<Object> batchGetIds(String query, List<Object[]> paramsList) throws LadaljaException
+	{
+		if(!query.toLowerCase().contains("insert")){
+			throw new LadaljaException("using non insert sql query type in batchGetIds method");
+		}
+		List<Object> keys = new ArrayList<Object>();
+		if (paramsList == null || paramsList.isEmpty()) {
+			return keys;
+		}
+		
+		ConnectionPool pool = pool();
+		PooledConnection pooled = pool.acquire();
+		boolean began = false;
+		PreparedStatement statement = null;
+		try {
+			statement = pooled.getStatementCache().prepare(query, Statement.RETURN_GENERATED_KEYS);
+			
+			listenQuery(query);
+			
+			if (!pooled.isInTransaction()) {
+				pooled.beginTransaction();
+				began = true;
+			}
+			
+			if (dialect.supportsBatchGeneratedKeys()) {
+				for (Object[] params : paramsList) {
+					bind(statement, params);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				readKeys(statement, keys);
+			} else {
+				for (Object[] params : paramsList) {
+					bind(statement, params);
+					statement.executeUpdate();
+					readKeys(statement, keys);
+				}
+			}
+			
+			ResultCache.invalidateQuery(query);
+			if (keys.size() != paramsList.size()) {
+				throw new LadaljaException("The driver gave " + keys.size() + " generated keys for " + paramsList.size() + " inserted rows");
+			}
+			
+			if (began) {
+				began = false;
+				pooled.commit();
+			}
+			listenUpdatedRows(query, keys.size());
+			
+			return keys;
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		} finally {
+			if (began) {
+				try {
+					pooled.rollBack();
+				} catch (LadaljaException e) {}
+			}
+			if (statement != null) {
+				try {
+					statement.clearBatch();
+				} catch (SQLException e) {}
+			}
+			if (!pooled.isInTransaction()) {
+				ResultCache.transactionEnded();
+			}
+			pooled.getStatementCache().release(statement);
+			pool.release(pooled);
+		}
+	}
+	
+	
+	private static void bind(PreparedStatement statement, Object[] params) throws SQLException
+	{
+		if (params != null) {
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+		}
+	}
+	
+	
+	private static void readKeys(Statement statement, List<Object> keys) throws SQLException
+	{
+		ResultSet generated = statement.getGeneratedKeys();
+		try {
+			while (generated.next()) {
+				keys.add(generated.getObject(1));
+			}
+		} finally {
+			generated.close();
+		}
+	}
+	
+	
 	/**
 	 * Execute a simple query, like ALTER TABLE, but don't use it for CRUDs query type.
 	 * @param query the query to be executed
@@ -288,26 +677,18 @@ public final class DB {
 	public static void statement(String query) throws LadaljaException
 	{
 		listenQuery(query);
+		ConnectionPool pool = pool();
+		PooledConnection pooled = pool.acquire();
 		Statement statement = null;
 		try{
-			statement = connection().createStatement();
-			boolean began = false;
-			if(transactional){
-				statement.execute("BEGIN;");
-				began = true;
-			}
-			
+			statement = pooled.getConnection().createStatement();
 			statement.execute(query);
-			
-			if(began){
-				statement.execute("COMMIT;");
-			}
+			ResultCache.invalidateQuery(query);
 		}catch(SQLException e){
-			if(statement != null)
-				try{
-					statement.execute("ROLLBACK;");
-				}catch(SQLException e1){}
 			throw new LadaljaException(e);
+		}finally{
+			close(statement);
+			pool.release(pooled);
 		}
 	}
 	
@@ -318,59 +699,150 @@ public final class DB {
 	 */
 	public static void register(QueryListener queryListener)
 	{
-		if(queryListeners == null){
-			queryListeners = new ArrayList<QueryListener>();
-		}
 		queryListeners.add(queryListener);
 	}
 	
 	
 	/**
-	 * Begin new transaction manually
+	 * Unregister a {@link io.github.mezatsong.ladalja.query.QueryListener} registered with {@link #register(QueryListener)}
+	 * @param queryListener {@link io.github.mezatsong.ladalja.query.QueryListener} to unregister
 	 */
-	public static void beginTransaction()
+	public static void unregister(QueryListener queryListener)
 	{
-		try{
-			Statement statement = connection().createStatement();
-			statement.execute("BEGIN;");
-		}catch(SQLException e){
-			
+		queryListeners.remove(queryListener);
+	}
+	
+	
+	/**
+	 * Run the callback inside a transaction and return its result.<br>
+	 * The connection is bound to the current thread until the end of the transaction, 
+	 * so all queries made by the callback, through DB, QueryBuilder or models, are part of it.
+	 * The transaction is committed when the callback returns and rolled back if it throws.
+	 * When called inside another transaction, a savepoint is used: only the changes of the callback are rolled back on failure.
+	 * @param callback the work to do in the transaction
+	 * @return the value returned by the callback
+	 * @throws io.github.mezatsong.ladalja.LadaljaException wrapping the checked exception thrown by the callback, 
+	 * runtime exceptions are thrown as they are
+	 */
+	public static <R> R transaction(TransactionCallback<R> callback) throws LadaljaException
+	{
+		ConnectionPool pool = pool();
+		PooledConnection pooled = pool.acquire();
+		try {
+			pooled.beginTransaction();
+			R result;
+			try {
+				result = callback.run();
+			} catch (Throwable t) {
+				try {
+					pooled.rollBack();
+				} catch (LadaljaException e) {}
+				if (t instanceof RuntimeException) {
+					throw (RuntimeException) t;
+				}
+				if (t instanceof Error) {
+					throw (Error) t;
+				}
+				throw new LadaljaException(t);
+			}
+			pooled.commit();
+			return result;
+		} finally {
+			if (!pooled.isInTransaction()) {
+				ResultCache.transactionEnded();
+				EntityCache.transactionEnded();
+			}
+			pool.release(pooled);
 		}
 	}
 	
 	
 	/**
-	 * Roll back transaction manually
+	 * Begin new transaction manually, it must be ended by {@link #commit()} or {@link #rollBack()} in the same thread.
+	 * If a transaction is already running, a savepoint is set.
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the transaction can't be started
 	 */
-	public static void rollBack()
+	public static void beginTransaction() throws LadaljaException
 	{
-		try{
-			Statement statement = connection().createStatement();
-			statement.execute("ROLLBACK;");
-		}catch(SQLException e){
-			
+		ConnectionPool pool = pool();
+		PooledConnection pooled = pool.acquire();
+		try {
+			pooled.beginTransaction();
+		} catch (LadaljaException e) {
+			pool.release(pooled);
+			throw e;
 		}
 	}
 	
 	
 	/**
-	 * Commit transaction manually
+	 * Roll back manually the transaction started with {@link #beginTransaction()}
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is no transaction or the roll back failed
 	 */
-	public static void commit()
+	public static void rollBack() throws LadaljaException
 	{
-		try{
-			Statement statement = connection().createStatement();
-			statement.execute("COMMIT;");
-		}catch(SQLException e){
-			
+		ConnectionPool pool = pool();
+		PooledConnection pooled = currentTransaction(pool);
+		try {
+			pooled.rollBack();
+		} finally {
+			if (!pooled.isInTransaction()) {
+				ResultCache.transactionEnded();
+				EntityCache.transactionEnded();
+			}
+			pool.release(pooled);
 		}
 	}
 	
 	
+	/**
+	 * Commit manually the transaction started with {@link #beginTransaction()}
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is no transaction or the commit failed
+	 */
+	public static void commit() throws LadaljaException
+	{
+		ConnectionPool pool = pool();
+		PooledConnection pooled = currentTransaction(pool);
+		try {
+			pooled.commit();
+		} finally {
+			if (!pooled.isInTransaction()) {
+				ResultCache.transactionEnded();
+				EntityCache.transactionEnded();
+			}
+			pool.release(pooled);
+		}
+	}
+	
+	
+	/**
+	 * Check if a transaction is running in the current thread
+	 * @return true if this thread is inside a transaction
+	 */
+	public static boolean inTransaction()
+	{
+		ConnectionPool current = pool;
+		PooledConnection pooled = current == null ? null : current.current();
+		return pooled != null && pooled.isInTransaction();
+	}
+	
+	
+	private static PooledConnection currentTransaction(ConnectionPool pool) throws LadaljaException
+	{
+		PooledConnection pooled = pool.current();
+		if (pooled == null || !pooled.isInTransaction()) {
+			throw new LadaljaException("There is no transaction running in this thread");
+		}
+		return pooled;
+	}
+	
+	
 	/**
 	 * Check if transaction mode is enabled
 	 * @return true if enabled
+	 * @deprecated each query is atomic on its own, use {@link #transaction(TransactionCallback)} to group queries
 	 */
+	@Deprecated
 	public static boolean isTransactional()
 	{
 		return transactional;
@@ -383,12 +855,58 @@ public final class DB {
 	 */
 	public static boolean isInsertGetIdSupported()
 	{
-		return isInsertGetIdSupported;
+		return dialect().supportsGeneratedKeys();
+	}
+
+	/**
+	 * Check if the driver give the generated keys of every row of a batch, see {@link #batchGetIds(String, List)}
+	 * @return true if supported
+	 */
+	public static boolean isBatchGeneratedKeysSupported()
+	{
+		return dialect().supportsBatchGeneratedKeys();
+	}
+
+	/**
+	 * Give the dialect of the database, detected from the first connection of the pool
+	 * @return the dialect
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is error in configuration file while loading
+	 */
+	public static Dialect dialect() throws LadaljaException
+	{
+		pool(); // the dialect is known once the pool is created
+		return dialect;
+	}
+
+	/**
+	 * Give the maximal number of values bound in one whereIn list, see {@link io.github.mezatsong.ladalja.query.QueryBuilder#whereIn(String, Object[])}
+	 * @return the maximal number of values, LADALJA_MAX_IN_SIZE in the configuration
+	 */
+	public static int getMaxInSize()
+	{
+		pool(); // the size is known once the configuration is loaded
+		return maxInSize;
+	}
+
+	/**
+	 * Change the maximal number of values bound in one whereIn list,
+	 * it should leave room for the other parameters of the query under the limit of the database
+	 * @param size the maximal number of values, at least 1
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the size is not positive
+	 */
+	public static void setMaxInSize(int size) throws LadaljaException
+	{
+		if (size < 1) {
+			throw new LadaljaException("The maximal size of a where in list must be positive, given: " + size);
+		}
+		maxInSize = size;
 	}
 
 	/**
 	 * Enable transaction mode, it mean all query will be transactional
+	 * @deprecated each query is atomic on its own, use {@link #transaction(TransactionCallback)} to group queries
 	 */
+	@Deprecated
 	public static void enableTransaction()
 	{
 		transactional = true;
@@ -396,72 +914,95 @@ public final class DB {
 	
 	/**
 	 * Disable transaction mode
+	 * @deprecated each query is atomic on its own, use {@link #transaction(TransactionCallback)} to group queries
 	 */
+	@Deprecated
 	public static void disableTransaction()
 	{
 		transactional = false;
 	}
 	
 	
+	/**
+	 * @return true if the first word of the query is a delete, update, insert or merge, found in one scan
+	 */
+	private static boolean isUpdate(String query)
+	{
+		int start = 0;
+		int length = query.length();
+		while (start < length && Character.isWhitespace(query.charAt(start))) {
+			start++;
+		}
+		int end = start;
+		while (end < length && !Character.isWhitespace(query.charAt(end))) {
+			end++;
+		}
+		String word = query.substring(start, end).toLowerCase();
+		return word.contains("delete") || word.contains("update") || word.contains("insert") || word.contains("merge");
+	}
+	
+	
 	private static Object execute(String query, Object... params)  throws LadaljaException
 	{
-		boolean update = false;
-		String updateWord[] = {"DELETE", "UPDATE", "INSERT"};
+		boolean update = isUpdate(query);
+		final ConnectionPool pool = pool();
+		final PooledConnection pooled = pool.acquire();
+		boolean released = true;
 		PreparedStatement statement = null;
 		try {
-			for(String str: updateWord){
-				if (query.trim().replaceAll("\\s+", " ").split(" ")[0].toLowerCase().contains(str.toLowerCase())) {
-					update = true;
-				}
-			}
+			statement = pooled.getStatementCache().prepare(query);
 			
-			statement = connection().prepareStatement(query);
-			
-			if(params != null){
-				for(int i=0; i<params.length; i++){
-					statement.setObject(i+1, params[i]);
-				}
-			}
+			bind(statement, params);
 			
 			listenQuery(query);
 			
 			Object obj = null;
-			boolean began = false; 
 			
 			if (update) {
-				if (transactional) {
-					statement.execute("BEGIN;");
-					began = true;
-				}
-				
 				int rows = statement.executeUpdate();
+				ResultCache.invalidateQuery(query);
 				listenUpdatedRows(query, rows);
 				obj = Integer.valueOf(rows);
-				
-				if (began) {
-					statement.execute("COMMIT;");
-				}
 			} else {
 				ResultSet result = statement.executeQuery();
 				listenResultSet(query, result);
-				obj = result;
+				// the connection stays leased until the rows have been read
+				final PreparedStatement resultStatement = statement;
+				obj = ReleasingResultSet.wrap(result, pooled, new Runnable() {
+					@Override
+					public void run() {
+						pooled.getStatementCache().release(resultStatement);
+						pool.release(pooled);
+					}
+				});
+				released = false;
 			}
 			
 			return obj;
 		} catch (SQLException e) {
-			if (statement != null && update) {
-				try {
-					statement.execute("ROLLBACK;");
-				} catch (SQLException e1) {}
-			}
 			throw new LadaljaException(e);
+		} finally {
+			if (released) {
+				pooled.getStatementCache().release(statement);
+				pool.release(pooled);
+			}
+		}
+	}
+
+
+	private static void close(Statement statement)
+	{
+		if (statement != null) {
+			try {
+				statement.close();
+			} catch (SQLException e) {}
 		}
 	}
 	
 
 	private static void listenQuery(String query)
 	{
-		if (queryListeners != null) {
+		if (!queryListeners.isEmpty()) {
 			for (QueryListener ql: queryListeners) {
 				ql.listenQuery(query);
 			}
@@ -472,7 +1013,7 @@ public final class DB {
 
 	private static void listenResultSet(String query, ResultSet result)
 	{
-		if (queryListeners != null) {
+		if (!queryListeners.isEmpty()) {
 			for (QueryListener ql: queryListeners) {
 				ql.listenResultSet(query, result);
 			}
@@ -482,7 +1023,7 @@ public final class DB {
 
 	private static void listenUpdatedRows(String query, int rows)
 	{
-		if (queryListeners != null) {
+		if (!queryListeners.isEmpty()) {
 			for (QueryListener ql: queryListeners) {
 				ql.listenUpdatedRows(query, rows);
 			}
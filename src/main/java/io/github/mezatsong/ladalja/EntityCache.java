@@ -0,0 +1,370 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+/**
+ * The cache of the rows of a model annotated with {@link io.github.mezatsong.ladalja.anotations.Cached}, by primary key.<br>
+ * It keeps the values of the columns, each lookup gives a new instance. A missing row is cached too.
+ * Entries expire after the time to live of the model, and the least recently used ones are evicted when it is full.
+ * It is divided in segments locked independently, so threads looking up different keys rarely wait for each other.
+ * <p>
+ * The writes made through models and {@link io.github.mezatsong.ladalja.query.QueryBuilder} on the table evict
+ * the written row, or the whole cache when the rows can't be known. Queries run directly through {@link DB} with SQL
+ * are not seen. Rows read inside a transaction are not cached, and the rows written by a transaction are evicted again
+ * when it ends, for a row read by another thread before the commit not to stay cached.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class EntityCache {
+
+	/**
+	 * The values cached for a missing row
+	 */
+	static final Object[] ABSENT = new Object[0];
+
+	private static final int SEGMENTS = 16;
+
+	private static final List<EntityCache> CACHES = new CopyOnWriteArrayList<EntityCache>();
+
+	/**
+	 * The keys evicted by the transaction of the current thread, by cache, null when the whole cache was cleared.
+	 * {@link #ABSENT} stands for the missing rows evicted after an insert
+	 */
+	private static final ThreadLocal<Map<EntityCache, Set<Object>>> WRITTEN = new ThreadLocal<Map<EntityCache, Set<Object>>>();
+
+	private final String table;
+
+	private final String primaryKey;
+
+	private final long ttl;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Incremented by each invalidation, a row read before it must not be cached
+	 */
+	private final AtomicLong stamp = new AtomicLong();
+
+	private final CacheStatistics statistics = new CacheStatistics();
+
+
+	EntityCache(String table, String primaryKey, int size, long ttl)
+	{
+		if(size < 1 || ttl < 1){
+			throw new LadaljaException("Invalid cache size or ttl of table " + table);
+		}
+		this.table = table;
+		this.primaryKey = primaryKey;
+		this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+		int capacity = (size + SEGMENTS - 1) / SEGMENTS;
+		for(int i = 0; i < SEGMENTS; i++){
+			segments[i] = new Segment(capacity);
+		}
+	}
+
+
+	/**
+	 * @param model a model class
+	 * @return the cache of the model, or null if it is not annotated with {@link io.github.mezatsong.ladalja.anotations.Cached}
+	 */
+	public static EntityCache of(Class<? extends ModelRepository> model)
+	{
+		return EntityMetadata.of(model).getCache();
+	}
+
+
+	static void register(EntityCache cache)
+	{
+		CACHES.add(cache);
+	}
+
+
+	/**
+	 * Evict the rows written on a table from the caches of its models
+	 * @param table the written table
+	 * @param column the column identifying the written row, or null if the rows are not known
+	 * @param key the value of column in the written row
+	 */
+	public static void invalidate(String table, String column, Object key)
+	{
+		for(EntityCache cache : CACHES){
+			if(cache.table.equalsIgnoreCase(table)){
+				if(column != null && key != null && column.equalsIgnoreCase(cache.primaryKey)){
+					cache.evict(key);
+					written(cache, String.valueOf(key));
+				}else{
+					cache.clear();
+					written(cache, null);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Evict the missing rows cached for a table, after an insert
+	 * @param table the table where rows were inserted
+	 */
+	public static void invalidateAbsent(String table)
+	{
+		for(EntityCache cache : CACHES){
+			if(cache.table.equalsIgnoreCase(table)){
+				cache.evictAbsent();
+				written(cache, ABSENT);
+			}
+		}
+	}
+
+
+	/**
+	 * Evict again the rows written by the transaction of the current thread, once it is committed or rolled back,
+	 * for the rows read meanwhile by other threads, before the commit, not to stay cached
+	 */
+	public static void transactionEnded()
+	{
+		Map<EntityCache, Set<Object>> written = WRITTEN.get();
+		if(written == null){
+			return;
+		}
+		WRITTEN.remove();
+		for(Map.Entry<EntityCache, Set<Object>> entry : written.entrySet()){
+			EntityCache cache = entry.getKey();
+			if(entry.getValue() == null){
+				cache.clear();
+				continue;
+			}
+			for(Object key : entry.getValue()){
+				if(key == ABSENT){
+					cache.evictAbsent();
+				}else{
+					cache.evict(key);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Remember a key evicted inside a transaction
+	 * @param key the evicted key, {@link #ABSENT} for the missing rows, or null if the whole cache was cleared
+	 */
+	private static void written(EntityCache cache, Object key)
+	{
+		if(!DB.inTransaction()){
+			return;
+		}
+		Map<EntityCache, Set<Object>> written = WRITTEN.get();
+		if(written == null){
+			written = new HashMap<EntityCache, Set<Object>>();
+			WRITTEN.set(written);
+		}
+		if(key == null){
+			written.put(cache, null);
+			return;
+		}
+		Set<Object> keys = written.get(cache);
+		if(keys == null){
+			if(written.containsKey(cache)){
+				// already cleared
+				return;
+			}
+			keys = new HashSet<Object>();
+			written.put(cache, keys);
+		}
+		keys.add(key);
+	}
+
+
+	/**
+	 * Empty the caches of all models
+	 */
+	public static void clearAll()
+	{
+		for(EntityCache cache : CACHES){
+			cache.clear();
+		}
+	}
+
+
+	/**
+	 * @return the cached values of the row, {@link #ABSENT} for a missing row, or null if it is not cached
+	 */
+	Object[] get(Object key)
+	{
+		Object id = String.valueOf(key);
+		Segment segment = segment(id);
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(id);
+			if(entry != null && entry.expires - System.nanoTime() < 0){
+				segment.remove(id);
+				entry = null;
+			}
+		}
+		if(entry == null){
+			statistics.miss();
+			return null;
+		}
+		statistics.hit();
+		return entry.values;
+	}
+
+
+	/**
+	 * @return the stamp to give to {@link #put(Object, Object[], long)} for a row read from now
+	 */
+	long getStamp()
+	{
+		return stamp.get();
+	}
+
+
+	/**
+	 * Cache the values of a row, unless the table was written since the row was read
+	 * @param values the values of the row, or null if it is missing
+	 * @param stamp the value of {@link #getStamp()} before the row was read
+	 */
+	void put(Object key, Object[] values, long stamp)
+	{
+		Object id = String.valueOf(key);
+		Segment segment = segment(id);
+		synchronized (segment) {
+			if(this.stamp.get() == stamp){
+				segment.put(id, new Entry(values == null ? ABSENT : values, System.nanoTime() + ttl));
+			}
+		}
+	}
+
+
+	private void evictAbsent()
+	{
+		stamp.incrementAndGet();
+		for(Segment segment : segments){
+			synchronized (segment) {
+				for(Iterator<Entry> entries = segment.values().iterator(); entries.hasNext();){
+					if(entries.next().values == ABSENT){
+						entries.remove();
+					}
+				}
+			}
+		}
+	}
+
+
+	void evict(Object key)
+	{
+		Object id = String.valueOf(key);
+		Segment segment = segment(id);
+		synchronized (segment) {
+			stamp.incrementAndGet();
+			segment.remove(id);
+		}
+	}
+
+
+	/**
+	 * Remove all the cached rows
+	 */
+	public void clear()
+	{
+		stamp.incrementAndGet();
+		for(Segment segment : segments){
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+
+	/**
+	 * @return number of cached rows, expired ones included
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(Segment segment : segments){
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+
+	/**
+	 * @return hit, miss and eviction counters of this cache
+	 */
+	public CacheStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+
+	private Segment segment(Object id)
+	{
+		int hash = id.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+	}
+
+
+
+	private static final class Entry {
+
+		private final Object[] values;
+
+		private final long expires;
+
+
+		Entry(Object[] values, long expires) {
+			this.values = values;
+			this.expires = expires;
+		}
+
+	}
+
+
+
+	/**
+	 * A part of the cache, in access order for the least recently used entry to be evicted first
+	 */
+	private final class Segment extends LinkedHashMap<Object, Entry> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest)
+		{
+			if(size() > capacity){
+				statistics.eviction();
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ * 
+ */
+package io.github.mezatsong.ladalja;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Map a model from and to database rows without reflection.<br>
+ * Implementations are generated at compile time by {@link io.github.mezatsong.ladalja.processor.MapperProcessor},
+ * in the package of the model and named after it with the {@link #SUFFIX} suffix, 
+ * {@link io.github.mezatsong.ladalja.EntityMetadata} picks them up when they are present.
+ * 
+ * @param <T> the model class
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ */
+public interface EntityMapper<T extends ModelRepository> {
+
+	/**
+	 * Suffix appended to the binary name of a model to get the name of its generated mapper
+	 */
+	String SUFFIX = "_LadaljaMapper";
+
+	/**
+	 * @return the columns of the model, in the order used by {@link #map(ResultSet, int[])} and {@link #values(ModelRepository)}, 
+	 * the array must not be modified
+	 */
+	String[] getColumns();
+
+	/**
+	 * Create a model from the current row of a ResultSet
+	 * @param resultSet the ResultSet positioned on the row
+	 * @param indexes for each column of {@link #getColumns()}, its index in the ResultSet, or 0 if the ResultSet does not have it
+	 * @return the new model
+	 * @throws SQLException if a column can't be read
+	 */
+	T map(ResultSet resultSet, int[] indexes) throws SQLException;
+
+	/**
+	 * @param instance a model
+	 * @return the values of the columns of {@link #getColumns()} in the model
+	 */
+	Object[] values(T instance);
+}
@@ -0,0 +1,524 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.github.mezatsong.ladalja.anotations.Cached;
+import io.github.mezatsong.ladalja.anotations.Column;
+import io.github.mezatsong.ladalja.anotations.Ignore;
+import io.github.mezatsong.ladalja.tools.Converters;
+import io.github.mezatsong.ladalja.tools.Utils;
+
+/**
+ * What {@link io.github.mezatsong.ladalja.ModelRepository} needs to know about a model class:
+ * its table, its primary key and how each of its fields is bound to a column.<br>
+ * It is computed once per model class with reflection, the first time it is asked for,
+ * then shared by all threads; it never changes afterwards.
+ * <p>
+ * The model must not compute {@link ModelRepository#getTable()} or {@link ModelRepository#getPrimaryKey()} from its state,
+ * they are called once on a new instance.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class EntityMetadata {
+
+	private static final ConcurrentMap<Class<?>, EntityMetadata> CACHE = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final Class<? extends ModelRepository> model;
+
+	private final Constructor<? extends ModelRepository> constructor;
+
+	private final String table;
+
+	private final String primaryKey;
+
+	private final Property primaryProperty;
+
+	private final List<Property> columns;
+
+	private final String[] columnNames;
+
+	private final Map<String, Property> byField;
+
+	private final Map<String, Property> byColumn;
+
+	private final EntityMapper<? extends ModelRepository> mapper;
+
+	private final EntityCache cache;
+
+
+	private EntityMetadata(Class<? extends ModelRepository> model)
+	{
+		this.model = model;
+		try {
+			this.constructor = model.getDeclaredConstructor();
+			ModelRepository prototype = constructor.newInstance();
+			this.table = prototype.getTable();
+			this.primaryKey = prototype.getPrimaryKey();
+		} catch (Exception e) {
+			throw new LadaljaException(e);
+		}
+
+		List<Property> columns = new ArrayList<Property>();
+		Map<String, Property> byField = new HashMap<String, Property>();
+		Map<String, Property> byColumn = new HashMap<String, Property>();
+		for(Field field : model.getDeclaredFields())
+		{
+			if(Modifier.isStatic(field.getModifiers()) || field.isSynthetic()){
+				continue;
+			}
+			Property property = new Property(field);
+			byField.put(property.name, property);
+			if(field.getDeclaredAnnotation(Ignore.class) == null){
+				columns.add(property);
+				byColumn.put(property.column, property);
+			}
+		}
+		this.columns = Collections.unmodifiableList(columns);
+		this.columnNames = new String[columns.size()];
+		for(int i = 0; i < columnNames.length; i++){
+			columnNames[i] = columns.get(i).column;
+		}
+		this.byField = byField;
+		this.byColumn = byColumn;
+
+		Property primary = byField.get(primaryKey);
+		if(primary == null){
+			for(Property property : columns){
+				if(property.annotated && property.column.equals(primaryKey)){
+					primary = property;
+				}
+			}
+		}
+		this.primaryProperty = primary;
+		this.mapper = loadMapper(model);
+		Cached cached = model.getAnnotation(Cached.class);
+		this.cache = cached == null ? null : new EntityCache(table, primaryKey, cached.size(), cached.ttl());
+	}
+
+
+	/**
+	 * @param model a model class
+	 * @return the metadata of the model, computed on the first call
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the model can't be instantiated
+	 */
+	public static EntityMetadata of(Class<? extends ModelRepository> model)
+	{
+		EntityMetadata metadata = CACHE.get(model);
+		if(metadata == null){
+			metadata = new EntityMetadata(model);
+			EntityMetadata previous = CACHE.putIfAbsent(model, metadata);
+			if(previous != null){
+				metadata = previous;
+			}else if(metadata.cache != null){
+				EntityCache.register(metadata.cache);
+			}
+		}
+		return metadata;
+	}
+
+
+	/**
+	 * @return the cache of the rows of the model, or null if it is not annotated with {@link Cached}
+	 */
+	public EntityCache getCache()
+	{
+		return cache;
+	}
+
+
+	/**
+	 * @return the model class
+	 */
+	public Class<? extends ModelRepository> getModel()
+	{
+		return model;
+	}
+
+
+	/**
+	 * @return the name of the table of the model
+	 */
+	public String getTable()
+	{
+		return table;
+	}
+
+
+	/**
+	 * @return the name of the primary key column
+	 */
+	public String getPrimaryKey()
+	{
+		return primaryKey;
+	}
+
+
+	/**
+	 * @return the property bound to the primary key
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if no field is bound to the primary key
+	 */
+	public Property getPrimaryProperty()
+	{
+		if(primaryProperty == null){
+			throw new LadaljaException("Can't find field linked with primary key column: " + primaryKey);
+		}
+		return primaryProperty;
+	}
+
+
+	/**
+	 * @return the properties bound to a column, that is all fields but ignored ones, in declaration order
+	 */
+	public List<Property> getColumns()
+	{
+		return columns;
+	}
+
+
+	/**
+	 * @return the names of the columns of {@link #getColumns()}, in the same order, the array must not be modified
+	 */
+	public String[] getColumnNames()
+	{
+		return columnNames;
+	}
+
+
+	/**
+	 * @param fieldName name of a field of the model
+	 * @return its property, or null if the model has no such field
+	 */
+	public Property getProperty(String fieldName)
+	{
+		return byField.get(fieldName);
+	}
+
+
+	/**
+	 * Find the property bound to a column, or having the given name
+	 * @param columnOrField a column name or a field name
+	 * @return the property, or null if there is none
+	 */
+	public Property findProperty(String columnOrField)
+	{
+		Property property = byColumn.get(columnOrField);
+		if(property == null){
+			property = byField.get(columnOrField);
+			if(property != null && !columns.contains(property)){
+				property = null;
+			}
+		}
+		return property;
+	}
+
+
+	/**
+	 * @return the mapper generated at compile time for the model, or null if there is none
+	 * @see io.github.mezatsong.ladalja.processor.MapperProcessor
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends ModelRepository> EntityMapper<T> getMapper()
+	{
+		return (EntityMapper<T>) mapper;
+	}
+
+
+	/**
+	 * @return a new instance of the model
+	 */
+	public <T extends ModelRepository> T newInstance()
+	{
+		try {
+			@SuppressWarnings("unchecked")
+			T instance = (T) constructor.newInstance();
+			return instance;
+		} catch (Exception e) {
+			throw new LadaljaException(e);
+		}
+	}
+
+
+
+	/**
+	 * A field of a model, with its column name, its getter, its setter and the conversion
+	 * of database values into its type.<br>
+	 * The getter and setter are resolved once into method handles adapted to (Object)Object and (Object,Object)void,
+	 * so reading or writing a field is one invokeExact call instead of a reflective lookup and invoke.
+	 */
+	public static final class Property {
+
+		private final Field field;
+
+		private final String name;
+
+		private final String column;
+
+		private final boolean annotated;
+
+		private final String getterName;
+
+		private final String setterName;
+
+		private final MethodHandle getter;
+
+		private final MethodHandle setter;
+
+		private final Converter converter;
+
+
+		private Property(Field field)
+		{
+			this.field = field;
+			this.name = field.getName();
+			Column annotation = field.getDeclaredAnnotation(Column.class);
+			this.annotated = annotation != null;
+			this.column = annotated ? annotation.value() : name;
+			this.getterName = "get" + Utils.toCaptitalize(name);
+			this.setterName = "set" + Utils.toCaptitalize(name);
+			this.getter = handle(method(field.getDeclaringClass(), getterName), GETTER_TYPE);
+			this.setter = handle(method(field.getDeclaringClass(), setterName, field.getType()), SETTER_TYPE);
+			this.converter = converter(field.getType());
+		}
+
+
+		/**
+		 * @return the field
+		 */
+		public Field getField()
+		{
+			return field;
+		}
+
+
+		/**
+		 * @return the name of the field
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+
+		/**
+		 * @return the name of the column bound to the field
+		 */
+		public String getColumn()
+		{
+			return column;
+		}
+
+
+		/**
+		 * Read the field with its getter
+		 * @param instance an instance of the model
+		 * @return the value of the field
+		 */
+		public Object get(Object instance)
+		{
+			if(getter == null){
+				throw new LadaljaException("Can't find getter (" + getterName + ") for field : " + name);
+			}
+			try {
+				return (Object) getter.invokeExact(instance);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new LadaljaException("Error with getter : " + getterName, e);
+			}
+		}
+
+
+		/**
+		 * Convert a database value to the type of the field and give it to the setter, null values are ignored
+		 * @param instance an instance of the model
+		 * @param value the value to set
+		 */
+		public void set(Object instance, Object value)
+		{
+			if(value == null){
+				return;
+			}
+			try {
+				if(setter == null){
+					throw new NoSuchMethodException(setterName);
+				}
+				setter.invokeExact(instance, converter.convert(value));
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new LadaljaException("error with : " + name, e);
+			}
+		}
+
+	}
+
+
+
+	/**
+	 * Convert a value read from the database into the type of a field
+	 */
+	private interface Converter {
+		Object convert(Object value);
+	}
+
+
+	private static Converter converter(final Class<?> type)
+	{
+		if(type == Long.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asLong(value);
+				}
+			};
+		}
+		if(type == Integer.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asInteger(value);
+				}
+			};
+		}
+		if(type == Double.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asDouble(value);
+				}
+			};
+		}
+		if(type == Float.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asFloat(value);
+				}
+			};
+		}
+		if(type == Short.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asShort(value);
+				}
+			};
+		}
+		if(type == BigInteger.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asBigInteger(value);
+				}
+			};
+		}
+		if(type == BigDecimal.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asBigDecimal(value);
+				}
+			};
+		}
+		if(type == String.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asString(value);
+				}
+			};
+		}
+		if(type == Date.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asDate(value);
+				}
+			};
+		}
+		if(type == Timestamp.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return Converters.asTimestamp(value);
+				}
+			};
+		}
+		if(type.getSuperclass() == Number.class || type == Number.class){
+			return new Converter() {
+				public Object convert(Object value) {
+					return type.cast((Number) value);
+				}
+			};
+		}
+		return new Converter() {
+			public Object convert(Object value) {
+				return type.cast(value);
+			}
+		};
+	}
+
+
+	private static EntityMapper<? extends ModelRepository> loadMapper(Class<? extends ModelRepository> model)
+	{
+		Class<?> type;
+		try {
+			type = Class.forName(model.getName() + EntityMapper.SUFFIX, true, model.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		if(!EntityMapper.class.isAssignableFrom(type)){
+			return null;
+		}
+		try {
+			return (EntityMapper<? extends ModelRepository>) type.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new LadaljaException("Can't instantiate the mapper " + type.getName(), e);
+		}
+	}
+
+
+	/**
+	 * @return the method adapted to the given type, or null if there is no method
+	 */
+	private static MethodHandle handle(Method method, MethodType type)
+	{
+		if(method == null){
+			return null;
+		}
+		try {
+			if(!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())){
+				method.setAccessible(true);
+			}
+			return MethodHandles.publicLookup().unreflect(method).asType(type);
+		} catch (Exception e) {
+			throw new LadaljaException("Can't access " + method, e);
+		}
+	}
+
+
+	private static Method method(Class<?> type, String name, Class<?>... parameterTypes)
+	{
+		try {
+			return type.getDeclaredMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
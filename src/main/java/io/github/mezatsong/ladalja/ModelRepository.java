@@ -1,22 +1,26 @@
 package io.github.mezatsong.ladalja;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.sql.Date;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
-import io.github.mezatsong.ladalja.anotations.Column;
-import io.github.mezatsong.ladalja.anotations.Ignore;
+import io.github.mezatsong.ladalja.query.Cursor;
 import io.github.mezatsong.ladalja.query.QueryBuilder;
 import io.github.mezatsong.ladalja.query.QueryBuilderORM;
+import io.github.mezatsong.ladalja.query.RowMapper;
 import io.github.mezatsong.ladalja.tools.Utils;
 
 
@@ -161,9 +165,19 @@ import io.github.mezatsong.ladalja.tools.Utils;
 @SuppressWarnings({"rawtypes","unchecked"})
 public abstract class ModelRepository {
 
+	/**
+	 * Maximal number of primary keys looked up by one query in {@link #saveAll(List)}, without upsert statement
+	 */
+	private static final int EXISTENCE_PROBE_SIZE = 500;
+
 	//protected static String table;
 	//protected static Class<? extends Model> model;
 	
+	/**
+	 * The values of the columns when the instance was loaded or last saved, null for a new instance
+	 */
+	private transient Object[] loadedState;
+	
 	/* ====================== INSTANCE METHODS ====================*/
 	
 	/**
@@ -189,7 +203,11 @@ public abstract class ModelRepository {
 	/**
 	 * To create a new record in the database, create a new model instance, set attributes on the model, then call the save method.
 	 * The save method may also be used to update models that already exist in the database. 
-	 * To update a model, you should retrieve it, set any attributes you wish to update, and then call the save method
+	 * To update a model, you should retrieve it, set any attributes you wish to update, and then call the save method.
+	 * Only the modified columns of a loaded model are updated, nothing is sent if none was modified.
+	 * A model without primary key is inserted, any other model is upserted with one statement,
+	 * see {@link io.github.mezatsong.ladalja.query.QueryBuilder#upsert(List, List, List)}.
+	 * Inside a {@link Session}, the save is queued until the session is flushed
 	 */
 	public void save() {
 		Map<String,Object> data = mapping(this); 
@@ -197,21 +215,72 @@ public abstract class ModelRepository {
 			throw new LadaljaException("Primary key is not present : "+getPrimaryKey()+" is not present");
 		}
 		
-		Object primaryKey = data.get(getPrimaryKey());
-		boolean exist = primaryKey != null && newSuperQuery(getClass()).where(getPrimaryKey(),primaryKey).count() > 0;
+		Session session = Session.current();
+		if( session != null ){
+			session.save(this);
+			return;
+		}
 		
-		if( !exist ){ 
+		Object primaryKey = data.get(getPrimaryKey());
+		if( primaryKey == null ){ 
 			ModelRepository newCreatedInstance = create(this);
-			set(getPrimaryField().getName(), newCreatedInstance.get(getPrimaryField().getName()) );
+			EntityMetadata.of(getClass()).getPrimaryProperty().set(this, newCreatedInstance.getPrimaryKeyValue());
 		}else{
-			data.remove( getPrimaryKey() );
-			newSuperQuery(getClass()).where(getPrimaryKey(),primaryKey).update(data);
+			Map<String,Object> dirty = getDirty();
+			if(dirty.isEmpty()){
+				return;
+			}
+			boolean updated = false;
+			if(loadedState != null && !dirty.containsKey(getPrimaryKey())){
+				updated = newSuperQuery(getClass()).where(getPrimaryKey(),primaryKey).update(dirty) > 0;
+			}
+			if(!updated){
+				// a new instance, a modified primary key or a row deleted since the instance was loaded
+				List<Map<String,Object>> rows = new ArrayList<Map<String,Object>>(1);
+				rows.add(data);
+				newSuperQuery(getClass()).upsert(rows, Collections.singletonList(getPrimaryKey()), null);
+			}
+		}
+		syncOriginal();
+	}
+	
+	
+	/**
+	 * @return true if a column was modified since the instance was loaded or saved, always true for a new instance
+	 */
+	public boolean isDirty() {
+		return loadedState == null || !getDirty().isEmpty();
+	}
+	
+	
+	/**
+	 * @return the columns modified since the instance was loaded or saved and their values, all the columns for a new instance
+	 */
+	public Map<String,Object> getDirty() {
+		EntityMetadata metadata = EntityMetadata.of(getClass());
+		String[] columns = columnNames(metadata);
+		Object[] values = columnValues(this, metadata);
+		Map<String,Object> dirty = new LinkedHashMap<String,Object>();
+		for (int i = 0; i < columns.length; i++) {
+			if (loadedState == null || !Objects.deepEquals(loadedState[i], values[i])) {
+				dirty.put(columns[i], values[i]);
+			}
 		}
+		return dirty;
+	}
+	
+	
+	/**
+	 * Mark the current values of the instance as the ones stored in the database
+	 */
+	protected void syncOriginal() {
+		loadedState = snapshot(columnValues(this, EntityMetadata.of(getClass())));
 	}
 
 	
 	/**
 	 * Call this method on a model instance to delete a model.
+	 * Inside a {@link Session}, the delete is queued until the session is flushed
 	 */
 	public void delete()
 	{
@@ -226,7 +295,14 @@ public abstract class ModelRepository {
 			throw new LadaljaException("The value of primary key is null : "+getPrimaryKey()+" is null");
 		}
 		
+		Session session = Session.current();
+		if( session != null ){
+			session.delete(this);
+			return;
+		}
+		
 		newSuperQuery(getClass()).where(getPrimaryKey(),primaryKey).delete();
+		loadedState = null;
 	}
 
 	
@@ -235,28 +311,46 @@ public abstract class ModelRepository {
 	
 	private static String getTable(Class<? extends ModelRepository> model)
 	{
-		try {
-			return model.getDeclaredConstructor().newInstance().getTable();
-		} catch (Exception e) {
-			throw new LadaljaException(e);
-		}
+		return EntityMetadata.of(model).getTable();
 	}
 	
 
-	protected Field getPrimaryField() {
-		try {
-			return getClass().getDeclaredField(getPrimaryKey());
-		} catch (NoSuchFieldException e) {
-			for (Field pf: getClass().getDeclaredFields()) {
-				if (pf.isAnnotationPresent(Column.class)) {
-					if (pf.getAnnotation(Column.class).value().equals(getPrimaryKey())) {
-						return pf;
-					}
-				}
+	private static Map<Class<?>, List<ModelRepository>> groupByModel(List<? extends ModelRepository> instances)
+	{
+		Map<Class<?>, List<ModelRepository>> groups = new LinkedHashMap<Class<?>, List<ModelRepository>>();
+		for(ModelRepository instance : instances){
+			if(instance == null){
+				throw new LadaljaException("Null instance in argument list");
 			}
+			List<ModelRepository> group = groups.get(instance.getClass());
+			if(group == null){
+				group = new ArrayList<ModelRepository>();
+				groups.put(instance.getClass(), group);
+			}
+			group.add(instance);
 		}
+		return groups;
+	}
+	
 
-		throw new LadaljaException("Can't find field linked with primary key column: " + getPrimaryKey());
+	/**
+	 * @param model a model class
+	 * @return the name of the primary key column of the model
+	 */
+	public static String getPrimaryKey(Class<? extends ModelRepository> model)
+	{
+		return EntityMetadata.of(model).getPrimaryKey();
+	}
+	
+
+	protected Field getPrimaryField() {
+		return EntityMetadata.of(getClass()).getPrimaryProperty().getField();
+	}
+	
+	
+	Object getPrimaryKeyValue()
+	{
+		return EntityMetadata.of(getClass()).getPrimaryProperty().get(this);
 	}
 	
 
@@ -278,6 +372,11 @@ public abstract class ModelRepository {
 	
 	protected Object get(String fieldName)
 	{
+		EntityMetadata.Property property = EntityMetadata.of(getClass()).getProperty(fieldName);
+		if (property != null) {
+			return property.get(this);
+		}
+		
 		String getter = "get" +	Utils.toCaptitalize(fieldName);
 		try {
 			Method method = getClass().getDeclaredMethod(getter);
@@ -292,133 +391,171 @@ public abstract class ModelRepository {
 	
 	protected void set(String fieldName, Object value)
 	{
-		if (value == null) {
-			return;
+		EntityMetadata.Property property = EntityMetadata.of(getClass()).getProperty(fieldName);
+		if (property == null) {
+			throw new LadaljaException("error with : "+fieldName, new NoSuchFieldException(fieldName));
 		}
-
-		String setter = "set" +	Utils.toCaptitalize(fieldName);
-		try {
-			Field field = getClass().getDeclaredField(fieldName);
-			Method method = getClass().getDeclaredMethod(setter, field.getType());
-			if (field.getType().getSuperclass() == Number.class || field.getType() == Number.class) {
-
-				if (field.getType() == Long.class) {
-					method.invoke(this, Long.valueOf(value.toString()));
-
-				} else if (field.getType() == Integer.class) {
-					method.invoke(this, Integer.valueOf(value.toString()));
-
-				} else if (field.getType() == Double.class) {
-					method.invoke(this, Double.valueOf(value.toString()));
-
-				} else if (field.getType() == Float.class) {
-					method.invoke(this, Float.valueOf(value.toString()));
-
-				} else if (field.getType() == Short.class) {
-					method.invoke(this, Short.valueOf(value.toString()));
-
-				} else if (field.getType() == BigInteger.class) {
-					method.invoke(this, BigInteger.valueOf(Long.valueOf(value.toString())));
-
-				} else if (field.getType() == BigDecimal.class) {
-					method.invoke(this, BigDecimal.valueOf(Double.valueOf(value.toString())));
-
-				} else {
-					method.invoke(this, field.getType().cast( (Number) value));
-				}
-
-
-			} else if (field.getType() == String.class) {
-				method.invoke(this, value.toString());
-
-			} else if (field.getType() == Date.class) {
-				if (value instanceof Number) {
-					method.invoke(this, new Date( Long.valueOf(value.toString()) ));
-				} else if (value instanceof Timestamp) {
-					method.invoke(this, new Date(((Timestamp) value).getTime()));
-				} else if (value instanceof Date) {
-					method.invoke(this, value);
-				} else {
-					method.invoke(this, Date.valueOf(value.toString()) );
-				}
-			} else if (field.getType() == Timestamp.class) {
-				if (value instanceof Number) {
-					method.invoke(this, new Timestamp( Long.valueOf(value.toString()) ));
-				} else if (value instanceof Date) {
-					method.invoke(this, new Timestamp(((Date) value).getTime()));
-				} else if (value instanceof Timestamp) {
-					method.invoke(this, value);
-				} else {
-					method.invoke(this, Timestamp.valueOf(value.toString()) );
-				}
-			} else {
-				method.invoke(this, field.getType().cast(value));
-			}
-		} catch (Exception e) {
-			throw new LadaljaException("error with : "+fieldName, e);
-		} 
+		property.set(this, value);
 	}
 	
 
 	public static <T extends ModelRepository> T mapping(ResultSet resultSet, Class<? extends ModelRepository> model)
 	{
-		T instance = null;
-		
+		EntityMetadata metadata = EntityMetadata.of(model);
+		EntityMapper<T> mapper = metadata.getMapper();
 		try {
-			instance = (T) model.getDeclaredConstructor().newInstance();
-		} catch (Exception e) {
+			int[] indexes = columnIndexes(resultSet, mapper != null ? mapper.getColumns() : metadata.getColumnNames());
+			return mapping(resultSet, metadata, mapper, indexes);
+		} catch (SQLException e) {
 			throw new LadaljaException(e);
 		}
-		
-		
-		Field fields[] = model.getDeclaredFields();
-		for(Field field : fields)
-		{	
-			Ignore ignore = field.getDeclaredAnnotation(Ignore.class);
-			if(ignore != null)
-				continue;
+	}
+	
+	
+	/**
+	 * Give a mapper of the rows of a ResultSet into the model, to use for all the rows of a same ResultSet.
+	 * The columns are looked up by label once per ResultSet, then read by index; fields whose column is not
+	 * in the ResultSet are left null. It use the mapper generated at compile time if there is one.
+	 * @see io.github.mezatsong.ladalja.processor.MapperProcessor
+	 * @param model the class which the rows will be mapped into
+	 * @return the mapper
+	 */
+	public static <T extends ModelRepository> RowMapper<T> rowMapper(Class<? extends ModelRepository> model)
+	{
+		final EntityMetadata metadata = EntityMetadata.of(model);
+		final EntityMapper<T> mapper = metadata.getMapper();
+		final String[] columns = mapper != null ? mapper.getColumns() : metadata.getColumnNames();
+		return new RowMapper<T>() {
+			private ResultSet resolved;
 			
-			String databaseColumnName = field.getName();
-			Column annotation = field.getDeclaredAnnotation(Column.class);
-			if(annotation != null){
-				databaseColumnName = annotation.value();
-			}
+			private int[] indexes;
 			
-			try {
-				instance.set(field.getName(), resultSet.getObject(databaseColumnName));
-			} catch (SQLException e) {
-				throw new LadaljaException(e);
+			@Override
+			public T map(ResultSet resultSet) throws SQLException {
+				if (resultSet != resolved) {
+					indexes = columnIndexes(resultSet, columns);
+					resolved = resultSet;
+				}
+				return mapping(resultSet, metadata, mapper, indexes);
+			}
+		};
+	}
+	
+	
+	private static <T extends ModelRepository> T mapping(ResultSet resultSet, EntityMetadata metadata, EntityMapper<T> mapper, int[] indexes) throws SQLException
+	{
+		T instance;
+		if (mapper != null) {
+			instance = mapper.map(resultSet, indexes);
+		} else {
+			instance = metadata.newInstance();
+			List<EntityMetadata.Property> properties = metadata.getColumns();
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] > 0) {
+					properties.get(i).set(instance, resultSet.getObject(indexes[i]));
+				}
 			}
-			
 		}
-		
-		return instance;
+		// columns absent from the ResultSet stay null in both, so they are never written back
+		((ModelRepository) instance).loadedState = snapshot(columnValues(instance, metadata));
+		Session session = Session.current();
+		return session != null ? session.attach(instance) : instance;
+	}
+	
+	
+	/**
+	 * @return for each column, its index in the ResultSet or 0 if it is absent, labels are compared ignoring case like JDBC does
+	 */
+	private static int[] columnIndexes(ResultSet resultSet, String[] columns) throws SQLException
+	{
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = metaData.getColumnCount(); i >= 1; i--) {
+			labels.put(metaData.getColumnLabel(i).toLowerCase(), i);
+		}
+		int[] indexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			Integer index = labels.get(columns[i].toLowerCase());
+			indexes[i] = index == null ? 0 : index;
+		}
+		return indexes;
 	}
 	
 	static <T extends ModelRepository> Map<String,Object> mapping(T instance)
 	{
-		Map<String,Object> map = new HashMap<String,Object>();
-		Class<? extends ModelRepository> model = instance.getClass();
-		Field fields[] = model.getDeclaredFields();
-		for(Field field : fields)
-		{	
-			Ignore ignore = field.getDeclaredAnnotation(Ignore.class);
-			if(ignore != null)
-				continue;
-			
-			String databaseColumnName = field.getName();
-			Column annotation = field.getDeclaredAnnotation(Column.class);
-			if(annotation != null){
-				databaseColumnName = annotation.value();
-			}
-			
-			map.put(databaseColumnName, instance.get(field.getName()));
+		EntityMetadata metadata = EntityMetadata.of(instance.getClass());
+		String[] columns = columnNames(metadata);
+		Object[] values = columnValues(instance, metadata);
+		Map<String,Object> map = new LinkedHashMap<String,Object>(columns.length * 2);
+		for (int i = 0; i < columns.length; i++) {
+			map.put(columns[i], values[i]);
 		}
-		
 		return map;
 	}
 	
 	
+	/**
+	 * @return the columns of the model, in the order of {@link #columnValues(ModelRepository, EntityMetadata)}
+	 */
+	private static String[] columnNames(EntityMetadata metadata)
+	{
+		EntityMapper mapper = metadata.getMapper();
+		return mapper != null ? mapper.getColumns() : metadata.getColumnNames();
+	}
+	
+	
+	/**
+	 * @return a copy of the values of the columns, with {@link #copy(Object)}, so that changes made in place
+	 * to the values of the instance are seen by {@link #getDirty()}
+	 */
+	private static Object[] snapshot(Object[] values)
+	{
+		Object[] snapshot = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			snapshot[i] = copy(values[i]);
+		}
+		return snapshot;
+	}
+	
+	
+	/**
+	 * @return a copy of a value that can be changed in place, an array or a java.util.Date like java.sql.Timestamp,
+	 * the value itself otherwise
+	 */
+	private static Object copy(Object value)
+	{
+		if (value instanceof java.util.Date) {
+			return ((java.util.Date) value).clone();
+		}
+		if (value != null && value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+			return copy;
+		}
+		return value;
+	}
+	
+	
+	/**
+	 * @return the values of the columns of the instance, in the order of {@link #columnNames(EntityMetadata)}
+	 */
+	private static Object[] columnValues(ModelRepository instance, EntityMetadata metadata)
+	{
+		EntityMapper mapper = metadata.getMapper();
+		if (mapper != null) {
+			return mapper.values(instance);
+		}
+		
+		List<EntityMetadata.Property> columns = metadata.getColumns();
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = columns.get(i).get(instance);
+		}
+		return values;
+	}
+	
+	
 	
 	
 	
@@ -447,22 +584,118 @@ public abstract class ModelRepository {
 	}
 	
 	
+	/**
+	 * Iterate over all rows of the model without loading them all in memory
+	 * @see io.github.mezatsong.ladalja.query.QueryBuilderORM#cursor(Class)
+	 * @param model the class which the rows will be mapped into
+	 * @return a cursor over the models, to close after use
+	 */
+	public static <T extends ModelRepository> Cursor<T> cursor(Class<? extends ModelRepository> model)
+	{
+		return newQuery(model).cursor(model);
+	}
+	
+	
+	/**
+	 * Process all rows of the model by chunks, using limit and offset
+	 * @see io.github.mezatsong.ladalja.query.QueryBuilderORM#chunk(Class, int, ChunkCallback)
+	 * @param model the class which the rows will be mapped into
+	 * @param size number of models per chunk
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public static <T extends ModelRepository> boolean chunk(Class<? extends ModelRepository> model, int size, ChunkCallback<T> callback)
+	{
+		return newQuery(model).orderBy(getPrimaryKey(model)).chunk(model, size, callback);
+	}
+	
+	
+	/**
+	 * Process all rows of the model by chunks, paging on the primary key
+	 * @see io.github.mezatsong.ladalja.query.QueryBuilderORM#chunkById(Class, int, ChunkCallback)
+	 * @param model the class which the rows will be mapped into
+	 * @param size number of models per chunk
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public static <T extends ModelRepository> boolean chunkById(Class<? extends ModelRepository> model, int size, ChunkCallback<T> callback)
+	{
+		return newQuery(model).chunkById(model, size, callback);
+	}
+	
+	
 	/**
 	 * Retrieve a model by its primary key.
+	 * The row comes from the cache of the model if it is annotated with {@link io.github.mezatsong.ladalja.anotations.Cached}
 	 * @param model the class which the result will be mapped into
 	 * @param id its primary key
 	 * @return the model or null if nothing found
 	 */
 	public static <T extends ModelRepository> T find(Class<? extends ModelRepository> model, Object id)
 	{
+		Session session = Session.current();
+		if (session != null) {
+			T loaded = session.get(model, id);
+			if (loaded != null) {
+				return loaded;
+			}
+		}
+		EntityMetadata metadata = EntityMetadata.of(model);
+		EntityCache cache = metadata.getCache();
 		try {
-			String primaryKey = model.getDeclaredConstructor().newInstance().getPrimaryKey();
-			return where(primaryKey,id).first(model);
+			if (cache == null || id == null) {
+				return where(metadata.getPrimaryKey(),id).first(model);
+			}
+			
+			Object[] values = cache.get(id);
+			if (values == EntityCache.ABSENT) {
+				return null;
+			}
+			if (values != null) {
+				return fromCache(metadata, values);
+			}
+			long stamp = cache.getStamp();
+			T instance = where(metadata.getPrimaryKey(),id).first(model);
+			// a row read in a transaction may be rolled back
+			if (!DB.inTransaction()) {
+				cache.put(id, instance == null ? null : propertyValues(instance, metadata), stamp);
+			}
+			return instance;
 		} catch (Exception e) {
 			throw new LadaljaException(e);
 		}
 	}
 	
+	
+	/**
+	 * @return a copy of the values of the properties of the instance, in the order of EntityMetadata#getColumns()
+	 */
+	private static Object[] propertyValues(ModelRepository instance, EntityMetadata metadata)
+	{
+		List<EntityMetadata.Property> properties = metadata.getColumns();
+		Object[] values = new Object[properties.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = copy(properties.get(i).get(instance));
+		}
+		return values;
+	}
+	
+	
+	/**
+	 * @return a new instance of the model with the values cached by {@link #find(Class, Object)}
+	 */
+	private static <T extends ModelRepository> T fromCache(EntityMetadata metadata, Object[] values)
+	{
+		T instance = metadata.newInstance();
+		List<EntityMetadata.Property> properties = metadata.getColumns();
+		for (int i = 0; i < values.length; i++) {
+			properties.get(i).set(instance, copy(values[i]));
+		}
+		((ModelRepository) instance).loadedState = snapshot(columnValues(instance, metadata));
+		Session session = Session.current();
+		return session != null ? session.attach(instance) : instance;
+	}
+	
 	/**
 	 * You can call the find method with an array of primary keys, which will return a collection of the matching records
 	 * @param model the class which the result will be mapped into
@@ -523,7 +756,9 @@ public abstract class ModelRepository {
 	
 	
 	/**
-	 * Insert a new record in the database and return it. 
+	 * Insert a new record in the database and return it, in a single query.
+	 * When the database support a <code>returning</code> clause, the row is given back as stored, with its default values.
+	 * Otherwise the key generated by the database is set on the instance, which is returned.
 	 * @param instance
 	 * @return return the new saved instance, with generated keys if there are
 	 */
@@ -534,25 +769,34 @@ public abstract class ModelRepository {
 		Map<String,Object> data = mapping(instance); 
 
 		Object primaryKey = data.get(instance.getPrimaryKey());
+		if (primaryKey == null) {
+			data.remove(instance.getPrimaryKey());
+		}
 
+		if (DB.dialect().supportsReturning()) {
+			ResultSet resultSet = newSuperQuery(model).insertReturning(data);
+			try {
+				if (!resultSet.next()) {
+					throw new LadaljaException("Insertion failled, please check your database constraints");
+				}
+				return mapping(resultSet, model);
+			} catch (SQLException e) {
+				throw new LadaljaException(e);
+			} finally {
+				try {
+					resultSet.close();
+				} catch (SQLException e) {}
+			}
+		}
+		
 		if (primaryKey == null && DB.isInsertGetIdSupported()) {
 			Object id = newSuperQuery(model).insertGetId(data);
-			return findOrFail(model, id);
-		} else  {
+			EntityMetadata.of(model).getPrimaryProperty().set(instance, id);
+		} else {
 			newSuperQuery(model).insert(data);
-			QueryBuilderORM query = newQuery(model);
-			if (primaryKey != null) {
-				query.where(instance.getPrimaryKey(), primaryKey);
-			} else {
-				data.remove(instance.getPrimaryKey());
-				for (String key : data.keySet()) {
-					query = query.where(key, data.get(key));
-				}
-				query.orderBy(instance.getPrimaryKey(), "DESC");
-			}
-
-			return query.first(model);
 		}
+		instance.syncOriginal();
+		return instance;
 	}
 	
 	
@@ -572,6 +816,140 @@ public abstract class ModelRepository {
 	
 	
 	/**
+	 * Insert many new records in the database with JDBC batches, in one transaction.
+	 * The primary keys generated by the database are set on the instances whose primary key is null.
+	 * Unlike {@link #create(ModelRepository)}, instances are not reloaded from the database.
+	 * @param instances the instances to insert, of one or several model classes
+	 * @return the given instances, with generated keys
+	 */
+	public static <T extends ModelRepository> List<T> createMany(final List<T> instances)
+	{
+		if(instances == null){
+			throw new LadaljaException("Null argument list");
+		}
+		
+		return DB.transaction(new TransactionCallback<List<T>>() {
+			@Override
+			public List<T> run() {
+				for(List<ModelRepository> group : groupByModel(instances).values()){
+					ModelRepository first = group.get(0);
+					String primaryKey = first.getPrimaryKey();
+					
+					List<ModelRepository> generated = new ArrayList<ModelRepository>();
+					List<Map<String,Object>> generatedRows = new ArrayList<Map<String,Object>>();
+					List<Map<String,Object>> explicitRows = new ArrayList<Map<String,Object>>();
+					for(ModelRepository instance : group){
+						Map<String,Object> data = mapping(instance);
+						if(data.get(primaryKey) == null){
+							data.remove(primaryKey);
+							generated.add(instance);
+							generatedRows.add(data);
+						}else{
+							explicitRows.add(data);
+						}
+					}
+					
+					if(!explicitRows.isEmpty()){
+						newSuperQuery(first.getClass()).insertMany(explicitRows);
+					}
+					if(!generatedRows.isEmpty()){
+						List<Object> ids = newSuperQuery(first.getClass()).insertGetIds(generatedRows);
+						EntityMetadata.Property primaryProperty = EntityMetadata.of(first.getClass()).getPrimaryProperty();
+						for(int i = 0; i < ids.size(); i++){
+							primaryProperty.set(generated.get(i), ids.get(i));
+						}
+					}
+				}
+				for(ModelRepository instance : instances){
+					instance.syncOriginal();
+				}
+				return instances;
+			}
+		});
+	}
+	
+	
+	/**
+	 * Save many instances in one transaction, like calling {@link #save()} on each of them,
+	 * but with multi-row upserts, or when the database has none with one query to find which ones already exist
+	 * and JDBC batches to update and insert them.
+	 * @param instances the instances to save, of one or several model classes
+	 * @return the given instances, with generated keys for the new ones
+	 */
+	public static <T extends ModelRepository> List<T> saveAll(final List<T> instances)
+	{
+		if(instances == null){
+			throw new LadaljaException("Null argument list");
+		}
+		
+		return DB.transaction(new TransactionCallback<List<T>>() {
+			@Override
+			public List<T> run() {
+				List<ModelRepository> toCreate = new ArrayList<ModelRepository>();
+				for(List<ModelRepository> group : groupByModel(instances).values()){
+					ModelRepository first = group.get(0);
+					String primaryKey = first.getPrimaryKey();
+					
+					List<Map<String,Object>> rows = new ArrayList<Map<String,Object>>();
+					List<Object> keys = new ArrayList<Object>();
+					for(ModelRepository instance : group){
+						Map<String,Object> data = mapping(instance);
+						if(!data.containsKey(primaryKey)){
+							throw new LadaljaException("Primary key is not present : "+primaryKey+" is not present");
+						}
+						rows.add(data);
+						if(data.get(primaryKey) != null){
+							keys.add(data.get(primaryKey));
+						}
+					}
+					
+					if(DB.dialect().supportsUpsert()){
+						List<Map<String,Object>> keyed = new ArrayList<Map<String,Object>>(keys.size());
+						for(int i = 0; i < group.size(); i++){
+							if(rows.get(i).get(primaryKey) != null){
+								keyed.add(rows.get(i));
+							}else{
+								toCreate.add(group.get(i));
+							}
+						}
+						if(!keyed.isEmpty()){
+							newSuperQuery(first.getClass()).upsert(keyed, Collections.singletonList(primaryKey), null);
+						}
+						continue;
+					}
+					
+					Set<String> existing = new HashSet<String>();
+					for(int from = 0; from < keys.size(); from += EXISTENCE_PROBE_SIZE){
+						List<Object> chunk = keys.subList(from, Math.min(from + EXISTENCE_PROBE_SIZE, keys.size()));
+						for(Object key : newSuperQuery(first.getClass()).whereIn(primaryKey, chunk.toArray()).pluckList(primaryKey)){
+							existing.add(String.valueOf(key));
+						}
+					}
+					
+					List<Map<String,Object>> toUpdate = new ArrayList<Map<String,Object>>();
+					for(int i = 0; i < group.size(); i++){
+						Object key = rows.get(i).get(primaryKey);
+						if(key != null && existing.contains(String.valueOf(key))){
+							toUpdate.add(rows.get(i));
+						}else{
+							toCreate.add(group.get(i));
+						}
+					}
+					if(!toUpdate.isEmpty()){
+						newSuperQuery(first.getClass()).updateMany(primaryKey, toUpdate);
+					}
+				}
+				createMany(toCreate);
+				for(ModelRepository instance : instances){
+					instance.syncOriginal();
+				}
+				return instances;
+			}
+		});
+	}
+	
+	
+		/**
 	 * Delete a model without retrieving it
 	 * @param model the class of model in which object will be deleted
 	 * @param primaryKeyValues list of primary key of objects you want to delete
@@ -579,7 +957,7 @@ public abstract class ModelRepository {
 	public static void destroy(Class<? extends ModelRepository> model, Object... primaryKeyValues)
 	{
 		try {
-			String primaryKey = model.getDeclaredConstructor().newInstance().getPrimaryKey();
+			String primaryKey = getPrimaryKey(model);
 			if(primaryKeyValues != null)
 			{
 				for(Object primaryKeyValue : primaryKeyValues)
@@ -1064,24 +1442,11 @@ public abstract class ModelRepository {
 	public <T extends ModelRepository> T hasOne(Class<? extends ModelRepository> relatedModel, String foreignKey)
 	{
 		try {
-			String relatedModelPrimaryKey = relatedModel.getDeclaredConstructor().newInstance().getPrimaryKey();
-			String foreignKeyFieldName = foreignKey;
-			boolean found = false;
-			for(Field field : getClass().getDeclaredFields())
-			{
-				if(field.getDeclaredAnnotation(Ignore.class) != null){
-					continue;
-				}
-				if(field.getName().equals(foreignKey) || field.getDeclaredAnnotation(Column.class) != null && 
-						field.getDeclaredAnnotation(Column.class).value().equals(foreignKey)){
-					foreignKeyFieldName = field.getName();
-					found = true;
-				}
-			}
-			if(!found){
+			EntityMetadata.Property property = EntityMetadata.of(getClass()).findProperty(foreignKey);
+			if(property == null){
 				throw new LadaljaException(foreignKey+" column or field not found in the attributes list");
 			}
-			return newQuery(relatedModel).where(relatedModelPrimaryKey, get(foreignKeyFieldName)).first(relatedModel);
+			return find(relatedModel, property.get(this));
 		} catch (Exception e) {
 			throw new LadaljaException(e);
 		}
@@ -1102,12 +1467,7 @@ public abstract class ModelRepository {
 	 */
 	public <T extends ModelRepository> T belongsTo(Class<? extends ModelRepository> relatedModel, String foreignKey)
 	{
-		try {
-			String relatedModelPrimaryKey = relatedModel.getDeclaredConstructor().newInstance().getPrimaryKey();
-			return newQuery(relatedModel).where(relatedModelPrimaryKey, get(foreignKey)).first(relatedModel);
-		} catch (Exception e) {
-			throw new LadaljaException(e);
-		}
+		return find(relatedModel, get(foreignKey));
 	}
 	
 	
@@ -1123,7 +1483,7 @@ public abstract class ModelRepository {
 	 */
 	public <T extends ModelRepository> List<T> hasMany(Class<? extends ModelRepository> relatedModel, String foreignKey)
 	{
-		return newQuery(relatedModel).where(foreignKey, get(getPrimaryField().getName())).get(relatedModel);
+		return newQuery(relatedModel).where(foreignKey, getPrimaryKeyValue()).get(relatedModel);
 	}
 	
 	
@@ -1152,19 +1512,29 @@ public abstract class ModelRepository {
 											String foreignKey, 
 											String joiningForeignKey)
 	{
-		try{
-			List<Object> joiningPrimaryKeys = new ArrayList<Object>();
-			ResultSet resultSet = DB.table(relationshipJoiningTable).where(foreignKey, get(getPrimaryField().getName())).pluck(joiningForeignKey);
-			while(resultSet.next())
-			{
-				joiningPrimaryKeys.add( resultSet.getObject(joiningForeignKey) );
-			}
-			
-			String joiningPrimaryKey = relatedModel.getDeclaredConstructor().newInstance().getPrimaryKey();
-			return newQuery(relatedModel).whereIn(joiningPrimaryKey, joiningPrimaryKeys.toArray()).get(relatedModel);
-		}catch(Exception e){
-			throw new LadaljaException(e);
+		QueryBuilder joining = DB.table(relationshipJoiningTable).where(foreignKey, getPrimaryKeyValue());
+		String joiningPrimaryKey = getPrimaryKey(relatedModel);
+		if (hasIntegerKey(relatedModel)) {
+			return newQuery(relatedModel).whereIn(joiningPrimaryKey, joining.pluckLongs(joiningForeignKey)).get(relatedModel);
 		}
+		return newQuery(relatedModel).whereIn(joiningPrimaryKey, joining.pluckStrings(joiningForeignKey)).get(relatedModel);
+	}
+	
+	
+	
+	/**
+	 * @return true if the primary key of the model is bound to an integer field, so its values can be plucked without boxing
+	 */
+	private static boolean hasIntegerKey(Class<? extends ModelRepository> model)
+	{
+		EntityMetadata metadata = EntityMetadata.of(model);
+		EntityMetadata.Property property = metadata.findProperty(metadata.getPrimaryKey());
+		if (property == null) {
+			return false;
+		}
+		Class<?> type = property.getField().getType();
+		return type == Long.class || type == Integer.class || type == Short.class
+				|| type == long.class || type == int.class || type == short.class;
 	}
 	
 	
@@ -1187,24 +1557,11 @@ public abstract class ModelRepository {
 			throw new LadaljaException("Can't make relatonship with your self");
 		}
 		
-		boolean found = false;
-		String foreignKeyFieldName = foreignKey;
-		for(Field field : instance.getClass().getDeclaredFields())
-		{
-			if(field.getDeclaredAnnotation(Ignore.class) != null){
-				continue;
-			}
-			
-			if(field.getName().equals(foreignKey) || field.getDeclaredAnnotation(Column.class) != null && 
-					field.getDeclaredAnnotation(Column.class).value().equals(foreignKey)){
-				foreignKeyFieldName = field.getName();
-				found = true;
-			}
-		}
-		if(!found){
+		EntityMetadata.Property property = EntityMetadata.of(instance.getClass()).findProperty(foreignKey);
+		if(property == null){
 			throw new LadaljaException(foreignKey+" column or field not found in the attributes list");
 		}
-		instance.set(foreignKeyFieldName, get(getPrimaryField().getName()));
+		property.set(instance, getPrimaryKeyValue());
 		instance.save();
 		return instance;
 	}
@@ -1238,8 +1595,8 @@ public abstract class ModelRepository {
 		
 		if(!existings.contains(instance)){
 			Map<String,Object> map = new HashMap<String,Object>();
-			map.put(foreignKey, get(getPrimaryField().getName()));
-			map.put(joiningForeignKey, instance.get(instance.getPrimaryField().getName()));
+			map.put(foreignKey, getPrimaryKeyValue());
+			map.put(joiningForeignKey, instance.getPrimaryKeyValue());
 			DB.table(relationshipJoiningTable).insert(map);
 		}
 		
@@ -1270,8 +1627,8 @@ public abstract class ModelRepository {
 		for(T instance : instances)
 		{
 			DB.table(relationshipJoiningTable)
-				.where(foreignKey, get(getPrimaryField().getName()))
-					.where(joiningForeignKey, instance.get(instance.getPrimaryField().getName()))
+				.where(foreignKey, getPrimaryKeyValue())
+					.where(joiningForeignKey, instance.getPrimaryKeyValue())
 						.delete();
 		}
 	}
@@ -1298,8 +1655,8 @@ public abstract class ModelRepository {
 		}
 		
 		return DB.table(relationshipJoiningTable)
-					.where(foreignKey, get(getPrimaryField().getName()))
-						.where(joiningForeignKey, instance.get(instance.getPrimaryField().getName()))
+					.where(foreignKey, getPrimaryKeyValue())
+						.where(joiningForeignKey, instance.getPrimaryKeyValue())
 							.value(column);
 	}
 	
@@ -1322,8 +1679,8 @@ public abstract class ModelRepository {
 		}
 		
 		 return DB.table(relationshipJoiningTable)
-					.where(foreignKey, get(getPrimaryField().getName()))
-						.where(joiningForeignKey, instance.get(instance.getPrimaryField().getName()))
+					.where(foreignKey, getPrimaryKeyValue())
+						.where(joiningForeignKey, instance.getPrimaryKeyValue())
 							.firstMap();
 	}
 	
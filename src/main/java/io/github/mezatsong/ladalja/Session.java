@@ -0,0 +1,258 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.mezatsong.ladalja.query.QueryBuilder;
+
+/**
+ * A unit of work, bound to the current thread by {@link #run(TransactionCallback)}.<br>
+ * While it is open:
+ * <ul>
+ * <li>each row is mapped into one model instance only: {@link ModelRepository#find(Class, Object)}, first and get
+ * give back the instance already loaded for a primary key, and find does not query the database again</li>
+ * <li>{@link ModelRepository#save()} and {@link ModelRepository#delete()} are queued, then flushed together in one transaction
+ * when the session ends or {@link #flush()} is called</li>
+ * </ul>
+ * At flush, new models are inserted first, model class by model class in the order the classes were first saved,
+ * thus a parent saved before its children is inserted before them. The modified models are then updated and
+ * the deleted ones deleted, in the reverse order of their classes. Each group of models is written with JDBC batches.
+ * Keys generated by the database are set at flush, queries run before it do not see the queued writes.
+ * For example
+ * <pre>
+ * Session.run(new TransactionCallback&lt;Void&gt;() {
+ *     public Void run() {
+ *         User user = ModelRepository.find(User.class, id);
+ *         user.setName("New name");
+ *         user.save();
+ *         ModelRepository.find(User.class, id); // the same instance, without query
+ *         return null;
+ *     }
+ * });
+ * </pre>
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class Session {
+
+	private static final ThreadLocal<Session> CURRENT = new ThreadLocal<Session>();
+
+	/**
+	 * The loaded instances, by model class and primary key as a string
+	 */
+	private final Map<Class<? extends ModelRepository>, Map<String, ModelRepository>> identities = new HashMap<Class<? extends ModelRepository>, Map<String, ModelRepository>>();
+
+	private final Set<ModelRepository> saves = new LinkedHashSet<ModelRepository>();
+
+	private final Set<ModelRepository> deletes = new LinkedHashSet<ModelRepository>();
+
+
+	private Session() {
+	}
+
+
+	/**
+	 * Run the callback inside a new session, then flush the queued writes.
+	 * When called inside another session, the callback is part of it and nothing is flushed.
+	 * @param callback the work to do in the session
+	 * @return the value returned by the callback
+	 * @throws io.github.mezatsong.ladalja.LadaljaException wrapping the checked exception thrown by the callback,
+	 * runtime exceptions are thrown as they are. The queued writes are dropped if the callback throws
+	 */
+	public static <R> R run(TransactionCallback<R> callback) throws LadaljaException
+	{
+		if (CURRENT.get() != null) {
+			return call(callback);
+		}
+		Session session = new Session();
+		CURRENT.set(session);
+		try {
+			R result = call(callback);
+			session.flush();
+			return result;
+		} finally {
+			CURRENT.remove();
+		}
+	}
+
+
+	private static <R> R call(TransactionCallback<R> callback)
+	{
+		try {
+			return callback.run();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new LadaljaException(e);
+		}
+	}
+
+
+	/**
+	 * @return the session of the current thread, or null if there is none
+	 */
+	public static Session current()
+	{
+		return CURRENT.get();
+	}
+
+
+	/**
+	 * Write the queued saves and deletes in one transaction
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if a write fails, then nothing is written
+	 */
+	public void flush() throws LadaljaException
+	{
+		if (saves.isEmpty() && deletes.isEmpty()) {
+			return;
+		}
+		final List<ModelRepository> saved = new ArrayList<ModelRepository>(saves);
+		final List<ModelRepository> deleted = new ArrayList<ModelRepository>(deletes);
+		saves.clear();
+		deletes.clear();
+		DB.transaction(new TransactionCallback<Void>() {
+			@Override
+			public Void run() {
+				Map<Class<? extends ModelRepository>, List<ModelRepository>> inserts = new LinkedHashMap<Class<? extends ModelRepository>, List<ModelRepository>>();
+				Map<Class<? extends ModelRepository>, List<ModelRepository>> upserts = new LinkedHashMap<Class<? extends ModelRepository>, List<ModelRepository>>();
+				Map<Class<? extends ModelRepository>, List<ModelRepository>> updates = new LinkedHashMap<Class<? extends ModelRepository>, List<ModelRepository>>();
+				Map<Class<? extends ModelRepository>, List<Map<String,Object>>> updateRows = new LinkedHashMap<Class<? extends ModelRepository>, List<Map<String,Object>>>();
+				for (ModelRepository instance : saved) {
+					Object primaryKey = instance.getPrimaryKeyValue();
+					if (primaryKey == null) {
+						add(inserts, instance.getClass(), instance);
+						continue;
+					}
+					Map<String,Object> dirty = instance.getDirty();
+					String primaryColumn = EntityMetadata.of(instance.getClass()).getPrimaryKey();
+					if (dirty.containsKey(primaryColumn)) {
+						// never loaded or with a modified primary key
+						add(upserts, instance.getClass(), instance);
+					} else if (!dirty.isEmpty()) {
+						dirty.put(primaryColumn, primaryKey);
+						add(updates, instance.getClass(), instance);
+						add(updateRows, instance.getClass(), dirty);
+					}
+				}
+
+				for (List<ModelRepository> group : inserts.values()) {
+					ModelRepository.createMany(group);
+				}
+				for (List<ModelRepository> group : upserts.values()) {
+					ModelRepository.saveAll(group);
+				}
+				for (Map.Entry<Class<? extends ModelRepository>, List<Map<String,Object>>> entry : updateRows.entrySet()) {
+					EntityMetadata metadata = EntityMetadata.of(entry.getKey());
+					QueryBuilder<?> table = DB.table(metadata.getTable());
+					table.updateMany(metadata.getPrimaryKey(), entry.getValue());
+					for (ModelRepository instance : updates.get(entry.getKey())) {
+						instance.syncOriginal();
+					}
+				}
+
+				Map<Class<? extends ModelRepository>, List<Object>> keys = new LinkedHashMap<Class<? extends ModelRepository>, List<Object>>();
+				for (ModelRepository instance : deleted) {
+					add(keys, instance.getClass(), instance.getPrimaryKeyValue());
+				}
+				List<Class<? extends ModelRepository>> models = new ArrayList<Class<? extends ModelRepository>>(keys.keySet());
+				Collections.reverse(models);
+				for (Class<? extends ModelRepository> model : models) {
+					EntityMetadata metadata = EntityMetadata.of(model);
+					DB.table(metadata.getTable()).whereIn(metadata.getPrimaryKey(), keys.get(model).toArray()).delete();
+				}
+				return null;
+			}
+		});
+		for (ModelRepository instance : saved) {
+			attach(instance);
+		}
+	}
+
+
+	private static <V> void add(Map<Class<? extends ModelRepository>, List<V>> groups, Class<? extends ModelRepository> model, V value)
+	{
+		List<V> group = groups.get(model);
+		if (group == null) {
+			group = new ArrayList<V>();
+			groups.put(model, group);
+		}
+		group.add(value);
+	}
+
+
+	/**
+	 * Forget the loaded instances, the next reads query the database again. The queued writes are kept
+	 */
+	public void clear()
+	{
+		identities.clear();
+	}
+
+
+	/**
+	 * @return the instance loaded for this primary key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends ModelRepository> T get(Class<? extends ModelRepository> model, Object primaryKey)
+	{
+		Map<String, ModelRepository> instances = identities.get(model);
+		if (instances == null || primaryKey == null) {
+			return null;
+		}
+		return (T) instances.get(String.valueOf(primaryKey));
+	}
+
+
+	/**
+	 * @return the instance already loaded for the primary key of this one, or this one which is now the loaded instance
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends ModelRepository> T attach(T instance)
+	{
+		Object primaryKey = instance.getPrimaryKeyValue();
+		if (primaryKey == null) {
+			return instance;
+		}
+		Map<String, ModelRepository> instances = identities.get(instance.getClass());
+		if (instances == null) {
+			instances = new HashMap<String, ModelRepository>();
+			identities.put(instance.getClass(), instances);
+		}
+		String key = String.valueOf(primaryKey);
+		ModelRepository loaded = instances.get(key);
+		if (loaded != null) {
+			return (T) loaded;
+		}
+		instances.put(key, instance);
+		return instance;
+	}
+
+
+	void save(ModelRepository instance)
+	{
+		deletes.remove(instance);
+		saves.add(instance);
+	}
+
+
+	void delete(ModelRepository instance)
+	{
+		saves.remove(instance);
+		deletes.add(instance);
+		Map<String, ModelRepository> instances = identities.get(instance.getClass());
+		if (instances != null) {
+			instances.remove(String.valueOf(instance.getPrimaryKeyValue()));
+		}
+	}
+
+}
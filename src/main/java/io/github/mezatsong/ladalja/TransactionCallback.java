@@ -0,0 +1,30 @@
+/**
+ * 
+ */
+package io.github.mezatsong.ladalja;
+
+/**
+ * The work to run inside {@link io.github.mezatsong.ladalja.DB#transaction(TransactionCallback)}.<br>
+ * For example
+ * <pre>
+ * Role role = DB.transaction(new TransactionCallback&lt;Role&gt;() {
+ *     public Role run() {
+ *         user.save();
+ *         Role role = Role.create(new Role());
+ *         user.attach("role_user", "user_id", "role_id", role);
+ *         return role;
+ *     }
+ * });
+ * </pre>
+ * @param <R> the type of the result of the transaction
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ */
+public interface TransactionCallback<R> {
+
+	/**
+	 * Run the work of the transaction, throwing any exception roll it back
+	 * @return the result given back by DB.transaction
+	 * @throws Exception to roll back the transaction
+	 */
+	R run() throws Exception;
+}
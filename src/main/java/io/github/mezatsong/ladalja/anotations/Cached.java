@@ -0,0 +1,39 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.anotations;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+
+/**
+ * This annotation enable the cache of the rows of a model by primary key, shared by all threads.<p>
+ * The rows read by {@link io.github.mezatsong.ladalja.ModelRepository#find(Class, Object)},
+ * belongsTo and hasOne are cached, missing rows included, and evicted by the writes of Ladalja on the table.
+ * For example, to keep at most 5000 users during 5 minutes : <br>
+ * <code>@Cached</code>(size = 5000, ttl = 300000) public class User extends ModelRepository { ... }
+ * @see io.github.mezatsong.ladalja.EntityCache
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface Cached {
+
+	/**
+	 * @return maximal number of cached rows, the least recently used are evicted first
+	 */
+	int size() default 1000;
+
+	/**
+	 * @return time to live of a cached row in milliseconds
+	 */
+	long ttl() default 60000;
+}
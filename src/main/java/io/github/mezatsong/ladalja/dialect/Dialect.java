@@ -0,0 +1,376 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.dialect;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The SQL syntax and the features of a database engine, used by {@link io.github.mezatsong.ladalja.query.QueryBuilder}
+ * to render its queries and by {@link io.github.mezatsong.ladalja.DB} to choose the fastest way to run them.<br>
+ * The dialect is detected from the java.sql.DatabaseMetaData of the first connection, see {@link #of(DatabaseMetaData)}.
+ * SQLite, MySQL (and MariaDB), PostgreSQL and H2 are built in, other engines can be supported by extending this class
+ * and listing the subclass in <code>META-INF/services/io.github.mezatsong.ladalja.dialect.Dialect</code>.
+ * The defaults of this class follow the SQL standard.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public abstract class Dialect {
+
+	/**
+	 * The row locks a select can take
+	 */
+	public enum Lock {
+		/**
+		 * Other transactions can read the rows but not modify them
+		 */
+		SHARED,
+		/**
+		 * Other transactions can neither modify nor lock the rows
+		 */
+		UPDATE,
+		/**
+		 * Like UPDATE, but rows locked by another transaction are skipped instead of waited for
+		 */
+		UPDATE_SKIP_LOCKED
+	}
+
+
+	/**
+	 * Major version of the database, read by {@link #init(DatabaseMetaData)}
+	 */
+	protected int majorVersion;
+
+	/**
+	 * Minor version of the database, read by {@link #init(DatabaseMetaData)}
+	 */
+	protected int minorVersion;
+
+
+	/**
+	 * Find the dialect of a database: the dialects registered as services are tried first, then the built in ones.
+	 * A database none of them accepts is handled with the MySQL dialect, the syntax used before dialects existed.
+	 * @param metaData the metadata of a connection to the database
+	 * @return the dialect, initialized with the version of the database
+	 * @throws SQLException if the metadata can't be read
+	 */
+	public static Dialect of(DatabaseMetaData metaData) throws SQLException
+	{
+		for(Dialect dialect : ServiceLoader.load(Dialect.class)){
+			if(dialect.accepts(metaData)){
+				dialect.init(metaData);
+				return dialect;
+			}
+		}
+		for(Dialect dialect : builtIns()){
+			if(dialect.accepts(metaData)){
+				dialect.init(metaData);
+				return dialect;
+			}
+		}
+		Dialect dialect = new MySQLDialect();
+		dialect.init(metaData);
+		return dialect;
+	}
+
+
+	/**
+	 * Add to a JDBC URL the properties making the driver faster, like the rewriting of batches into multi-row statements.
+	 * It is done on the URL because connections are configured before the database can be asked which engine it is.
+	 * @param url the JDBC URL
+	 * @return the URL, with the properties of its built in dialect it does not already set
+	 */
+	public static String tuneUrl(String url)
+	{
+		if(url == null){
+			return null;
+		}
+		for(Dialect dialect : builtIns()){
+			String property = dialect.getBatchRewriteProperty();
+			if(property != null && url.startsWith(dialect.getUrlPrefix())
+					&& !url.contains(property.substring(0, property.indexOf('=') + 1))){
+				return url + (url.indexOf('?') < 0 ? '?' : '&') + property;
+			}
+		}
+		return url;
+	}
+
+
+	private static Dialect[] builtIns()
+	{
+		return new Dialect[] { new SQLiteDialect(), new MySQLDialect(), new PostgreSQLDialect(), new H2Dialect() };
+	}
+
+
+	/**
+	 * @param metaData the metadata of a connection to the database
+	 * @return true if this dialect is the one of the database
+	 * @throws SQLException if the metadata can't be read
+	 */
+	protected abstract boolean accepts(DatabaseMetaData metaData) throws SQLException;
+
+
+	/**
+	 * Read what this dialect needs to know about the database, by default its version
+	 * @param metaData the metadata of a connection to the database
+	 * @throws SQLException if the metadata can't be read
+	 */
+	protected void init(DatabaseMetaData metaData) throws SQLException
+	{
+		majorVersion = metaData.getDatabaseMajorVersion();
+		minorVersion = metaData.getDatabaseMinorVersion();
+	}
+
+
+	/**
+	 * @return true if the database version is at least major.minor
+	 */
+	protected boolean isAtLeast(int major, int minor)
+	{
+		return majorVersion > major || (majorVersion == major && minorVersion >= minor);
+	}
+
+
+	/**
+	 * @return the beginning of the JDBC URLs of this database, like <code>jdbc:mysql:</code>
+	 */
+	protected abstract String getUrlPrefix();
+
+
+	/**
+	 * @return the name of the database engine
+	 */
+	public abstract String getName();
+
+
+	/**
+	 * @return the character around quoted identifiers
+	 */
+	protected char getQuote()
+	{
+		return '"';
+	}
+
+
+	/**
+	 * Append a quoted identifier, a qualified one like <code>users.id</code> is quoted part by part
+	 * @param sql the query being rendered
+	 * @param identifier a table or a column
+	 */
+	public void quote(StringBuilder sql, String identifier)
+	{
+		char quote = getQuote();
+		sql.append(quote);
+		int start = 0;
+		for(int dot = identifier.indexOf('.'); dot >= 0; dot = identifier.indexOf('.', start)){
+			sql.append(identifier, start, dot).append(quote).append('.').append(quote);
+			start = dot + 1;
+		}
+		sql.append(identifier, start, identifier.length()).append(quote);
+	}
+
+
+	/**
+	 * @return the function giving a random number, to order rows randomly
+	 */
+	public String getRandom()
+	{
+		return "random()";
+	}
+
+
+	/**
+	 * @param lock the lock to take
+	 * @return the clause ending a select to take the lock, or null if the database does not lock rows.
+	 * A lock the database does not have is replaced by the closest stronger one
+	 */
+	public String getLock(Lock lock)
+	{
+		switch(lock){
+			case SHARED:
+				return "for share";
+			case UPDATE_SKIP_LOCKED:
+				return supportsSkipLocked() ? "for update skip locked" : "for update";
+			default:
+				return "for update";
+		}
+	}
+
+
+	/**
+	 * @return true if rows locked by another transaction can be skipped
+	 */
+	public boolean supportsSkipLocked()
+	{
+		return false;
+	}
+
+
+	/**
+	 * @param table the table to empty
+	 * @return the statement removing all the rows of the table
+	 */
+	public String truncateQuery(String table)
+	{
+		StringBuilder sql = new StringBuilder("truncate table ");
+		quote(sql, table);
+		return sql.toString();
+	}
+
+
+	/**
+	 * @return the maximal number of parameters bound in one statement, it limits the rows of a multi-row insert
+	 */
+	public int getMaxParameters()
+	{
+		return 32767;
+	}
+
+
+	/**
+	 * @return true if the driver give the key generated by an insert, see java.sql.Statement#RETURN_GENERATED_KEYS
+	 */
+	public boolean supportsGeneratedKeys()
+	{
+		return true;
+	}
+
+
+	/**
+	 * @return true if the driver give the key generated for each row of a batch, not only for the last one
+	 */
+	public boolean supportsBatchGeneratedKeys()
+	{
+		return true;
+	}
+
+
+	/**
+	 * @return true if an insert can give the inserted rows with a <code>returning</code> clause
+	 */
+	public boolean supportsReturning()
+	{
+		return false;
+	}
+
+
+	/**
+	 * @return the JDBC URL property rewriting batches into multi-row statements, like <code>name=true</code>, or null
+	 */
+	protected String getBatchRewriteProperty()
+	{
+		return null;
+	}
+
+
+	/**
+	 * @param table the table where the rows are inserted
+	 * @param columns the inserted columns
+	 * @param rowCount number of rows, each one is a group of placeholders
+	 * @return a multi-row insert statement
+	 */
+	public String insertQuery(String table, List<String> columns, int rowCount)
+	{
+		StringBuilder sql = new StringBuilder(32 + table.length() + columns.size() * 16 + rowCount * columns.size() * 2);
+		appendInsert(sql, "insert into ", table, columns, rowCount);
+		return sql.toString();
+	}
+
+
+	/**
+	 * @return true if {@link #upsertQuery(String, List, int, List, List)} is supported
+	 */
+	public boolean supportsUpsert()
+	{
+		return true;
+	}
+
+
+	/**
+	 * Render an insert which updates the existing row instead when a row with the same unique columns exists,
+	 * by default with <code>on conflict (uniqueBy) do update</code>
+	 * @param table the table where the rows are inserted
+	 * @param columns the inserted columns
+	 * @param rowCount number of rows, each one is a group of placeholders
+	 * @param uniqueBy the columns of a unique index or of the primary key
+	 * @param updateColumns the columns updated when the row exists, if empty the existing row is left as is
+	 * @return the upsert statement
+	 */
+	public String upsertQuery(String table, List<String> columns, int rowCount, List<String> uniqueBy, List<String> updateColumns)
+	{
+		StringBuilder sql = new StringBuilder(64 + table.length() + columns.size() * 40 + rowCount * columns.size() * 2);
+		appendInsert(sql, "insert into ", table, columns, rowCount);
+		sql.append(" on conflict (");
+		appendColumns(sql, uniqueBy);
+		if(updateColumns.isEmpty()){
+			sql.append(") do nothing");
+			return sql.toString();
+		}
+		sql.append(") do update set ");
+		for(int i = 0; i < updateColumns.size(); i++){
+			if(i > 0){
+				sql.append(", ");
+			}
+			quote(sql, updateColumns.get(i));
+			sql.append(" = excluded.");
+			quote(sql, updateColumns.get(i));
+		}
+		return sql.toString();
+	}
+
+
+	/**
+	 * Append <code>verb table (columns) values (?,...),(?,...)</code>
+	 */
+	protected void appendInsert(StringBuilder sql, String verb, String table, List<String> columns, int rowCount)
+	{
+		sql.append(verb);
+		quote(sql, table);
+		sql.append(" (");
+		appendColumns(sql, columns);
+		sql.append(") ");
+		appendValues(sql, columns.size(), rowCount);
+	}
+
+
+	/**
+	 * Append <code>values (?,...),(?,...)</code>
+	 */
+	protected void appendValues(StringBuilder sql, int columnCount, int rowCount)
+	{
+		sql.append("values ");
+		for(int row = 0; row < rowCount; row++){
+			sql.append(row > 0 ? ",(" : "(");
+			for(int i = 0; i < columnCount; i++){
+				sql.append(i > 0 ? ",?" : "?");
+			}
+			sql.append(')');
+		}
+	}
+
+
+	/**
+	 * Append the quoted columns separated by commas
+	 */
+	protected void appendColumns(StringBuilder sql, List<String> columns)
+	{
+		for(int i = 0; i < columns.size(); i++){
+			if(i > 0){
+				sql.append(',');
+			}
+			quote(sql, columns.get(i));
+		}
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return getName() + " " + majorVersion + "." + minorVersion;
+	}
+
+}
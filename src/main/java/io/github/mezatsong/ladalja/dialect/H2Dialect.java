@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.dialect;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * H2: shared locks are taken as update locks, and upserts are <code>merge into ... key (...)</code> statements.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public class H2Dialect extends Dialect {
+
+	@Override
+	protected boolean accepts(DatabaseMetaData metaData) throws SQLException
+	{
+		return metaData.getDatabaseProductName().equalsIgnoreCase("h2");
+	}
+
+
+	@Override
+	protected String getUrlPrefix()
+	{
+		return "jdbc:h2:";
+	}
+
+
+	@Override
+	public String getName()
+	{
+		return "H2";
+	}
+
+
+	@Override
+	public String getLock(Lock lock)
+	{
+		return "for update";
+	}
+
+
+	/**
+	 * H2 merge statements update all the given columns of an existing row, the updateColumns are not used
+	 */
+	@Override
+	public String upsertQuery(String table, List<String> columns, int rowCount, List<String> uniqueBy, List<String> updateColumns)
+	{
+		StringBuilder sql = new StringBuilder(64 + table.length() + columns.size() * 16 + rowCount * columns.size() * 2);
+		sql.append("merge into ");
+		quote(sql, table);
+		sql.append(" (");
+		appendColumns(sql, columns);
+		sql.append(") key (");
+		appendColumns(sql, uniqueBy);
+		sql.append(") ");
+		appendValues(sql, columns.size(), rowCount);
+		return sql.toString();
+	}
+
+}
@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.dialect;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * MySQL and MariaDB: identifiers between backquotes, upserts with <code>on duplicate key update</code>
+ * and batches rewritten into multi-row statements by Connector/J.
+ * The inserted values are read through the row alias <code>new</code> since MySQL 8.0.19, which deprecates <code>values(col)</code>.
+ * Rows locked by another transaction can be skipped since MySQL 8.0 and MariaDB 10.6.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public class MySQLDialect extends Dialect {
+
+	private boolean mariaDB;
+	
+	/**
+	 * Patch version of the database, the third number of its product version
+	 */
+	protected int patchVersion;
+
+
+	@Override
+	protected boolean accepts(DatabaseMetaData metaData) throws SQLException
+	{
+		String name = metaData.getDatabaseProductName().toLowerCase();
+		return name.contains("mysql") || name.contains("mariadb");
+	}
+
+
+	@Override
+	protected void init(DatabaseMetaData metaData) throws SQLException
+	{
+		super.init(metaData);
+		mariaDB = metaData.getDatabaseProductName().toLowerCase().contains("mariadb")
+				|| metaData.getDatabaseProductVersion().toLowerCase().contains("mariadb");
+		String[] numbers = metaData.getDatabaseProductVersion().split("[^0-9]+");
+		patchVersion = numbers.length > 2 && !numbers[2].isEmpty() ? Integer.parseInt(numbers[2]) : 0;
+	}
+
+
+	@Override
+	protected String getUrlPrefix()
+	{
+		return "jdbc:mysql:";
+	}
+
+
+	@Override
+	public String getName()
+	{
+		return mariaDB ? "MariaDB" : "MySQL";
+	}
+
+
+	@Override
+	protected char getQuote()
+	{
+		return '`';
+	}
+
+
+	@Override
+	public String getRandom()
+	{
+		return "rand()";
+	}
+
+
+	@Override
+	public String getLock(Lock lock)
+	{
+		if(lock == Lock.SHARED){
+			return "lock in share mode";
+		}
+		return super.getLock(lock);
+	}
+
+
+	@Override
+	public boolean supportsSkipLocked()
+	{
+		return mariaDB ? isAtLeast(10, 6) : isAtLeast(8, 0);
+	}
+
+
+	/**
+	 * @return true if the row inserted by an upsert can be named by an alias, since MySQL 8.0.19 and never in MariaDB
+	 */
+	public boolean supportsRowAlias()
+	{
+		if(mariaDB){
+			return false;
+		}
+		return isAtLeast(8, 1) || (majorVersion == 8 && minorVersion == 0 && patchVersion >= 19);
+	}
+
+
+	@Override
+	public String truncateQuery(String table)
+	{
+		StringBuilder sql = new StringBuilder("truncate ");
+		quote(sql, table);
+		return sql.toString();
+	}
+
+
+	@Override
+	public int getMaxParameters()
+	{
+		return 65535;
+	}
+
+
+	@Override
+	protected String getBatchRewriteProperty()
+	{
+		return "rewriteBatchedStatements=true";
+	}
+
+
+	@Override
+	public String upsertQuery(String table, List<String> columns, int rowCount, List<String> uniqueBy, List<String> updateColumns)
+	{
+		StringBuilder sql = new StringBuilder(64 + table.length() + columns.size() * 40 + rowCount * columns.size() * 2);
+		appendInsert(sql, "insert into ", table, columns, rowCount);
+		boolean rowAlias = supportsRowAlias();
+		if(rowAlias){
+			sql.append(" as new");
+		}
+		sql.append(" on duplicate key update ");
+		if(updateColumns.isEmpty()){
+			// assigning a column to itself leaves the existing row as is
+			quote(sql, uniqueBy.get(0));
+			sql.append(" = ");
+			quote(sql, uniqueBy.get(0));
+			return sql.toString();
+		}
+		for(int i = 0; i < updateColumns.size(); i++){
+			if(i > 0){
+				sql.append(", ");
+			}
+			quote(sql, updateColumns.get(i));
+			if(rowAlias){
+				sql.append(" = new.");
+				quote(sql, updateColumns.get(i));
+			}else{
+				sql.append(" = values(");
+				quote(sql, updateColumns.get(i));
+				sql.append(')');
+			}
+		}
+		return sql.toString();
+	}
+
+}
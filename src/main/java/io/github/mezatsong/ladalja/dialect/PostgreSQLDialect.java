@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.dialect;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+/**
+ * PostgreSQL: inserts can give the new rows with <code>returning</code>, upserts use <code>on conflict</code>
+ * since 9.5, like <code>skip locked</code>, and the driver rewrites batched inserts into multi-row statements.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public class PostgreSQLDialect extends Dialect {
+
+	@Override
+	protected boolean accepts(DatabaseMetaData metaData) throws SQLException
+	{
+		return metaData.getDatabaseProductName().toLowerCase().contains("postgresql");
+	}
+
+
+	@Override
+	protected String getUrlPrefix()
+	{
+		return "jdbc:postgresql:";
+	}
+
+
+	@Override
+	public String getName()
+	{
+		return "PostgreSQL";
+	}
+
+
+	@Override
+	public boolean supportsSkipLocked()
+	{
+		return isAtLeast(9, 5);
+	}
+
+
+	@Override
+	public boolean supportsReturning()
+	{
+		return true;
+	}
+
+
+	@Override
+	public boolean supportsUpsert()
+	{
+		return isAtLeast(9, 5);
+	}
+
+
+	@Override
+	protected String getBatchRewriteProperty()
+	{
+		return "reWriteBatchedInserts=true";
+	}
+
+}
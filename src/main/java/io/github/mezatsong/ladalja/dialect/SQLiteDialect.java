@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.dialect;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+/**
+ * SQLite: the whole database is locked by a writing transaction, so selects take no row lock.
+ * Upserts need SQLite 3.24 and <code>returning</code> 3.35, the number of parameters is limited to 999 before 3.32.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public class SQLiteDialect extends Dialect {
+
+	@Override
+	protected boolean accepts(DatabaseMetaData metaData) throws SQLException
+	{
+		return metaData.getDatabaseProductName().toLowerCase().contains("sqlite");
+	}
+
+
+	@Override
+	protected void init(DatabaseMetaData metaData) throws SQLException
+	{
+		// some drivers give 0 as minor version, the product version is like 3.15.1
+		super.init(metaData);
+		String[] version = metaData.getDatabaseProductVersion().split("\\.");
+		try {
+			majorVersion = Integer.parseInt(version[0].trim());
+			minorVersion = version.length > 1 ? Integer.parseInt(version[1].trim()) : 0;
+		} catch (NumberFormatException e) {
+			// keep the version given by the driver
+		}
+	}
+
+
+	@Override
+	protected String getUrlPrefix()
+	{
+		return "jdbc:sqlite:";
+	}
+
+
+	@Override
+	public String getName()
+	{
+		return "SQLite";
+	}
+
+
+	@Override
+	protected char getQuote()
+	{
+		return '`';
+	}
+
+
+	@Override
+	public String getLock(Lock lock)
+	{
+		return null;
+	}
+
+
+	@Override
+	public String truncateQuery(String table)
+	{
+		StringBuilder sql = new StringBuilder("delete from ");
+		quote(sql, table);
+		return sql.toString();
+	}
+
+
+	@Override
+	public int getMaxParameters()
+	{
+		return isAtLeast(3, 32) ? 32766 : 999;
+	}
+
+
+	@Override
+	public boolean supportsBatchGeneratedKeys()
+	{
+		// only the key of the last row of a batch is given
+		return false;
+	}
+
+
+	@Override
+	public boolean supportsReturning()
+	{
+		return isAtLeast(3, 35);
+	}
+
+
+	@Override
+	public boolean supportsUpsert()
+	{
+		return isAtLeast(3, 24);
+	}
+
+}
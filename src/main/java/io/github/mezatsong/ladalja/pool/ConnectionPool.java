@@ -0,0 +1,573 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.pool;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.github.mezatsong.ladalja.LadaljaException;
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+/**
+ * A small bounded pool of JDBC connections used by {@link io.github.mezatsong.ladalja.DB}.<br>
+ * <p>
+ * The pool keeps between <code>minSize</code> and <code>maxSize</code> physical connections.
+ * When every connection is in use, a caller waits at most <code>timeout</code> milliseconds before a
+ * {@link io.github.mezatsong.ladalja.LadaljaException} is thrown. Idle connections above <code>minSize</code>
+ * which have not been used for <code>idleTimeout</code> milliseconds are closed, and an idle connection
+ * is validated with java.sql.Connection#isValid(int) before being handed out again, unless it has been used in the last 500ms.
+ * <p>
+ * Connections are leased per thread: {@link #acquire()} returns the connection already held by the
+ * current thread if there is one, so nested calls (a transaction, or a query issued while iterating a ResultSet)
+ * run on the same connection. Each {@link #acquire()} must be matched by one {@link #release(PooledConnection)},
+ * the connection goes back to the pool when the last lease is released.
+ * The last lease may be released by another thread, for example when a ResultSet is closed by the thread it is given to,
+ * the connection then stops being the one of the thread which acquired it.
+ * Connections held by threads that died without releasing them are reclaimed when the pool runs dry.
+ * So are the connections only held by ResultSets of live threads left unused for <code>leakTimeout</code> milliseconds,
+ * out of any transaction or pin: such a ResultSet, never closed nor read until its end, is closed by the pool.
+ * Connections are validated, reset and closed without holding the lock of the pool.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public class ConnectionPool {
+
+	/**
+	 * Connections used more recently than this number of milliseconds are not validated again on borrow
+	 */
+	private static final long VALIDATION_GRACE = 500;
+
+	/**
+	 * Default number of prepared statements cached per connection
+	 */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+	/**
+	 * Default time in milliseconds after which an unused ResultSet holding a connection is closed when the pool runs dry
+	 */
+	public static final long DEFAULT_LEAK_TIMEOUT = 500;
+
+	private final String url;
+
+	private final String username;
+
+	private final String password;
+
+	private final int minSize;
+
+	private final int maxSize;
+
+	private final long timeout;
+
+	private final long idleTimeout;
+
+	private final int validationTimeout;
+
+	private final int statementCacheSize;
+
+	private final long leakTimeout;
+
+	private final CacheStatistics statementCacheStatistics = new CacheStatistics();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition available = lock.newCondition();
+
+	private final Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+
+	private final List<PooledConnection> leased = new ArrayList<PooledConnection>();
+
+	private final ThreadLocal<PooledConnection> bound = new ThreadLocal<PooledConnection>();
+
+	private int size;
+
+	private boolean closed;
+
+
+	/**
+	 * Create a new pool and open its first <code>minSize</code> connections
+	 * @param url the JDBC url
+	 * @param username user name, may be null
+	 * @param password password, may be null
+	 * @param minSize number of connections kept open even when idle
+	 * @param maxSize maximal number of connections opened at the same time
+	 * @param timeout maximal time in milliseconds to wait for a free connection
+	 * @param idleTimeout time in milliseconds after which an idle connection above minSize is closed
+	 * @param validationTimeout time in seconds given to the driver to validate a connection on borrow, 0 disable validation
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the sizes are not coherent or a connection can't be opened
+	 */
+	public ConnectionPool(String url, String username, String password,
+			int minSize, int maxSize, long timeout, long idleTimeout, int validationTimeout)
+	{
+		this(url, username, password, minSize, maxSize, timeout, idleTimeout, validationTimeout, DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+
+	/**
+	 * Create a new pool and open its first <code>minSize</code> connections
+	 * @param url the JDBC url
+	 * @param username user name, may be null
+	 * @param password password, may be null
+	 * @param minSize number of connections kept open even when idle
+	 * @param maxSize maximal number of connections opened at the same time
+	 * @param timeout maximal time in milliseconds to wait for a free connection
+	 * @param idleTimeout time in milliseconds after which an idle connection above minSize is closed
+	 * @param validationTimeout time in seconds given to the driver to validate a connection on borrow, 0 disable validation
+	 * @param statementCacheSize number of prepared statements cached per connection, 0 disable the cache
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the sizes are not coherent or a connection can't be opened
+	 */
+	public ConnectionPool(String url, String username, String password,
+			int minSize, int maxSize, long timeout, long idleTimeout, int validationTimeout, int statementCacheSize)
+	{
+		this(url, username, password, minSize, maxSize, timeout, idleTimeout, validationTimeout, statementCacheSize, DEFAULT_LEAK_TIMEOUT);
+	}
+
+
+	/**
+	 * Create a new pool and open its first <code>minSize</code> connections
+	 * @param url the JDBC url
+	 * @param username user name, may be null
+	 * @param password password, may be null
+	 * @param minSize number of connections kept open even when idle
+	 * @param maxSize maximal number of connections opened at the same time
+	 * @param timeout maximal time in milliseconds to wait for a free connection
+	 * @param idleTimeout time in milliseconds after which an idle connection above minSize is closed
+	 * @param validationTimeout time in seconds given to the driver to validate a connection on borrow, 0 disable validation
+	 * @param statementCacheSize number of prepared statements cached per connection, 0 disable the cache
+	 * @param leakTimeout time in milliseconds after which the ResultSets holding alone a connection are closed
+	 * when the pool runs dry, if none of them has been used meanwhile, 0 disable it
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the sizes are not coherent or a connection can't be opened
+	 */
+	public ConnectionPool(String url, String username, String password,
+			int minSize, int maxSize, long timeout, long idleTimeout, int validationTimeout, int statementCacheSize, long leakTimeout)
+	{
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+			throw new LadaljaException("Invalid pool size, min: " + minSize + ", max: " + maxSize);
+		}
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.timeout = timeout;
+		this.idleTimeout = idleTimeout;
+		this.validationTimeout = validationTimeout;
+		this.statementCacheSize = statementCacheSize;
+		this.leakTimeout = leakTimeout;
+
+		for (int i = 0; i < minSize; i++) {
+			idle.addFirst(open());
+			size++;
+		}
+	}
+
+
+	/**
+	 * Lease a connection to the current thread,
+	 * reusing the one it already holds if there is one.
+	 * @return the connection of the current thread
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if no connection get free before the timeout
+	 */
+	public PooledConnection acquire()
+	{
+		PooledConnection pooled = bound();
+		if (pooled != null && pooled.retain()) {
+			if (pooled.owner == Thread.currentThread()) {
+				return pooled;
+			}
+			// given back and borrowed by another thread meanwhile
+			release(pooled);
+		}
+		pooled = borrow();
+		pooled.leases.set(1);
+		bound.set(pooled);
+		return pooled;
+	}
+
+
+	/**
+	 * Release one lease taken with {@link #acquire()},
+	 * the connection goes back to the pool when the last lease is released
+	 * @param pooled the connection returned by {@link #acquire()}
+	 */
+	public void release(PooledConnection pooled)
+	{
+		if (pooled == null || pooled.leases.decrementAndGet() > 0) {
+			return;
+		}
+		if (bound.get() == pooled) {
+			bound.remove();
+		}
+		giveBack(pooled);
+	}
+
+
+	/**
+	 * @return the connection currently leased to this thread, or null if it does not hold any
+	 */
+	public PooledConnection current()
+	{
+		return bound();
+	}
+
+
+	/**
+	 * Lease a connection to the current thread until {@link #unpin()} is called.
+	 * Pinning twice has no more effect than pinning once.
+	 * @return the connection of the current thread
+	 */
+	public PooledConnection pin()
+	{
+		PooledConnection pooled = acquire();
+		if (pooled.pinned) {
+			release(pooled);
+		} else {
+			pooled.pinned = true;
+		}
+		return pooled;
+	}
+
+
+	/**
+	 * Release the lease taken by {@link #pin()}, if any
+	 */
+	public void unpin()
+	{
+		PooledConnection pooled = bound();
+		if (pooled != null && pooled.pinned) {
+			pooled.pinned = false;
+			release(pooled);
+		}
+	}
+
+
+	/**
+	 * Close all idle connections and refuse new borrowing,
+	 * connections still in use will be closed when they are released
+	 */
+	public void close()
+	{
+		List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+		lock.lock();
+		try {
+			closed = true;
+			toClose.addAll(idle);
+			size -= idle.size();
+			idle.clear();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		for (PooledConnection pooled : toClose) {
+			closeQuietly(pooled);
+		}
+	}
+
+
+	/**
+	 * @return the number of physical connections currently opened by this pool
+	 */
+	public int getSize()
+	{
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return the number of connections waiting in the pool
+	 */
+	public int getIdleCount()
+	{
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return the number of connections currently leased to threads
+	 */
+	public int getLeasedCount()
+	{
+		lock.lock();
+		try {
+			return leased.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return hit, miss and eviction counters of the prepared statements caches of all connections
+	 */
+	public CacheStatistics getStatementCacheStatistics()
+	{
+		return statementCacheStatistics;
+	}
+
+
+	/**
+	 * @return the maximal number of connections of this pool
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+
+
+	/**
+	 * @return the connection bound to the current thread, or null if it has none or its last lease was released by another thread
+	 */
+	private PooledConnection bound()
+	{
+		PooledConnection pooled = bound.get();
+		if (pooled != null && pooled.owner != Thread.currentThread()) {
+			bound.remove();
+			return null;
+		}
+		return pooled;
+	}
+
+
+	private PooledConnection borrow()
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		while (true) {
+			PooledConnection candidate = null;
+			boolean create = false;
+			List<PooledConnection> evicted = new ArrayList<PooledConnection>(0);
+			List<PooledConnection> abandoned = new ArrayList<PooledConnection>(0);
+			List<ReleasingResultSet> leaked = new ArrayList<ReleasingResultSet>(0);
+
+			lock.lock();
+			try {
+				while (candidate == null && !create && abandoned.isEmpty() && leaked.isEmpty()) {
+					if (closed) {
+						throw new LadaljaException("The connection pool is closed");
+					}
+					evictIdle(evicted);
+					candidate = idle.pollFirst();
+					if (candidate != null) {
+						candidate.owner = Thread.currentThread();
+						leased.add(candidate);
+					} else if (size < maxSize) {
+						size++;
+						create = true;
+					} else if (!reclaimAbandoned(abandoned) && !findLeaks(leaked)) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							throw new LadaljaException("Timeout after " + timeout + "ms while waiting for a database connection, all "
+									+ maxSize + " connections are in use");
+						}
+						// wake up to look for leaked ResultSets again
+						available.awaitNanos(leakTimeout > 0 ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(leakTimeout)) : remaining);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new LadaljaException("Interrupted while waiting for a database connection", e);
+			} finally {
+				lock.unlock();
+				for (PooledConnection pooled : evicted) {
+					closeQuietly(pooled);
+				}
+			}
+
+			if (!abandoned.isEmpty()) {
+				for (PooledConnection pooled : abandoned) {
+					giveBack(pooled);
+				}
+				continue;
+			}
+			if (!leaked.isEmpty()) {
+				// gives the connections back once their last ResultSet is closed
+				for (ReleasingResultSet result : leaked) {
+					result.release();
+				}
+				continue;
+			}
+
+			if (create) {
+				try {
+					candidate = open();
+				} catch (LadaljaException e) {
+					discard(null);
+					throw e;
+				}
+				lock.lock();
+				try {
+					candidate.owner = Thread.currentThread();
+					leased.add(candidate);
+				} finally {
+					lock.unlock();
+				}
+				return candidate;
+			}
+
+			if (isValid(candidate)) {
+				return candidate;
+			}
+			discard(candidate);
+		}
+	}
+
+
+	private void giveBack(PooledConnection pooled)
+	{
+		pooled.reset();
+		boolean close = false;
+		lock.lock();
+		try {
+			leased.remove(pooled);
+			pooled.owner = null;
+			pooled.leases.set(0);
+			pooled.pinned = false;
+			pooled.lastUsed = System.currentTimeMillis();
+			if (closed) {
+				size--;
+				close = true;
+			} else {
+				idle.addFirst(pooled);
+				available.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (close) {
+			closeQuietly(pooled);
+		}
+	}
+
+
+	private void discard(PooledConnection pooled)
+	{
+		lock.lock();
+		try {
+			if (pooled != null) {
+				leased.remove(pooled);
+			}
+			size--;
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+		closeQuietly(pooled);
+	}
+
+
+	/**
+	 * Remove from the pool the connections idle for too long, the least recently used are at the tail.
+	 * Must be called with the lock held, the connections are closed by the caller once the lock is released.
+	 * @param evicted the list to add the removed connections to
+	 */
+	private void evictIdle(List<PooledConnection> evicted)
+	{
+		long limit = System.currentTimeMillis() - idleTimeout;
+		while (size > minSize && !idle.isEmpty() && idle.peekLast().lastUsed < limit) {
+			evicted.add(idle.pollLast());
+			size--;
+		}
+	}
+
+
+	/**
+	 * Take back the connections whose owner thread is dead.
+	 * Must be called with the lock held, the connections are reset and given back by the caller once the lock is released.
+	 * @param abandoned the list to add the reclaimed connections to
+	 * @return true if at least one connection has been reclaimed
+	 */
+	private boolean reclaimAbandoned(List<PooledConnection> abandoned)
+	{
+		Iterator<PooledConnection> iterator = leased.iterator();
+		while (iterator.hasNext()) {
+			PooledConnection pooled = iterator.next();
+			Thread owner = pooled.owner;
+			if (owner != null && !owner.isAlive()) {
+				iterator.remove();
+				abandoned.add(pooled);
+			}
+		}
+		return !abandoned.isEmpty();
+	}
+
+
+	/**
+	 * Find the ResultSets holding alone a leased connection, left unused for more than leakTimeout.
+	 * Must be called with the lock held, the ResultSets are closed by the caller once the lock is released.
+	 * @param leaked the list to add the ResultSets to
+	 * @return true if at least one ResultSet has been found
+	 */
+	private boolean findLeaks(List<ReleasingResultSet> leaked)
+	{
+		if (leakTimeout <= 0) {
+			return false;
+		}
+		long limit = System.currentTimeMillis() - leakTimeout;
+		for (PooledConnection pooled : leased) {
+			List<ReleasingResultSet> results = pooled.leakedResults(limit);
+			if (results != null) {
+				leaked.addAll(results);
+			}
+		}
+		return !leaked.isEmpty();
+	}
+
+
+	private boolean isValid(PooledConnection pooled)
+	{
+		if (validationTimeout <= 0 || System.currentTimeMillis() - pooled.lastUsed < VALIDATION_GRACE) {
+			return true;
+		}
+		try {
+			return pooled.getConnection().isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+
+	private PooledConnection open()
+	{
+		try {
+			Connection connection = (username == null)
+					? DriverManager.getConnection(url)
+					: DriverManager.getConnection(url, username, password);
+			return new PooledConnection(connection, statementCacheSize, statementCacheStatistics);
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		}
+	}
+
+
+	private static void closeQuietly(PooledConnection pooled)
+	{
+		if (pooled == null) {
+			return;
+		}
+		try {
+			pooled.getConnection().close();
+		} catch (SQLException e) {}
+	}
+
+}
@@ -0,0 +1,254 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.mezatsong.ladalja.LadaljaException;
+
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+/**
+ * A physical JDBC connection managed by a {@link io.github.mezatsong.ladalja.pool.ConnectionPool}.<br>
+ * It keeps the book-keeping the pool needs: when it was last used, which thread currently holds it
+ * and how many nested leases this thread has taken on it, and the cache of its prepared statements.
+ * <p>
+ * It also drives JDBC transactions: the outermost {@link #beginTransaction()} switch auto-commit off,
+ * nested ones set a savepoint, and {@link #commit()} / {@link #rollBack()} close the innermost level.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class PooledConnection {
+
+	private final Connection connection;
+
+	private final StatementCache statementCache;
+
+	private final Deque<Savepoint> savepoints = new ArrayDeque<Savepoint>();
+
+	private volatile int transactionDepth;
+
+	/**
+	 * The ResultSets read from this connection and not closed yet, each one holding a lease
+	 */
+	private final List<ReleasingResultSet> openResults = new ArrayList<ReleasingResultSet>(1);
+
+	long lastUsed;
+
+	/**
+	 * The thread this connection is bound to, null once it is given back to the pool,
+	 * so a thread whose lease was released by another one can see it does not hold it anymore
+	 */
+	volatile Thread owner;
+
+	/**
+	 * Number of leases taken and not released yet, released leases may be released by another thread
+	 */
+	final AtomicInteger leases = new AtomicInteger();
+
+	volatile boolean pinned;
+
+
+	PooledConnection(Connection connection, int statementCacheSize, CacheStatistics statistics) {
+		this.connection = connection;
+		this.statementCache = new StatementCache(connection, statementCacheSize, statistics);
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * @return the underlying JDBC connection
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+
+	/**
+	 * @return the prepared statements cache of this connection
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+
+	/**
+	 * @return true if a transaction is running on this connection
+	 */
+	public boolean isInTransaction() {
+		return transactionDepth > 0;
+	}
+
+
+	/**
+	 * @return the number of nested transactions running on this connection
+	 */
+	public int getTransactionDepth() {
+		return transactionDepth;
+	}
+
+
+	/**
+	 * Start a transaction, or a savepoint if a transaction is already running
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the driver refuse it
+	 */
+	public void beginTransaction() {
+		try {
+			if (transactionDepth == 0) {
+				connection.setAutoCommit(false);
+			} else {
+				savepoints.push(connection.setSavepoint());
+			}
+			transactionDepth++;
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		}
+	}
+
+
+	/**
+	 * Commit the innermost transaction, for a nested one the savepoint is released
+	 * and the changes will be committed with the outermost transaction
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if no transaction is running or the commit failed
+	 */
+	public void commit() {
+		if (transactionDepth == 0) {
+			throw new LadaljaException("There is no transaction to commit");
+		}
+		try {
+			if (transactionDepth == 1) {
+				try {
+					connection.commit();
+				} finally {
+					transactionDepth = 0;
+					connection.setAutoCommit(true);
+				}
+			} else {
+				Savepoint savepoint = savepoints.pop();
+				transactionDepth--;
+				try {
+					connection.releaseSavepoint(savepoint);
+				} catch (SQLException e) {
+					// releasing is only an optimization, not every driver support it
+				}
+			}
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		}
+	}
+
+
+	/**
+	 * Roll back the innermost transaction, for a nested one only the changes made since its savepoint are undone
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if no transaction is running or the roll back failed
+	 */
+	public void rollBack() {
+		if (transactionDepth == 0) {
+			throw new LadaljaException("There is no transaction to roll back");
+		}
+		try {
+			if (transactionDepth == 1) {
+				try {
+					connection.rollback();
+				} finally {
+					transactionDepth = 0;
+					connection.setAutoCommit(true);
+				}
+			} else {
+				Savepoint savepoint = savepoints.pop();
+				transactionDepth--;
+				connection.rollback(savepoint);
+			}
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		}
+	}
+
+
+	/**
+	 * Take one more lease, unless all of them have already been released
+	 * @return true if the lease was taken
+	 */
+	boolean retain() {
+		while (true) {
+			int count = leases.get();
+			if (count <= 0) {
+				return false;
+			}
+			if (leases.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+
+	void opened(ReleasingResultSet result) {
+		synchronized (openResults) {
+			openResults.add(result);
+		}
+	}
+
+
+	void closed(ReleasingResultSet result) {
+		synchronized (openResults) {
+			openResults.remove(result);
+		}
+	}
+
+
+	/**
+	 * @param limit time in milliseconds before which the ResultSets must have been used last
+	 * @return the open ResultSets, if they hold all the leases of this connection out of any transaction or pin
+	 * and none of them has been used since limit, otherwise null
+	 */
+	List<ReleasingResultSet> leakedResults(long limit) {
+		if (transactionDepth > 0 || pinned) {
+			return null;
+		}
+		synchronized (openResults) {
+			if (openResults.isEmpty() || leases.get() != openResults.size()) {
+				return null;
+			}
+			for (ReleasingResultSet result : openResults) {
+				if (result.getLastUsed() >= limit) {
+					return null;
+				}
+			}
+			return new ArrayList<ReleasingResultSet>(openResults);
+		}
+	}
+
+
+	/**
+	 * Roll back every running transaction, used before giving an abandoned connection back to the pool
+	 */
+	void reset() {
+		if (transactionDepth == 0) {
+			return;
+		}
+		savepoints.clear();
+		transactionDepth = 0;
+		try {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		} catch (SQLException e) {}
+	}
+
+
+	/**
+	 * @return the thread currently holding this connection, or null if it is idle
+	 */
+	public Thread getOwner() {
+		return owner;
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Wrap a java.sql.ResultSet so that a release action runs exactly once,
+ * either when the ResultSet is closed or when it is exhausted (next() return false).<br>
+ * It is used by {@link io.github.mezatsong.ladalja.DB} to give the connection back
+ * to the {@link io.github.mezatsong.ladalja.pool.ConnectionPool} once the rows have been read.
+ * When it is given the connection it is read from, the pool can close it after it is left unused,
+ * see {@link ConnectionPool#ConnectionPool(String, String, String, int, int, long, long, int, int, long)}.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class ReleasingResultSet implements InvocationHandler {
+
+	private final ResultSet delegate;
+
+	private final PooledConnection pooled;
+
+	private final AtomicReference<Runnable> onRelease;
+
+	private volatile long lastUsed = System.currentTimeMillis();
+
+
+	private ReleasingResultSet(ResultSet delegate, PooledConnection pooled, Runnable onRelease) {
+		this.delegate = delegate;
+		this.pooled = pooled;
+		this.onRelease = new AtomicReference<Runnable>(onRelease);
+	}
+
+
+	/**
+	 * @param resultSet the ResultSet to wrap
+	 * @param onRelease action to run once, after the ResultSet has been closed
+	 * @return a ResultSet behaving like the given one
+	 */
+	public static ResultSet wrap(ResultSet resultSet, Runnable onRelease)
+	{
+		return wrap(resultSet, null, onRelease);
+	}
+
+
+	/**
+	 * @param resultSet the ResultSet to wrap
+	 * @param pooled the connection the ResultSet is read from, holding a lease released by onRelease, may be null
+	 * @param onRelease action to run once, after the ResultSet has been closed
+	 * @return a ResultSet behaving like the given one
+	 */
+	public static ResultSet wrap(ResultSet resultSet, PooledConnection pooled, Runnable onRelease)
+	{
+		ReleasingResultSet handler = new ReleasingResultSet(resultSet, pooled, onRelease);
+		if (pooled != null) {
+			pooled.opened(handler);
+		}
+		return (ResultSet) Proxy.newProxyInstance(
+			ReleasingResultSet.class.getClassLoader(),
+			new Class<?>[] { ResultSet.class },
+			handler
+		);
+	}
+
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		lastUsed = System.currentTimeMillis();
+		String name = method.getName();
+		boolean noArgs = args == null || args.length == 0;
+
+		if (noArgs && name.equals("close")) {
+			release();
+			return null;
+		}
+		if (noArgs && name.equals("isClosed") && onRelease.get() == null) {
+			return Boolean.TRUE;
+		}
+
+		Object result;
+		try {
+			result = method.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+
+		if (noArgs && name.equals("next") && Boolean.FALSE.equals(result)) {
+			release();
+		}
+		return result;
+	}
+
+
+	/**
+	 * @return time in milliseconds when the ResultSet was used last
+	 */
+	long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+
+	/**
+	 * Close the ResultSet and run the release action, unless it is already done
+	 */
+	void release()
+	{
+		Runnable action = onRelease.getAndSet(null);
+		if (action == null) {
+			return;
+		}
+		if (pooled != null) {
+			pooled.closed(this);
+		}
+		try {
+			delegate.close();
+		} catch (Exception e) {
+		} finally {
+			action.run();
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+/**
+ * A bounded least recently used cache of java.sql.PreparedStatement, keyed by SQL text,
+ * owned by one {@link io.github.mezatsong.ladalja.pool.PooledConnection}.<br>
+ * <p>
+ * A statement taken with {@link #prepare(String)} must be given back with {@link #release(PreparedStatement)}.
+ * While it is in use (for example its ResultSet is still being read), asking for the same SQL gives a new statement
+ * which is closed on release instead of being cached. Statements evicted from the cache are closed as soon as they are not in use.
+ * <p>
+ * A statement is mostly taken and given back by the thread holding the connection, but the statement of a ResultSet
+ * is given back by the thread closing or exhausting it, which may be another one. The methods are synchronized for that.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class StatementCache {
+
+	/**
+	 * Statements returning generated keys are cached under their SQL text prefixed with this
+	 */
+	private static final String GENERATED_KEYS_PREFIX = "\u0000keys:";
+
+	private final Connection connection;
+
+	private final int capacity;
+
+	private final CacheStatistics statistics;
+
+	private final Map<String, PreparedStatement> statements;
+
+	private final Map<PreparedStatement, String> cached = new IdentityHashMap<PreparedStatement, String>();
+
+	private final Map<PreparedStatement, Boolean> inUse = new IdentityHashMap<PreparedStatement, Boolean>();
+
+
+	StatementCache(Connection connection, int capacity, CacheStatistics statistics) {
+		this.connection = connection;
+		this.capacity = capacity;
+		this.statistics = statistics;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+	}
+
+
+	/**
+	 * Give a prepared statement for the query, from the cache if possible
+	 * @param sql the query
+	 * @return a statement whose parameters have to be set
+	 * @throws SQLException if the statement can't be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException
+	{
+		return prepare(sql, Statement.NO_GENERATED_KEYS);
+	}
+
+
+	/**
+	 * Give a prepared statement for the query, from the cache if possible
+	 * @param sql the query
+	 * @param autoGeneratedKeys java.sql.Statement#RETURN_GENERATED_KEYS or java.sql.Statement#NO_GENERATED_KEYS
+	 * @return a statement whose parameters have to be set
+	 * @throws SQLException if the statement can't be prepared
+	 */
+	public synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException
+	{
+		boolean returnKeys = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
+		String key = returnKeys ? GENERATED_KEYS_PREFIX + sql : sql;
+		PreparedStatement statement = statements.get(key);
+		if (statement != null && !inUse.containsKey(statement)) {
+			statistics.hit();
+			inUse.put(statement, Boolean.TRUE);
+			return statement;
+		}
+
+		statistics.miss();
+		PreparedStatement fresh = returnKeys
+				? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+				: connection.prepareStatement(sql);
+		if (statement == null && capacity > 0) {
+			statements.put(key, fresh);
+			cached.put(fresh, key);
+			evict();
+		}
+		inUse.put(fresh, Boolean.TRUE);
+		return fresh;
+	}
+
+
+	/**
+	 * Give back a statement taken with {@link #prepare(String)}, closing it if it is not cached
+	 * @param statement the statement, may be null
+	 */
+	public synchronized void release(PreparedStatement statement)
+	{
+		if (statement == null) {
+			return;
+		}
+		inUse.remove(statement);
+		if (!cached.containsKey(statement)) {
+			close(statement);
+			return;
+		}
+		try {
+			statement.clearParameters();
+		} catch (SQLException e) {
+			statements.remove(cached.remove(statement));
+			close(statement);
+		}
+	}
+
+
+	/**
+	 * @return number of cached statements
+	 */
+	public synchronized int size()
+	{
+		return statements.size();
+	}
+
+
+	/**
+	 * Close every cached statement which is not in use
+	 */
+	public synchronized void clear()
+	{
+		Iterator<PreparedStatement> iterator = statements.values().iterator();
+		while (iterator.hasNext()) {
+			PreparedStatement statement = iterator.next();
+			iterator.remove();
+			cached.remove(statement);
+			if (!inUse.containsKey(statement)) {
+				close(statement);
+			}
+		}
+	}
+
+
+	private void evict()
+	{
+		if (statements.size() <= capacity) {
+			return;
+		}
+		List<PreparedStatement> evicted = new ArrayList<PreparedStatement>();
+		Iterator<PreparedStatement> iterator = statements.values().iterator();
+		while (statements.size() > capacity && iterator.hasNext()) {
+			PreparedStatement statement = iterator.next();
+			iterator.remove();
+			cached.remove(statement);
+			evicted.add(statement);
+			statistics.eviction();
+		}
+		for (PreparedStatement statement : evicted) {
+			if (!inUse.containsKey(statement)) {
+				close(statement);
+			}
+		}
+	}
+
+
+	private static void close(PreparedStatement statement)
+	{
+		try {
+			statement.close();
+		} catch (SQLException e) {}
+	}
+
+}
@@ -0,0 +1,285 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import io.github.mezatsong.ladalja.EntityMapper;
+import io.github.mezatsong.ladalja.anotations.Column;
+import io.github.mezatsong.ladalja.anotations.Ignore;
+
+/**
+ * An optional annotation processor generating an {@link io.github.mezatsong.ladalja.EntityMapper} for each
+ * {@link io.github.mezatsong.ladalja.ModelRepository} subclass it compiles.<br>
+ * The generated mapper reads the columns by index and calls the getters and setters directly,
+ * so models are mapped without reflection. Models it can't handle (abstract, generic, private,
+ * without an accessible no-arg constructor or without a getter and a setter for each column) are left
+ * to the reflection based mapping, a note tells why.
+ * <p>
+ * The processor is not registered as a service, enable it explicitly, with Maven:
+ * <pre>
+ * &lt;plugin&gt;
+ *   &lt;artifactId&gt;maven-compiler-plugin&lt;/artifactId&gt;
+ *   &lt;configuration&gt;
+ *     &lt;annotationProcessors&gt;
+ *       &lt;annotationProcessor&gt;io.github.mezatsong.ladalja.processor.MapperProcessor&lt;/annotationProcessor&gt;
+ *     &lt;/annotationProcessors&gt;
+ *   &lt;/configuration&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ * or with <code>javac -processor io.github.mezatsong.ladalja.processor.MapperProcessor</code>.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+@SupportedAnnotationTypes("*")
+public class MapperProcessor extends AbstractProcessor {
+
+	private static final String MODEL = "io.github.mezatsong.ladalja.ModelRepository";
+
+	private static final String CONVERTERS = "io.github.mezatsong.ladalja.tools.Converters";
+
+	/**
+	 * Field types converted with {@link io.github.mezatsong.ladalja.tools.Converters}, by qualified name
+	 */
+	private static final Map<String, String> CONVERSIONS = new HashMap<String, String>();
+
+	static {
+		CONVERSIONS.put("java.lang.Long", "asLong");
+		CONVERSIONS.put("java.lang.Integer", "asInteger");
+		CONVERSIONS.put("java.lang.Double", "asDouble");
+		CONVERSIONS.put("java.lang.Float", "asFloat");
+		CONVERSIONS.put("java.lang.Short", "asShort");
+		CONVERSIONS.put("java.math.BigInteger", "asBigInteger");
+		CONVERSIONS.put("java.math.BigDecimal", "asBigDecimal");
+		CONVERSIONS.put("java.lang.String", "asString");
+		CONVERSIONS.put("java.sql.Date", "asDate");
+		CONVERSIONS.put("java.sql.Timestamp", "asTimestamp");
+	}
+
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		TypeElement model = processingEnv.getElementUtils().getTypeElement(MODEL);
+		if (model == null) {
+			return false;
+		}
+		TypeMirror modelType = processingEnv.getTypeUtils().erasure(model.asType());
+		for (TypeElement type : types(roundEnv.getRootElements())) {
+			if (!type.equals(model) && processingEnv.getTypeUtils().isSubtype(type.asType(), modelType)) {
+				generate(type);
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * @return the classes among the elements and their nested classes
+	 */
+	private static List<TypeElement> types(Set<? extends Element> elements)
+	{
+		List<TypeElement> types = new ArrayList<TypeElement>();
+		List<Element> pending = new ArrayList<Element>(elements);
+		while (!pending.isEmpty()) {
+			Element element = pending.remove(pending.size() - 1);
+			if (element.getKind() == ElementKind.CLASS) {
+				types.add((TypeElement) element);
+				pending.addAll(element.getEnclosedElements());
+			}
+		}
+		return types;
+	}
+
+
+	private void generate(TypeElement type)
+	{
+		String problem = check(type);
+		if (problem != null) {
+			note(type, "no mapper generated for " + type + ": " + problem);
+			return;
+		}
+
+		List<String> columns = new ArrayList<String>();
+		List<String> reads = new ArrayList<String>();
+		List<String> writes = new ArrayList<String>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC) || field.getAnnotation(Ignore.class) != null) {
+				continue;
+			}
+			String name = field.getSimpleName().toString();
+			String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			Column column = field.getAnnotation(Column.class);
+			ExecutableElement getter = method(type, "get" + capitalized, null);
+			ExecutableElement setter = method(type, "set" + capitalized, field.asType());
+			if (getter == null || setter == null) {
+				note(type, "no mapper generated for " + type + ": field " + name + " needs a non private getter and setter");
+				return;
+			}
+			columns.add(column != null ? column.value() : name);
+			reads.add("instance.set" + capitalized + "(" + conversion(field.asType()) + ")");
+			writes.add("instance.get" + capitalized + "()");
+		}
+
+		PackageElement pack = processingEnv.getElementUtils().getPackageOf(type);
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String simpleName = (pack.isUnnamed() ? binaryName : binaryName.substring(pack.getQualifiedName().length() + 1)) + EntityMapper.SUFFIX;
+		String modelName = type.getQualifiedName().toString();
+
+		StringBuilder source = new StringBuilder();
+		if (!pack.isUnnamed()) {
+			source.append("package ").append(pack.getQualifiedName()).append(";\n\n");
+		}
+		source.append("/**\n * Generated by ").append(MapperProcessor.class.getName()).append(" for ").append(modelName).append(", do not edit.\n */\n");
+		source.append("public final class ").append(simpleName).append(" implements ")
+			.append(EntityMapper.class.getName()).append("<").append(modelName).append("> {\n\n");
+
+		source.append("\tprivate static final String[] COLUMNS = {");
+		for (int i = 0; i < columns.size(); i++) {
+			source.append(i > 0 ? ", " : "").append('"').append(escape(columns.get(i))).append('"');
+		}
+		source.append("};\n\n");
+
+		source.append("\t@Override\n\tpublic String[] getColumns() {\n\t\treturn COLUMNS;\n\t}\n\n");
+
+		source.append("\t@Override\n\t@SuppressWarnings(\"unchecked\")\n");
+		source.append("\tpublic ").append(modelName).append(" map(java.sql.ResultSet resultSet, int[] indexes) throws java.sql.SQLException {\n");
+		source.append("\t\t").append(modelName).append(" instance = new ").append(modelName).append("();\n");
+		source.append("\t\tObject value;\n");
+		for (int i = 0; i < reads.size(); i++) {
+			source.append("\t\tif (indexes[").append(i).append("] > 0 && (value = resultSet.getObject(indexes[").append(i).append("])) != null) {\n");
+			source.append("\t\t\t").append(reads.get(i)).append(";\n\t\t}\n");
+		}
+		source.append("\t\treturn instance;\n\t}\n\n");
+
+		source.append("\t@Override\n\tpublic Object[] values(").append(modelName).append(" instance) {\n");
+		source.append("\t\treturn new Object[] {");
+		for (int i = 0; i < writes.size(); i++) {
+			source.append(i > 0 ? ", " : "").append(writes.get(i));
+		}
+		source.append("};\n\t}\n\n}\n");
+
+		String generatedName = pack.isUnnamed() ? simpleName : pack.getQualifiedName() + "." + simpleName;
+		try {
+			Writer writer = processingEnv.getFiler().createSourceFile(generatedName, type).openWriter();
+			try {
+				writer.write(source.toString());
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can't write " + generatedName + ": " + e.getMessage(), type);
+		}
+	}
+
+
+	/**
+	 * @return why no mapper can be generated for the model, or null if it can
+	 */
+	private static String check(TypeElement type)
+	{
+		Set<Modifier> modifiers = type.getModifiers();
+		if (modifiers.contains(Modifier.ABSTRACT)) {
+			return "it is abstract";
+		}
+		if (!type.getTypeParameters().isEmpty()) {
+			return "it is generic";
+		}
+		for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+			if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+				return "it is private";
+			}
+			if (((TypeElement) enclosing).getNestingKind() != NestingKind.TOP_LEVEL && !enclosing.getModifiers().contains(Modifier.STATIC)) {
+				return "it is an inner class";
+			}
+		}
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return null;
+			}
+		}
+		return "it has no accessible no-arg constructor";
+	}
+
+
+	/**
+	 * Find a non private method declared in the type
+	 * @param parameter type of the only parameter, or null for a method without parameter
+	 */
+	private ExecutableElement method(TypeElement type, String name, TypeMirror parameter)
+	{
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (!method.getSimpleName().contentEquals(name) || method.getModifiers().contains(Modifier.PRIVATE)) {
+				continue;
+			}
+			List<? extends VariableElement> parameters = method.getParameters();
+			if (parameter == null ? parameters.isEmpty()
+					: parameters.size() == 1 && processingEnv.getTypeUtils().isSameType(parameters.get(0).asType(), parameter)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * @return the expression converting <code>value</code> into the type of the field
+	 */
+	private String conversion(TypeMirror fieldType)
+	{
+		TypeMirror type = fieldType;
+		if (type.getKind().isPrimitive()) {
+			type = processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).asType();
+		}
+		String converter = CONVERSIONS.get(processingEnv.getTypeUtils().erasure(type).toString());
+		if (converter != null) {
+			return CONVERTERS + "." + converter + "(value)";
+		}
+		return "(" + type + ") value";
+	}
+
+
+	private void note(Element element, String message)
+	{
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+	}
+
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+}
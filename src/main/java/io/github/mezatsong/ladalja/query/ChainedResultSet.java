@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Iterator;
+
+/**
+ * A java.sql.ResultSet reading the rows of several ResultSets of the same query one after the other.<br>
+ * It is used by {@link QueryBuilder} to merge the results of a query run once per chunk of a large whereIn list.
+ * The ResultSets are only opened when the previous one is exhausted, so a single connection is leased at a time.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+final class ChainedResultSet implements InvocationHandler {
+
+	private final Iterator<ResultSet> resultSets;
+
+	private ResultSet current;
+
+	private boolean closed;
+
+
+	private ChainedResultSet(Iterator<ResultSet> resultSets) {
+		this.resultSets = resultSets;
+		this.current = resultSets.next();
+	}
+
+
+	/**
+	 * @param resultSets the ResultSets to read, opened when iterated, at least one
+	 * @return a ResultSet giving the rows of all of them
+	 */
+	static ResultSet chain(Iterator<ResultSet> resultSets)
+	{
+		return (ResultSet) Proxy.newProxyInstance(
+			ChainedResultSet.class.getClassLoader(),
+			new Class<?>[] { ResultSet.class },
+			new ChainedResultSet(resultSets)
+		);
+	}
+
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		String name = method.getName();
+		boolean noArgs = args == null || args.length == 0;
+
+		if (noArgs && name.equals("next")) {
+			while (!closed && !current.next()) {
+				if (!resultSets.hasNext()) {
+					return Boolean.FALSE;
+				}
+				current.close();
+				current = resultSets.next();
+			}
+			return !closed;
+		}
+		if (noArgs && name.equals("close")) {
+			// the next ResultSets are not opened yet
+			closed = true;
+			current.close();
+			return null;
+		}
+
+		try {
+			return method.invoke(current, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+}
@@ -0,0 +1,529 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.mezatsong.ladalja.LadaljaException;
+
+/**
+ * A query result stored by columns rather than by rows, for aggregations done in the JVM on many rows.<br>
+ * Each column is one array of primitive values: integer columns are read into a <code>long[]</code>,
+ * decimal columns into a <code>double[]</code> and all others into a <code>String[]</code>,
+ * nulls are recorded in a bitmap. Scanning a column is then a loop over an array, without boxing nor maps.
+ * <pre>
+ * ColumnSet sales = DB.table("sales").select("region", "amount").getColumns();
+ * ColumnSet.Column amount = sales.getColumn("amount");
+ * double total = amount.sum();
+ * BitSet north = sales.getColumn("region").equalTo("north");
+ * double northTotal = amount.sum(north);
+ * </pre>
+ * The type of a column is chosen from the metadata of the ResultSet, as reported by the driver.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class ColumnSet {
+
+	/**
+	 * How the values of a column are stored
+	 */
+	public enum Type {
+		LONG, DOUBLE, STRING
+	}
+
+
+	/**
+	 * Select rows of a ColumnSet, see {@link ColumnSet#filter(Filter)}
+	 */
+	public interface Filter {
+
+		/**
+		 * @param row index of a row, from 0
+		 * @return true to select the row
+		 */
+		boolean accept(int row);
+	}
+
+
+	private final int size;
+
+	private final List<Column> columns;
+
+
+	private ColumnSet(int size, List<Column> columns) {
+		this.size = size;
+		this.columns = columns;
+	}
+
+
+	/**
+	 * Read all the remaining rows of a ResultSet in one pass, it is not closed
+	 * @param resultSet the ResultSet to read
+	 * @return the columns
+	 * @throws SQLException if a value can't be read
+	 */
+	static ColumnSet read(ResultSet resultSet) throws SQLException
+	{
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		Column[] columns = new Column[metaData.getColumnCount()];
+		for(int i = 0; i < columns.length; i++){
+			columns[i] = new Column(metaData.getColumnLabel(i + 1), type(metaData.getColumnType(i + 1)));
+		}
+
+		int size = 0;
+		while(resultSet.next()){
+			for(int i = 0; i < columns.length; i++){
+				columns[i].read(resultSet, i + 1, size);
+			}
+			size++;
+		}
+		for(Column column : columns){
+			column.trim(size);
+		}
+		return new ColumnSet(size, Collections.unmodifiableList(Arrays.asList(columns)));
+	}
+
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+
+	/**
+	 * @return the columns, in the order of the query
+	 */
+	public List<Column> getColumns()
+	{
+		return columns;
+	}
+
+
+	/**
+	 * @param index index of a column, from 0
+	 * @return the column
+	 */
+	public Column getColumn(int index)
+	{
+		return columns.get(index);
+	}
+
+
+	/**
+	 * @param name label of a column, compared ignoring case
+	 * @return the column
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if there is no such column
+	 */
+	public Column getColumn(String name)
+	{
+		for(Column column : columns){
+			if(column.name.equalsIgnoreCase(name)){
+				return column;
+			}
+		}
+		throw new LadaljaException("No column " + name + " in " + getColumnNames());
+	}
+
+
+	/**
+	 * @return the labels of the columns, in the order of the query
+	 */
+	public List<String> getColumnNames()
+	{
+		List<String> names = new ArrayList<String>(columns.size());
+		for(Column column : columns){
+			names.add(column.name);
+		}
+		return names;
+	}
+
+
+	/**
+	 * @param filter the rows to select
+	 * @return the indexes of the accepted rows
+	 */
+	public BitSet filter(Filter filter)
+	{
+		BitSet selection = new BitSet(size);
+		for(int row = 0; row < size; row++){
+			if(filter.accept(row)){
+				selection.set(row);
+			}
+		}
+		return selection;
+	}
+
+
+	private static Type type(int sqlType)
+	{
+		switch(sqlType){
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return Type.LONG;
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return Type.DOUBLE;
+		default:
+			return Type.STRING;
+		}
+	}
+
+
+
+	/**
+	 * The values of one column, in one array of the type of the column, and the rows where the value is null.
+	 * The arrays returned by {@link #longs()}, {@link #doubles()} and {@link #strings()} are the storage of the column,
+	 * they must not be modified; a null value is stored as 0 in a numeric column.
+	 */
+	public static final class Column {
+
+		private final String name;
+
+		private final Type type;
+
+		private final BitSet nulls;
+
+		private long[] longs;
+
+		private double[] doubles;
+
+		private String[] strings;
+
+
+		private Column(String name, Type type) {
+			this.name = name;
+			this.type = type;
+			this.nulls = new BitSet();
+			switch(type){
+			case LONG:
+				longs = new long[64];
+				break;
+			case DOUBLE:
+				doubles = new double[64];
+				break;
+			default:
+				strings = new String[64];
+			}
+		}
+
+
+		private void read(ResultSet resultSet, int index, int row) throws SQLException
+		{
+			switch(type){
+			case LONG:
+				if(row == longs.length){
+					longs = Arrays.copyOf(longs, row * 2);
+				}
+				longs[row] = resultSet.getLong(index);
+				break;
+			case DOUBLE:
+				if(row == doubles.length){
+					doubles = Arrays.copyOf(doubles, row * 2);
+				}
+				doubles[row] = resultSet.getDouble(index);
+				break;
+			default:
+				if(row == strings.length){
+					strings = Arrays.copyOf(strings, row * 2);
+				}
+				strings[row] = resultSet.getString(index);
+			}
+			if(resultSet.wasNull()){
+				nulls.set(row);
+			}
+		}
+
+
+		private void trim(int size)
+		{
+			if(longs != null && longs.length != size){
+				longs = Arrays.copyOf(longs, size);
+			}
+			if(doubles != null && doubles.length != size){
+				doubles = Arrays.copyOf(doubles, size);
+			}
+			if(strings != null && strings.length != size){
+				strings = Arrays.copyOf(strings, size);
+			}
+		}
+
+
+		/**
+		 * @return the label of the column
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+
+		/**
+		 * @return how the values are stored
+		 */
+		public Type getType()
+		{
+			return type;
+		}
+
+
+		/**
+		 * @return the number of values, null ones included
+		 */
+		public int size()
+		{
+			switch(type){
+			case LONG:
+				return longs.length;
+			case DOUBLE:
+				return doubles.length;
+			default:
+				return strings.length;
+			}
+		}
+
+
+		/**
+		 * @param row index of a row, from 0
+		 * @return true if the value of the row is null
+		 */
+		public boolean isNull(int row)
+		{
+			return nulls.get(row);
+		}
+
+
+		/**
+		 * @return the rows where the value is null, the bitmap must not be modified
+		 */
+		public BitSet getNulls()
+		{
+			return nulls;
+		}
+
+
+		/**
+		 * @return the values of an integer column
+		 * @throws io.github.mezatsong.ladalja.LadaljaException if the column is not an integer column
+		 */
+		public long[] longs()
+		{
+			check(Type.LONG);
+			return longs;
+		}
+
+
+		/**
+		 * @return the values of a decimal column
+		 * @throws io.github.mezatsong.ladalja.LadaljaException if the column is not a decimal column
+		 */
+		public double[] doubles()
+		{
+			check(Type.DOUBLE);
+			return doubles;
+		}
+
+
+		/**
+		 * @return the values of a text column
+		 * @throws io.github.mezatsong.ladalja.LadaljaException if the column is not a text column
+		 */
+		public String[] strings()
+		{
+			check(Type.STRING);
+			return strings;
+		}
+
+
+		/**
+		 * @param row index of a row, from 0
+		 * @return the value of the row, or null
+		 */
+		public Object get(int row)
+		{
+			if(nulls.get(row)){
+				return null;
+			}
+			switch(type){
+			case LONG:
+				return longs[row];
+			case DOUBLE:
+				return doubles[row];
+			default:
+				return strings[row];
+			}
+		}
+
+
+		/**
+		 * @return the sum of the non null values of a numeric column
+		 */
+		public double sum()
+		{
+			return sum(null);
+		}
+
+
+		/**
+		 * @param rows the rows to sum, all rows if null
+		 * @return the sum of the non null values of a numeric column in the given rows
+		 */
+		public double sum(BitSet rows)
+		{
+			checkNumeric();
+			double sum = 0;
+			int size = size();
+			for(int row = next(rows, 0, size); row >= 0; row = next(rows, row + 1, size)){
+				if(!nulls.get(row)){
+					sum += type == Type.LONG ? longs[row] : doubles[row];
+				}
+			}
+			return sum;
+		}
+
+
+		/**
+		 * @return the minimal non null value of a numeric column, or null if there is none
+		 */
+		public Double min()
+		{
+			return min(null);
+		}
+
+
+		/**
+		 * @param rows the rows to look at, all rows if null
+		 * @return the minimal non null value of a numeric column in the given rows, or null if there is none
+		 */
+		public Double min(BitSet rows)
+		{
+			return extremum(rows, true);
+		}
+
+
+		/**
+		 * @return the maximal non null value of a numeric column, or null if there is none
+		 */
+		public Double max()
+		{
+			return max(null);
+		}
+
+
+		/**
+		 * @param rows the rows to look at, all rows if null
+		 * @return the maximal non null value of a numeric column in the given rows, or null if there is none
+		 */
+		public Double max(BitSet rows)
+		{
+			return extremum(rows, false);
+		}
+
+
+		/**
+		 * @param low the lower bound, included
+		 * @param high the upper bound, included
+		 * @return the rows of a numeric column whose value is between the bounds, null values are not selected
+		 */
+		public BitSet between(double low, double high)
+		{
+			checkNumeric();
+			int size = size();
+			BitSet selection = new BitSet(size);
+			for(int row = 0; row < size; row++){
+				double value = type == Type.LONG ? longs[row] : doubles[row];
+				if(value >= low && value <= high && !nulls.get(row)){
+					selection.set(row);
+				}
+			}
+			return selection;
+		}
+
+
+		/**
+		 * @param value the value to look for, null to select the null values
+		 * @return the rows whose value, as a string, equals the given one
+		 */
+		public BitSet equalTo(String value)
+		{
+			int size = size();
+			if(value == null){
+				return (BitSet) nulls.clone();
+			}
+			BitSet selection = new BitSet(size);
+			for(int row = 0; row < size; row++){
+				if(!nulls.get(row) && value.equals(type == Type.STRING ? strings[row] : String.valueOf(get(row)))){
+					selection.set(row);
+				}
+			}
+			return selection;
+		}
+
+
+		private Double extremum(BitSet rows, boolean min)
+		{
+			checkNumeric();
+			boolean found = false;
+			double extremum = 0;
+			int size = size();
+			for(int row = next(rows, 0, size); row >= 0; row = next(rows, row + 1, size)){
+				if(nulls.get(row)){
+					continue;
+				}
+				double value = type == Type.LONG ? longs[row] : doubles[row];
+				if(!found || (min ? value < extremum : value > extremum)){
+					extremum = value;
+					found = true;
+				}
+			}
+			return found ? extremum : null;
+		}
+
+
+		/**
+		 * @return the first row from <code>from</code> in the selection, or -1
+		 */
+		private static int next(BitSet rows, int from, int size)
+		{
+			int row = rows == null ? from : rows.nextSetBit(from);
+			return row < size ? row : -1;
+		}
+
+
+		private void check(Type expected)
+		{
+			if(type != expected){
+				throw new LadaljaException("Column " + name + " is of type " + type + ", not " + expected);
+			}
+		}
+
+
+		private void checkNumeric()
+		{
+			if(type == Type.STRING){
+				throw new LadaljaException("Column " + name + " is not numeric");
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import io.github.mezatsong.ladalja.LadaljaException;
+
+/**
+ * A lazy iterator over the rows of a query, each row is read and mapped only when it is asked for,
+ * so the memory used does not depend on the number of rows.<br>
+ * The underlying statement, ResultSet and connection are released as soon as the rows are exhausted,
+ * or when {@link #close()} is called, thus a cursor should be used in a try-with-resources block:
+ * <pre>
+ * try (Cursor&lt;Map&lt;String,Object&gt;&gt; cursor = DB.table("users").cursor()) {
+ *     for (Map&lt;String,Object&gt; row : cursor) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * A cursor can be iterated only once.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ * @param <E> type of the mapped rows
+ */
+public abstract class Cursor<E> implements Iterator<E>, Iterable<E>, AutoCloseable {
+
+	private final ResultSet resultSet;
+
+	private boolean fetched;
+
+	private boolean hasNext;
+
+	private boolean closed;
+
+
+	/**
+	 * @param resultSet the rows to iterate over
+	 */
+	protected Cursor(ResultSet resultSet) {
+		this.resultSet = resultSet;
+	}
+
+
+	/**
+	 * Map the current row of the ResultSet
+	 * @param resultSet the ResultSet positioned on the row to map
+	 * @return the mapped row
+	 * @throws SQLException if a column can't be read
+	 */
+	protected abstract E map(ResultSet resultSet) throws SQLException;
+
+
+	@Override
+	public boolean hasNext()
+	{
+		if (closed) {
+			return false;
+		}
+		if (!fetched) {
+			try {
+				hasNext = resultSet.next();
+			} catch (SQLException e) {
+				close();
+				throw new LadaljaException(e);
+			}
+			fetched = true;
+			if (!hasNext) {
+				close();
+			}
+		}
+		return hasNext;
+	}
+
+
+	@Override
+	public E next()
+	{
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		fetched = false;
+		try {
+			return map(resultSet);
+		} catch (SQLException e) {
+			close();
+			throw new LadaljaException(e);
+		}
+	}
+
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException("A cursor is read only");
+	}
+
+
+	/**
+	 * @return this cursor, so that it can be used in a for-each loop
+	 */
+	@Override
+	public Iterator<E> iterator()
+	{
+		return this;
+	}
+
+
+	/**
+	 * Release the rows not read yet, the statement and the connection, calling it twice has no effect
+	 */
+	@Override
+	public void close()
+	{
+		if (!closed) {
+			closed = true;
+			QueryBuilder.close(resultSet);
+		}
+	}
+
+}
@@ -0,0 +1,473 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.mezatsong.ladalja.dialect.Dialect;
+
+/**
+ * A piece of a query built by {@link QueryBuilder}: a selected column, a predicate, a join or an order.<br>
+ * Nodes are immutable and compared by value, so that the shape of a builder can be a key of {@link SqlCache}.
+ * They are rendered into a StringBuilder shared by the whole query, identifiers are quoted by the {@link Dialect} while rendering.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+abstract class Node {
+
+	private final Object[] parts;
+
+	private final int hash;
+
+
+	/**
+	 * @param parts what this node is made of, for equals and hashCode
+	 */
+	Node(Object... parts) {
+		this.parts = parts;
+		this.hash = 31 * getClass().getName().hashCode() + Arrays.deepHashCode(parts);
+	}
+
+
+	/**
+	 * Append the SQL of this node
+	 * @param sql the query being rendered
+	 * @param dialect the dialect quoting identifiers
+	 */
+	abstract void render(StringBuilder sql, Dialect dialect);
+
+
+	@Override
+	public final boolean equals(Object other)
+	{
+		return other == this || (other != null && other.getClass() == getClass() && hash == ((Node) other).hash
+				&& Arrays.deepEquals(parts, ((Node) other).parts));
+	}
+
+
+	@Override
+	public final int hashCode()
+	{
+		return hash;
+	}
+
+
+	/**
+	 * Append the nodes, separated by the separator
+	 */
+	static void render(StringBuilder sql, Dialect dialect, List<? extends Node> nodes, String separator)
+	{
+		for(int i = 0, size = nodes.size(); i < size; i++){
+			if(i > 0){
+				sql.append(separator);
+			}
+			nodes.get(i).render(sql, dialect);
+		}
+	}
+
+
+
+	/**
+	 * SQL given as is
+	 */
+	static final class Raw extends Node {
+
+		private final String sql;
+
+		Raw(String sql) {
+			super(sql);
+			this.sql = sql;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			sql.append(this.sql);
+		}
+
+	}
+
+
+
+	/**
+	 * A column, or a table
+	 */
+	static final class Identifier extends Node {
+
+		private final String name;
+
+		Identifier(String name) {
+			super(name);
+			this.name = name;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			dialect.quote(sql, name);
+		}
+
+	}
+
+
+
+	/**
+	 * An aggregate function selected as <code>aggregate</code>, like <code>max(`price`) as aggregate</code>
+	 */
+	static final class Aggregate extends Node {
+
+		private final String function;
+
+		private final String column;
+
+		/**
+		 * @param column the aggregated column, null for <code>*</code>
+		 */
+		Aggregate(String function, String column) {
+			super(function, column);
+			this.function = function;
+			this.column = column;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			sql.append(function).append('(');
+			if(column == null){
+				sql.append('*');
+			}else{
+				dialect.quote(sql, column);
+			}
+			sql.append(") as aggregate");
+		}
+
+	}
+
+
+
+	/**
+	 * A predicate of a where or having clause, joined to the previous one with and or or
+	 */
+	static final class Condition extends Node {
+
+		private final boolean or;
+
+		private final Node predicate;
+
+		Condition(boolean or, Node predicate) {
+			super(or, predicate);
+			this.or = or;
+			this.predicate = predicate;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			predicate.render(sql, dialect);
+		}
+
+
+		/**
+		 * @return true if joined to the previous condition with or
+		 */
+		boolean isOr() {
+			return or;
+		}
+
+
+		/**
+		 * @return the column compared for equality with a bound value, or null if the condition is anything else
+		 */
+		String getEqualityColumn() {
+			if(!(predicate instanceof Comparison)){
+				return null;
+			}
+			Comparison comparison = (Comparison) predicate;
+			return comparison.function == null && "=".equals(comparison.operator) ? comparison.column : null;
+		}
+
+
+		/**
+		 * Append the conditions joined by their connector, the connector of the first one is ignored
+		 */
+		static void render(StringBuilder sql, Dialect dialect, List<Condition> conditions)
+		{
+			for(int i = 0, size = conditions.size(); i < size; i++){
+				Condition condition = conditions.get(i);
+				if(i > 0){
+					sql.append(condition.or ? " or " : " and ");
+				}
+				condition.predicate.render(sql, dialect);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Conditions between parentheses
+	 */
+	static final class Group extends Node {
+
+		private final Condition[] conditions;
+
+		Group(List<Condition> conditions) {
+			this(conditions.toArray(new Condition[conditions.size()]));
+		}
+
+		private Group(Condition[] conditions) {
+			super((Object[]) conditions);
+			this.conditions = conditions;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			sql.append('(');
+			Condition.render(sql, dialect, Arrays.asList(conditions));
+			sql.append(')');
+		}
+
+	}
+
+
+
+	/**
+	 * <code>column operator ?</code>, the column may be wrapped in a function like <code>date(`column`)</code>
+	 */
+	static final class Comparison extends Node {
+
+		private final String function;
+
+		private final String column;
+
+		private final String operator;
+
+		/**
+		 * @param function a function applied to the column, or null
+		 */
+		Comparison(String function, String column, String operator) {
+			super(function, column, operator);
+			this.function = function;
+			this.column = column;
+			this.operator = operator;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			if(function != null){
+				sql.append(function).append('(');
+				dialect.quote(sql, column);
+				sql.append(')');
+			}else{
+				dialect.quote(sql, column);
+			}
+			sql.append(' ').append(operator).append(" ?");
+		}
+
+	}
+
+
+
+	/**
+	 * <code>column1 operator column2</code>
+	 */
+	static final class ColumnComparison extends Node {
+
+		private final String column1;
+
+		private final String operator;
+
+		private final String column2;
+
+		ColumnComparison(String column1, String operator, String column2) {
+			super(column1, operator, column2);
+			this.column1 = column1;
+			this.operator = operator;
+			this.column2 = column2;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			dialect.quote(sql, column1);
+			sql.append(' ').append(operator).append(' ');
+			dialect.quote(sql, column2);
+		}
+
+	}
+
+
+
+	/**
+	 * <code>column [not] between ? and ?</code>
+	 */
+	static final class Between extends Node {
+
+		private final String column;
+
+		private final boolean not;
+
+		Between(String column, boolean not) {
+			super(column, not);
+			this.column = column;
+			this.not = not;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			dialect.quote(sql, column);
+			sql.append(not ? " not between ? and ?" : " between ? and ?");
+		}
+
+	}
+
+
+
+	/**
+	 * <code>column [not] in (?,?,...)</code>
+	 */
+	static final class In extends Node {
+
+		private final String column;
+
+		private final boolean not;
+
+		private final int size;
+
+		/**
+		 * @param size the number of placeholders
+		 */
+		In(String column, boolean not, int size) {
+			super(column, not, size);
+			this.column = column;
+			this.not = not;
+			this.size = size;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			dialect.quote(sql, column);
+			sql.append(not ? " not in (" : " in (");
+			for(int i = 0; i < size; i++){
+				sql.append(i > 0 ? ",?" : "?");
+			}
+			sql.append(')');
+		}
+
+	}
+
+
+
+	/**
+	 * <code>column is [not] null</code>
+	 */
+	static final class IsNull extends Node {
+
+		private final String column;
+
+		private final boolean not;
+
+		IsNull(String column, boolean not) {
+			super(column, not);
+			this.column = column;
+			this.not = not;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			dialect.quote(sql, column);
+			sql.append(not ? " is not null" : " is null");
+		}
+
+	}
+
+
+
+	/**
+	 * <code>type join table [on column operator joinColumn]</code>
+	 */
+	static final class Join extends Node {
+
+		private final String type;
+
+		private final String table;
+
+		private final String column;
+
+		private final String operator;
+
+		private final String joinColumn;
+
+		/**
+		 * @param type inner, left or cross
+		 * @param column null for a cross join
+		 */
+		Join(String type, String table, String column, String operator, String joinColumn) {
+			super(type, table, column, operator, joinColumn);
+			this.type = type;
+			this.table = table;
+			this.column = column;
+			this.operator = operator;
+			this.joinColumn = joinColumn;
+		}
+
+		String getTable() {
+			return table;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			sql.append(type).append(" join ");
+			dialect.quote(sql, table);
+			if(column != null){
+				sql.append(" on ");
+				dialect.quote(sql, column);
+				sql.append(' ').append(operator).append(' ');
+				dialect.quote(sql, joinColumn);
+			}
+		}
+
+	}
+
+
+
+	/**
+	 * <code>column direction</code>, a column containing <code>()</code> is a function call rendered as is
+	 */
+	static final class Order extends Node {
+
+		private final String column;
+
+		private final String direction;
+
+		Order(String column, String direction) {
+			super(column, direction);
+			this.column = column;
+			this.direction = direction;
+		}
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			if(column.contains("()")){
+				sql.append(column);
+			}else{
+				dialect.quote(sql, column);
+			}
+			sql.append(' ').append(direction);
+		}
+
+	}
+
+
+
+	/**
+	 * A random order, the function depends on the dialect
+	 */
+	static final class Random extends Node {
+
+		@Override
+		void render(StringBuilder sql, Dialect dialect) {
+			sql.append(dialect.getRandom());
+		}
+
+	}
+
+}
@@ -5,15 +5,26 @@ package io.github.mezatsong.ladalja.query;
 
 import java.sql.Date;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
+import io.github.mezatsong.ladalja.ChunkCallback;
 import io.github.mezatsong.ladalja.DB;
+import io.github.mezatsong.ladalja.EntityCache;
 import io.github.mezatsong.ladalja.LadaljaException;
+import io.github.mezatsong.ladalja.TransactionCallback;
+import io.github.mezatsong.ladalja.dialect.Dialect;
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
 
 /**
  * 
@@ -52,46 +63,123 @@ import io.github.mezatsong.ladalja.LadaljaException;
 @SuppressWarnings({ "unchecked", "rawtypes" })
 public class QueryBuilder<T extends QueryBuilder> {
 
+	/**
+	 * Default number of rows inserted in one transaction by {@link #insertMany(List)}
+	 */
+	public static final int DEFAULT_INSERT_CHUNK_SIZE = 1000;
+	
+	/**
+	 * Maximal number of bound parameters in one multi-row insert statement (SQLite default limit)
+	 * @deprecated the limit is now given by the dialect, see {@link Dialect#getMaxParameters()}
+	 */
+	@Deprecated
+	public static final int MAX_INSERT_PARAMETERS = 999;
+	
+	/**
+	 * Default number of rows fetched per round-trip by {@link #cursor()}
+	 */
+	public static final int DEFAULT_FETCH_SIZE = 500;
+	
+	/**
+	 * Default maximal number of values bound in one whereIn list, see {@link DB#getMaxInSize()}
+	 */
+	public static final int DEFAULT_MAX_IN_SIZE = 500;
+	
+	/**
+	 * SQL rendered by all the query builders, by shape
+	 */
+	private static final SqlCache SQL_CACHE = new SqlCache();
+	
+	private static final Node ALL = new Node.Raw("*");
+	
+	private static final Node FALSE = new Node.Raw("0 = 1");
+	
+	private static final Node TRUE = new Node.Raw("1 = 1");
+	
+	private static final Node RANDOM = new Node.Random();
+	
+	private static final Reader<Double> AGGREGATE = new Reader<Double>() {
+		@Override
+		public Double read(ResultSet resultSet) throws SQLException {
+			return resultSet.next() ? resultSet.getDouble("aggregate") : null;
+		}
+	};
+	
 	
 	protected String table;
 	
-	private String selection;
+	private boolean distinct;
+	
+	private List<Node> selection;
+	
+	private List<Node.Join> joins;
 	
-	private String join;
+	private List<Node.Condition> clauses;
 	
-	private String clauses;
+	private List<Node> groupBy;
 	
-	private String groupBy;
+	private List<Node.Condition> having;
 	
-	private String having;
+	private String havingRaw;
 	
-	private String orderBy;
+	private List<Node> orderBy;
 	
-	private String limit;
+	private long limit;
 	
-	private String offset;
+	private long offset;
 	
-	private String lock;
+	private Dialect.Lock lock;
 	
 	private QueryBuilder union;
+	
+	/**
+	 * Time to live of the results in the {@link ResultCache}, in nanoseconds, 0 if they are not cached
+	 */
+	private long remember;
 
 	private List<Object> params;
 	
+	/**
+	 * The values of the whereIn list longer than {@link DB#getMaxInSize()}, bound by chunks, or null
+	 */
+	private Object[] splitValues;
+	
+	/**
+	 * The clause of the split whereIn list, on splitColumn
+	 */
+	private Node.Condition splitClause;
+	
+	private String splitColumn;
+	
+	/**
+	 * Index in params of the first value of the split whereIn list
+	 */
+	private int splitIndex;
+	
+	/**
+	 * Number of values of the split whereIn list bound in each query
+	 */
+	private int splitSize;
+	
 	
 	/* ----- CONSTRUCTOR -------- */
 	
 	public QueryBuilder(String table) {
 		this.table = table;
-		selection = "*";
-		join = "";
-		clauses = "";
-		groupBy = "";
-		having = "";
-		orderBy = "";
-		limit = "";
-		offset = "";
-		lock = "";
+		distinct = false;
+		selection = new ArrayList<Node>();
+		selection.add(ALL);
+		joins = new ArrayList<Node.Join>(1);
+		clauses = new ArrayList<Node.Condition>();
+		groupBy = new ArrayList<Node>(1);
+		having = new ArrayList<Node.Condition>(1);
+		havingRaw = null;
+		orderBy = new ArrayList<Node>(1);
+		limit = -1;
+		offset = -1;
+		lock = null;
 		union = null;
+		remember = 0;
 		params = new ArrayList<Object>();
 	}
 	
@@ -101,116 +189,399 @@ public class QueryBuilder<T extends QueryBuilder> {
 	
 	/**
 	 * Build query and return a java.sql.ResultSet containing the results of builded of query 
-	 * you may access each column's value by accessing the column as a property of the row
+	 * you may access each column's value by accessing the column as a property of the row.
+	 * The connection stays leased until the ResultSet is read to its end or closed, close it when you stop reading before,
+	 * see {@link DB#select(String, Object...)}. {@link #getMap()} and {@link #getRows()} read all rows and close it for you
 	 * @return ResultSet of result a java.sql.ResultSet containing the results of builded of query. 
 	 */
 	public ResultSet get()
 	{
-		String query = "select "+selection+" from `"+table+"` "+join+" "+clauses+" "+groupBy+" "+having+" "+orderBy+" "+limit+" "+offset+" "+lock;
-		query = sloveAmbiguousColumn(query);
-		if(union != null){
-			String otherQuery = "select "+union.selection+" from "+union.table+" "+union.join+" "+union.clauses+" "+union.groupBy+" "
-									+union.having+" "+union.orderBy+" "+union.limit+" "+union.offset+" "+union.lock;
-			otherQuery = sloveAmbiguousColumn(otherQuery);
-			query = "( "+query+" ) union ( "+otherQuery+" )";
-		}
-		
-		return DB.select(query.trim(), params.toArray());
+		return select(selectQuery());
 	}
-
 	
 	
+	/**
+	 * Build query and return a cursor reading its rows one by one as maps, where keys are column names.
+	 * Unlike {@link #getMap()}, rows are not all loaded in memory, the driver fetch them by {@link #DEFAULT_FETCH_SIZE}.
+	 * The connection stays leased until the cursor is exhausted or closed, so use it in a try-with-resources block.
+	 * @return a cursor over the rows of the query
+	 */
+	public Cursor<Map<String, Object>> cursor()
+	{
+		return cursor(DEFAULT_FETCH_SIZE);
+	}
+	
 	
 	/**
-	 * Build query and return result of builded of query into List<Map<String, Object>> 
-	 * where keys are column name and value of each key is its value
-	 * @return list of map where each map corresponding to one row of query result
+	 * Build query and return a cursor reading its rows one by one as maps, where keys are column names.
+	 * @see io.github.mezatsong.ladalja.DB#cursor(String, int, Object...)
+	 * @param fetchSize number of rows the driver should fetch per round-trip
+	 * @return a cursor over the rows of the query
 	 */
-	public List<Map<String, Object>> getMap()
+	public Cursor<Map<String, Object>> cursor(int fetchSize)
 	{
+		return new Cursor<Map<String, Object>>(openCursor(fetchSize)) {
+			private Row.Columns columns;
+			
+			@Override
+			protected Map<String, Object> map(ResultSet resultSet) throws SQLException {
+				if (columns == null) {
+					columns = Row.Columns.of(resultSet);
+				}
+				return Row.read(resultSet, columns);
+			}
+		};
+	}
+	
+	
+	/**
+	 * Process the rows of the query by chunks of <code>size</code> rows, using limit and offset.
+	 * Give an order to the query, otherwise the chunks are not guaranteed to be disjoint.
+	 * Prefer {@link #chunkById(int, String, ChunkCallback)} for big tables: the cost of an offset grows with its value.
+	 * @param size number of rows per chunk
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public boolean chunk(int size, ChunkCallback<Map<String, Object>> callback)
+	{
+		return chunk(size, rowMapper(), callback);
+	}
+	
+	
+	/**
+	 * Alias for chunkById(size, "id", callback)
+	 * @param size number of rows per chunk
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public boolean chunkById(int size, ChunkCallback<Map<String, Object>> callback)
+	{
+		return chunkById(size, "id", callback);
+	}
+	
+	
+	/**
+	 * Process the rows of the query by chunks of <code>size</code> rows, in the order of <code>column</code>.
+	 * Each chunk is read with <code>where column &gt; last_value order by column limit size</code>,
+	 * so every chunk cost the same whatever its position, and rows updated by the callback are neither skipped nor read twice.
+	 * The order, limit and offset of this query builder are ignored.
+	 * @param size number of rows per chunk
+	 * @param column a unique column, usually the primary key
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public boolean chunkById(int size, String column, ChunkCallback<Map<String, Object>> callback)
+	{
+		return chunkById(size, column, rowMapper(), callback);
+	}
+	
+	
+	protected <E> boolean chunk(int size, RowMapper<E> mapper, ChunkCallback<E> callback)
+	{
+		if(size < 1){
+			throw new LadaljaException("The chunk size must be positive, given: " + size);
+		}
+		
+		if(splitValues != null){
+			merge();
+		}
+		long savedLimit = limit;
+		long savedOffset = offset;
 		try {
-			ResultSet resultSet = get();
-			List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
-			while(resultSet.next())
-			{
-				Map<String, Object> map = new HashMap<String, Object>();
-				ResultSetMetaData metaData = resultSet.getMetaData();
-				for(int i=1, length = metaData.getColumnCount(); i <= length; i++)
-				{
-					map.put(metaData.getColumnName(i), resultSet.getObject(i));
+			for(int page = 0; ; page++){
+				limit = size;
+				offset = (long) page * size;
+				List<E> rows = read(select(selectQuery()), mapper, null, null);
+				if(rows.isEmpty()){
+					return true;
+				}
+				if(!callback.handle(rows)){
+					return false;
+				}
+				if(rows.size() < size){
+					return true;
 				}
-				list.add(map);
 			}
+		} finally {
+			limit = savedLimit;
+			offset = savedOffset;
+		}
+	}
+	
+	
+	protected <E> boolean chunkById(int size, String column, RowMapper<E> mapper, ChunkCallback<E> callback)
+	{
+		if(size < 1){
+			throw new LadaljaException("The chunk size must be positive, given: " + size);
+		}
+		if(!having.isEmpty() || havingRaw != null){
+			throw new LadaljaException("chunkById can't be used with a having clause");
+		}
+		if(splitValues != null){
+			merge();
+		}
+		
+		List<Node.Condition> savedClauses = clauses;
+		List<Node> savedOrderBy = orderBy;
+		long savedLimit = limit;
+		long savedOffset = offset;
+		int paramCount = params.size();
+		String keyLabel = column.substring(column.lastIndexOf('.') + 1);
+		try {
+			orderBy = new ArrayList<Node>(1);
+			orderBy.add(new Node.Order(column, "asc"));
+			limit = size;
+			offset = -1;
+			Object[] last = {null};
+			while(true){
+				List<E> rows = read(select(selectQuery()), mapper, keyLabel, last);
+				if(rows.isEmpty()){
+					return true;
+				}
+				if(!callback.handle(rows)){
+					return false;
+				}
+				if(rows.size() < size){
+					return true;
+				}
+				if(last[0] == null){
+					throw new LadaljaException("Null value in column " + column + " used by chunkById");
+				}
+				
+				Node.Condition keyset = new Node.Condition(false, new Node.Comparison(null, column, ">"));
+				clauses = new ArrayList<Node.Condition>(2);
+				if(!savedClauses.isEmpty()){
+					clauses.add(new Node.Condition(false, new Node.Group(savedClauses)));
+				}
+				clauses.add(keyset);
+				while(params.size() > paramCount){
+					params.remove(params.size() - 1);
+				}
+				params.add(last[0]);
+			}
+		} finally {
+			clauses = savedClauses;
+			orderBy = savedOrderBy;
+			limit = savedLimit;
+			offset = savedOffset;
+			while(params.size() > paramCount){
+				params.remove(params.size() - 1);
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return a mapper of rows into {@link Row}s, to use for the rows of a same ResultSet
+	 */
+	private static RowMapper<Map<String, Object>> rowMapper()
+	{
+		return new RowMapper<Map<String, Object>>() {
+			private ResultSet resolved;
 			
-			return list;
+			private Row.Columns columns;
 			
+			@Override
+			public Map<String, Object> map(ResultSet resultSet) throws SQLException {
+				if (resultSet != resolved) {
+					columns = Row.Columns.of(resultSet);
+					resolved = resultSet;
+				}
+				return Row.read(resultSet, columns);
+			}
+		};
+	}
+	
+	
+	/**
+	 * Map all rows of the ResultSet and close it
+	 * @param keyLabel if not null, the value of this column in the last row is stored in last[0]
+	 */
+	private static <E> List<E> read(ResultSet resultSet, RowMapper<E> mapper, String keyLabel, Object[] last)
+	{
+		try {
+			List<E> rows = new ArrayList<E>();
+			while(resultSet.next()){
+				rows.add(mapper.map(resultSet));
+				if(keyLabel != null){
+					last[0] = resultSet.getObject(keyLabel);
+				}
+			}
+			return rows;
 		} catch (SQLException e) {
 			throw new LadaljaException(e);
+		} finally {
+			close(resultSet);
+		}
+	}
+	
+	
+	/**
+	 * Run the select query built from this query builder with a streaming cursor
+	 * @param fetchSize number of rows the driver should fetch per round-trip
+	 * @return the rows, not loaded yet
+	 */
+	protected ResultSet openCursor(int fetchSize)
+	{
+		if(splitValues != null){
+			merge();
 		}
+		return DB.cursor(selectQuery(), fetchSize, params.toArray());
 	}
 	
 	
+	private String selectQuery()
+	{
+		SqlCache.Shape shape = shape("select");
+		String query = SQL_CACHE.get(shape);
+		if(query != null){
+			return query;
+		}
+		Dialect dialect = DB.dialect();
+		StringBuilder sql = new StringBuilder(estimateLength());
+		if(union != null){
+			sql.append("( ");
+			renderSelect(sql, dialect, null, false);
+			sql.append(" ) union ( ");
+			union.renderSelect(sql, dialect, null, false);
+			sql.append(" )");
+		}else{
+			renderSelect(sql, dialect, null, false);
+		}
+		return SQL_CACHE.put(shape, sql.toString());
+	}
+
+	
+	
 	
 	/**
-	 * Retrieve a single row of query
+	 * Build query and return result of builded of query into List<Map<String, Object>> 
+	 * where keys are column name and value of each key is its value.
+	 * The maps are read only {@link Row}s sharing their column names, see {@link #getRows()}
+	 * @return list of map where each map corresponding to one row of query result
+	 */
+	public List<Map<String, Object>> getMap()
+	{
+		return getRows();
+	}
+	
+	
+	/**
+	 * Build query and return all its rows. Column names are read once for the whole result
+	 * and each row only holds an array of its values, so it needs about half the memory of a HashMap per row.
+	 * @return the rows of the query result
+	 */
+	public RowSet getRows()
+	{
+		return read(selectQuery(), "rows", new Reader<RowSet>() {
+			@Override
+			public RowSet read(ResultSet resultSet) throws SQLException {
+				return RowSet.read(resultSet);
+			}
+		});
+	}
+	
+	
+	
+	/**
+	 * Build query and return its result by columns, read in a single pass: one array of primitive values per column
+	 * and a bitmap of its nulls. Prefer it to {@link #getRows()} for aggregations done in the JVM on many rows.
+	 * A result cached by {@link #remember(long, TimeUnit)} is shared, its arrays must not be modified
+	 * @return the columns of the query result
+	 */
+	public ColumnSet getColumns()
+	{
+		return read(selectQuery(), "columns", new Reader<ColumnSet>() {
+			@Override
+			public ColumnSet read(ResultSet resultSet) throws SQLException {
+				return ColumnSet.read(resultSet);
+			}
+		});
+	}
+	
+	
+	
+	/**
+	 * Retrieve a single row of query.
+	 * Close the ResultSet once the row is read, its connection stays leased until then, or use {@link #firstMap()}
 	 * @return result in a ResultSet
 	 */
 	public ResultSet first()
 	{
-		String query = "select "+selection+" from `"+table+"` "+join+" "+clauses+" "+groupBy+" "+having+" "+orderBy+" limit 1 "+offset+" "+lock;
-		query = sloveAmbiguousColumn(query);
+		return select(firstQuery());
+	}
+	
+	
+	private String firstQuery()
+	{
+		SqlCache.Shape shape = shape("first");
+		String query = SQL_CACHE.get(shape);
+		if(query != null){
+			return query;
+		}
+		Dialect dialect = DB.dialect();
+		StringBuilder sql = new StringBuilder(estimateLength());
 		if(union != null){
-			String otherQuery = "select "+union.selection+" from "+union.table+" "+union.join+" "+union.clauses+" "+union.groupBy+" "
-									+union.having+" "+union.orderBy+" "+union.limit+" "+union.offset+" "+union.lock;
-			otherQuery = sloveAmbiguousColumn(otherQuery);
-			query = "( "+query+" ) union ( "+otherQuery+" ) limit 1";
+			sql.append("( ");
+			renderSelect(sql, dialect, null, true);
+			sql.append(" ) union ( ");
+			union.renderSelect(sql, dialect, null, false);
+			sql.append(" ) limit 1");
+		}else{
+			renderSelect(sql, dialect, null, true);
 		}
-		
-		return DB.select(query.trim(), params.toArray());
+		return SQL_CACHE.put(shape, sql.toString());
 	}
 	
 	
 	/**
 	 * Retrieve a single row of query
-	 * @return result in a Map<String,Object> object, where keys are column name
+	 * @return result in a read only Map<String,Object> object, where keys are column name, empty if there is no row
 	 */
 	public Map<String,Object> firstMap()
 	{
-		try{
-			ResultSet resultSet = first();
-			Map<String, Object> map = new HashMap<String, Object>();
-			if(resultSet.next())
-			{
-				ResultSetMetaData metaData = resultSet.getMetaData();
-				for(int i=1, length = metaData.getColumnCount(); i <= length; i++)
-				{
-					map.put(metaData.getColumnName(i), resultSet.getObject(i));
+		return read(firstQuery(), "firstMap", new Reader<Map<String,Object>>() {
+			@Override
+			public Map<String,Object> read(ResultSet resultSet) throws SQLException {
+				if(resultSet.next()){
+					return Row.read(resultSet, Row.Columns.of(resultSet));
 				}
+				return Collections.emptyMap();
 			}
-			
-			return map;
-			
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
-		}
+		});
 	}
 	
-	/**
+		/**
 	 * Retrieve the values of a single column
+	 * The connection stays leased until the ResultSet is read to its end or closed, or use {@link #pluckList(String)}
 	 * @param column the name of column
 	 * @return ResultSet of collection containing the values of a single column
 	 */
 	public ResultSet pluck(String column)
 	{
-		String query = "select `"+column+"` from `"+table+"` "+join+" "+clauses+" "+groupBy+" "+having+" "+orderBy+" "+limit +" "+ offset+" "+lock;
-		query = sloveAmbiguousColumn(query);
+		return select(pluckQuery(column));
+	}
+	
+	
+	private String pluckQuery(String column)
+	{
+		SqlCache.Shape shape = shape("pluck", column);
+		String query = SQL_CACHE.get(shape);
+		if(query != null){
+			return query;
+		}
+		Dialect dialect = DB.dialect();
+		StringBuilder sql = new StringBuilder(estimateLength());
 		if(union != null){
-			String otherQuery = "select "+union.selection+" from "+union.table+" "+union.join+" "+union.clauses+" "+union.groupBy+" "
-									+union.having+" "+union.orderBy+" "+union.limit+" "+union.offset+" "+union.lock;
-			otherQuery = sloveAmbiguousColumn(otherQuery);
-			query = "( "+query+" ) union ( "+otherQuery+" ) limit 1";
+			sql.append("( ");
+			renderSelect(sql, dialect, column, false);
+			sql.append(" ) union ( ");
+			union.renderSelect(sql, dialect, null, false);
+			sql.append(" ) limit 1");
+		}else{
+			renderSelect(sql, dialect, column, false);
 		}
-		return DB.select(query.trim(), params.toArray());
+		return SQL_CACHE.put(shape, sql.toString());
 	}
 	
 	
@@ -219,21 +590,132 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 * @param column the name of column
 	 * @return java.util.List of collection containing the values of a single column
 	 */
-	public List<Object> pluckList(String column)
+	public List<Object> pluckList(final String column)
 	{
-		try {
-			ResultSet resultSet = pluck(column);
-			List<Object> list = new ArrayList<Object>();
-			while(resultSet.next())
-			{
-				list.add(resultSet.getObject(column));
+		return read(pluckQuery(column), "pluckList", new Reader<List<Object>>() {
+			@Override
+			public List<Object> read(ResultSet resultSet) throws SQLException {
+				List<Object> list = new ArrayList<Object>();
+				while(resultSet.next())
+				{
+					list.add(resultSet.getObject(column));
+				}
+				return list;
 			}
-			
-			return list;
-			
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
-		}
+		});
+	}
+	
+	
+	/**
+	 * Retrieve the values of a single integer column, read with getLong straight into an array, without boxing.
+	 * Null values are skipped.
+	 * @param column the name of column
+	 * @return the values of the column
+	 */
+	public long[] pluckLongs(String column)
+	{
+		return read(pluckQuery(column), "pluckLongs", new Reader<long[]>() {
+			@Override
+			public long[] read(ResultSet resultSet) throws SQLException {
+				long[] values = new long[16];
+				int size = 0;
+				while(resultSet.next())
+				{
+					long value = resultSet.getLong(1);
+					if(!resultSet.wasNull()){
+						if(size == values.length){
+							values = Arrays.copyOf(values, size * 2);
+						}
+						values[size++] = value;
+					}
+				}
+				return Arrays.copyOf(values, size);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Retrieve the values of a single integer column, read with getInt straight into an array, without boxing.
+	 * Null values are skipped.
+	 * @param column the name of column
+	 * @return the values of the column
+	 */
+	public int[] pluckInts(String column)
+	{
+		return read(pluckQuery(column), "pluckInts", new Reader<int[]>() {
+			@Override
+			public int[] read(ResultSet resultSet) throws SQLException {
+				int[] values = new int[16];
+				int size = 0;
+				while(resultSet.next())
+				{
+					int value = resultSet.getInt(1);
+					if(!resultSet.wasNull()){
+						if(size == values.length){
+							values = Arrays.copyOf(values, size * 2);
+						}
+						values[size++] = value;
+					}
+				}
+				return Arrays.copyOf(values, size);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Retrieve the values of a single numeric column, read with getDouble straight into an array, without boxing.
+	 * Null values are skipped.
+	 * @param column the name of column
+	 * @return the values of the column
+	 */
+	public double[] pluckDoubles(String column)
+	{
+		return read(pluckQuery(column), "pluckDoubles", new Reader<double[]>() {
+			@Override
+			public double[] read(ResultSet resultSet) throws SQLException {
+				double[] values = new double[16];
+				int size = 0;
+				while(resultSet.next())
+				{
+					double value = resultSet.getDouble(1);
+					if(!resultSet.wasNull()){
+						if(size == values.length){
+							values = Arrays.copyOf(values, size * 2);
+						}
+						values[size++] = value;
+					}
+				}
+				return Arrays.copyOf(values, size);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Retrieve the values of a single column, read with getString into an array.
+	 * Unlike the other pluck methods, null values are kept.
+	 * @param column the name of column
+	 * @return the values of the column
+	 */
+	public String[] pluckStrings(String column)
+	{
+		return read(pluckQuery(column), "pluckStrings", new Reader<String[]>() {
+			@Override
+			public String[] read(ResultSet resultSet) throws SQLException {
+				String[] values = new String[16];
+				int size = 0;
+				while(resultSet.next())
+				{
+					if(size == values.length){
+						values = Arrays.copyOf(values, size * 2);
+					}
+					values[size++] = resultSet.getString(1);
+				}
+				return Arrays.copyOf(values, size);
+			}
+		});
 	}
 	
 	
@@ -243,19 +725,15 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 * @param column
 	 * @return the value of the column
 	 */
-	public Object value(String column)
+	public Object value(final String column)
 	{	
-		selection = column;
-		ResultSet resultSet = first();
-		try {
-			if(resultSet.next()){
-				return resultSet.getObject(column);
-			}else{
-				return null;
+		select(new Node.Raw(column));
+		return read(firstQuery(), "value", new Reader<Object>() {
+			@Override
+			public Object read(ResultSet resultSet) throws SQLException {
+				return resultSet.next() ? resultSet.getObject(column) : null;
 			}
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
-		}
+		});
 	}
 	
 	
@@ -265,17 +743,16 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public long count()
 	{
-		selection = "count(*) as aggregate";
-		ResultSet resultSet = get();
-		try {
-			if(resultSet.next())
-				return resultSet.getLong("aggregate");
-			else
-				return 0;
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
+		if(split()){
+			return splitAggregate("count", null).longValue();
 		}
-		
+		select(new Node.Aggregate("count", null));
+		return read(selectQuery(), "count", new Reader<Long>() {
+			@Override
+			public Long read(ResultSet resultSet) throws SQLException {
+				return resultSet.next() ? resultSet.getLong("aggregate") : 0L;
+			}
+		});
 	}
 	
 	
@@ -287,16 +764,11 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public Double max(String column)
 	{
-		selection = "max(`"+column+"`) as aggregate";
-		ResultSet resultSet = get();
-		try {
-			if(resultSet.next())
-				return resultSet.getDouble("aggregate");
-			else
-				return null;
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
+		if(split()){
+			return splitAggregate("max", column);
 		}
+		select(new Node.Aggregate("max", column));
+		return read(selectQuery(), "aggregate", AGGREGATE);
 	}
 	
 	
@@ -308,16 +780,11 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public Double min(String column)
 	{
-		selection = "min(`"+column+"`) as aggregate";
-		ResultSet resultSet = get();
-		try {
-			if(resultSet.next())
-				return resultSet.getDouble("aggregate");
-			else
-				return null;
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
+		if(split()){
+			return splitAggregate("min", column);
 		}
+		select(new Node.Aggregate("min", column));
+		return read(selectQuery(), "aggregate", AGGREGATE);
 	}
 	
 	
@@ -329,16 +796,12 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public Double avg(String column)
 	{
-		selection = "avg(`"+column+"`) as aggregate";
-		ResultSet resultSet = get();
-		try {
-			if(resultSet.next())
-				return resultSet.getDouble("aggregate");
-			else
-				return null;
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
+		if(split()){
+			Double sum = splitAggregate("sum", column);
+			return sum == null ? null : sum / splitAggregate("count", column);
 		}
+		select(new Node.Aggregate("avg", column));
+		return read(selectQuery(), "aggregate", AGGREGATE);
 	}
 	
 	
@@ -350,16 +813,13 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public double sum(String column)
 	{
-		selection = "sum(`"+column+"`) as aggregate";
-		ResultSet resultSet = get();
-		try {
-			if(resultSet.next())
-				return resultSet.getDouble("aggregate");
-			else
-				return 0;
-		} catch (SQLException e) {
-			throw new LadaljaException(e);
+		if(split()){
+			Double sum = splitAggregate("sum", column);
+			return sum == null ? 0 : sum;
 		}
+		select(new Node.Aggregate("sum", column));
+		Double sum = read(selectQuery(), "aggregate", AGGREGATE);
+		return sum == null ? 0 : sum;
 	}
 	
 	
@@ -375,58 +835,402 @@ public class QueryBuilder<T extends QueryBuilder> {
 		}
 		
 		params = new ArrayList<Object>();
-		String columns = "(";
-		String values = "(";
-		for(String key : arg.keySet()){
-			columns += "`"+ key +"`,";
-			values += "?,";
+		String[] keys = arg.keySet().toArray(new String[arg.size()]);
+		for(String key : keys){
 			params.add( arg.get(key) );
 		}
-		columns = columns.substring(0, columns.length()-1) + ")";
-		values = values.substring(0, values.length()-1) + ")";
-		String query = "insert into `" +table+ "` "+columns+" values "+values+" ;";
-		query = sloveAmbiguousColumn(query);
+		SqlCache.Shape shape = shape("insert", (Object) keys);
+		String query = SQL_CACHE.get(shape);
+		if(query == null){
+			Dialect dialect = DB.dialect();
+			StringBuilder sql = new StringBuilder(32 + table.length() + keys.length * 16);
+			sql.append("insert into ");
+			dialect.quote(sql, table);
+			sql.append(" (");
+			for(int i = 0; i < keys.length; i++){
+				if(i > 0){
+					sql.append(',');
+				}
+				dialect.quote(sql, keys[i]);
+			}
+			sql.append(") values (");
+			for(int i = 0; i < keys.length; i++){
+				sql.append(i > 0 ? ",?" : "?");
+			}
+			sql.append(") ;");
+			query = SQL_CACHE.put(shape, sql.toString());
+		}
+		
+		DB.insert(query, params.toArray());
+		EntityCache.invalidateAbsent(table);
+	}
+	
+	
+	/**
+	 * Insert many records with multi-row insert statements. 
+	 * Rows are grouped by their set of columns, thus rows with different columns can be mixed.
+	 * Rows are inserted by chunk of {@link #DEFAULT_INSERT_CHUNK_SIZE} rows, each chunk in its own transaction.
+	 * @see io.github.mezatsong.ladalja.query.QueryBuilder#insertMany(List, int)
+	 * @param rows list of maps of column names and values
+	 * @return number of inserted rows
+	 */
+	public int insertMany(List<Map<String,Object>> rows)
+	{
+		return insertMany(rows, DEFAULT_INSERT_CHUNK_SIZE);
+	}
+	
+	
+	/**
+	 * Insert many records with multi-row insert statements. 
+	 * Rows are grouped by their set of columns, thus rows with different columns can be mixed.
+	 * Each chunk of at most chunkSize rows is inserted in its own transaction 
+	 * (or savepoint if a transaction is already running), with as few statements as the parameters limit allow.
+	 * @param rows list of maps of column names and values
+	 * @param chunkSize the number of rows inserted in one transaction
+	 * @return number of inserted rows
+	 */
+	public int insertMany(List<Map<String,Object>> rows, int chunkSize)
+	{
+		if(rows == null){
+			throw new LadaljaException("Null argument list");
+		}
+		if(chunkSize < 1){
+			throw new LadaljaException("Invalid chunk size: " + chunkSize);
+		}
+		
+		int inserted = 0;
+		for(Map.Entry<List<String>, List<Integer>> entry : groupByColumns(rows).entrySet()){
+			List<Map<String,Object>> group = new ArrayList<Map<String,Object>>(entry.getValue().size());
+			for(int index : entry.getValue()){
+				group.add(rows.get(index));
+			}
+			for(int from = 0; from < group.size(); from += chunkSize){
+				inserted += insertChunk(entry.getKey(), group.subList(from, Math.min(from + chunkSize, group.size())));
+			}
+		}
+		EntityCache.invalidateAbsent(table);
+		return inserted;
+	}
+	
+	
+	/**
+	 * Insert many records and return the ID of each new row, in the order of rows.
+	 * Rows are grouped by their set of columns and each group is inserted with one JDBC batch when the driver support it,
+	 * all in one transaction.
+	 * @see io.github.mezatsong.ladalja.DB#batchGetIds(String, List)
+	 * @param rows list of maps of column names and values
+	 * @return the ID of each new inserted row
+	 */
+	public List<Object> insertGetIds(final List<Map<String,Object>> rows)
+	{
+		if(rows == null){
+			throw new LadaljaException("Null argument list");
+		}
+		
+		final Map<List<String>, List<Integer>> groups = groupByColumns(rows);
+		List<Object> ids = DB.transaction(new TransactionCallback<List<Object>>() {
+			@Override
+			public List<Object> run() {
+				Object ids[] = new Object[rows.size()];
+				for(Map.Entry<List<String>, List<Integer>> entry : groups.entrySet()){
+					List<String> columns = entry.getKey();
+					List<Object[]> paramsList = new ArrayList<Object[]>();
+					for(int index : entry.getValue()){
+						paramsList.add(values(columns, rows.get(index)));
+					}
+					List<Object> keys = DB.batchGetIds(insertQuery(columns, 1), paramsList);
+					for(int i = 0; i < keys.size(); i++){
+						ids[entry.getValue().get(i)] = keys.get(i);
+					}
+				}
+				return Arrays.asList(ids);
+			}
+		});
+		EntityCache.invalidateAbsent(table);
+		return ids;
+	}
+	
+	
+	/**
+	 * Update many records, each one identified by the value of keyColumn in its map, with JDBC batches.
+	 * Rows are grouped by their set of columns, each group is updated with one batch, all in one transaction.
+	 * The where clauses of this query builder are ignored.
+	 * @param keyColumn the column identifying the row to update, usually the primary key
+	 * @param rows list of maps of column names and values, each containing keyColumn
+	 * @return number of updated rows
+	 */
+	public int updateMany(final String keyColumn, final List<Map<String,Object>> rows)
+	{
+		if(rows == null){
+			throw new LadaljaException("Null argument list");
+		}
 		
-		DB.insert(query.trim(), params.toArray());
+		final Map<List<String>, List<Integer>> groups = groupByColumns(rows);
+		final Dialect dialect = DB.dialect();
+		int count = DB.transaction(new TransactionCallback<Integer>() {
+			@Override
+			public Integer run() {
+				int updated = 0;
+				for(Map.Entry<List<String>, List<Integer>> entry : groups.entrySet()){
+					List<String> columns = new ArrayList<String>(entry.getKey());
+					if(!columns.remove(keyColumn)){
+						throw new LadaljaException("The key column " + keyColumn + " is not present in all rows");
+					}
+					if(columns.isEmpty()){
+						continue;
+					}
+					columns.add(keyColumn);
+					
+					StringBuilder query = new StringBuilder("update ");
+					dialect.quote(query, table);
+					query.append(" set ");
+					for(int i = 0; i < columns.size() - 1; i++){
+						if(i > 0){
+							query.append(", ");
+						}
+						dialect.quote(query, columns.get(i));
+						query.append(" = ?");
+					}
+					query.append(" where ");
+					dialect.quote(query, keyColumn);
+					query.append(" = ?");
+					
+					List<Object[]> paramsList = new ArrayList<Object[]>();
+					for(int index : entry.getValue()){
+						paramsList.add(values(columns, rows.get(index)));
+					}
+					for(int count : DB.batch(query.toString(), paramsList)){
+						if(count > 0){
+							updated += count;
+						}
+					}
+				}
+				return updated;
+			}
+		});
+		for(Map<String,Object> row : rows){
+			EntityCache.invalidate(table, keyColumn, row.get(keyColumn));
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Insert many records, or update the existing ones having the same values in the uniqueBy columns,
+	 * with the upsert statement of the dialect, like <code>on conflict (uniqueBy) do update</code>.
+	 * Rows are grouped by their set of columns, all the statements run in one transaction.
+	 * When the database has no upsert statement, each row is updated, then inserted if no row was updated.
+	 * The where clauses of this query builder are ignored.
+	 * @see io.github.mezatsong.ladalja.dialect.Dialect#upsertQuery(String, List, int, List, List)
+	 * @param rows list of maps of column names and values, each containing the uniqueBy columns
+	 * @param uniqueBy the columns of a unique index or of the primary key
+	 * @param updateColumns the columns updated when the row exists, or null for all the columns of the row except uniqueBy
+	 * @return number of affected rows, as reported by the driver
+	 */
+	public int upsert(final List<Map<String,Object>> rows, final List<String> uniqueBy, final List<String> updateColumns)
+	{
+		if(rows == null || uniqueBy == null){
+			throw new LadaljaException("Null argument list");
+		}
+		if(uniqueBy.isEmpty()){
+			throw new LadaljaException("Upsert needs at least one unique column");
+		}
 		
+		int affected;
+		if(rows.size() == 1 && DB.dialect().supportsUpsert()){
+			// a single upsert statement is atomic by itself
+			affected = upsertGroups(rows, uniqueBy, updateColumns);
+		}else{
+			affected = DB.transaction(new TransactionCallback<Integer>() {
+				@Override
+				public Integer run() {
+					return upsertGroups(rows, uniqueBy, updateColumns);
+				}
+			});
+		}
+		for(Map<String,Object> row : rows){
+			String column = uniqueBy.size() == 1 ? uniqueBy.get(0) : null;
+			EntityCache.invalidate(table, column, column == null ? null : row.get(column));
+		}
+		return affected;
+	}
+	
+	
+	private int upsertGroups(List<Map<String,Object>> rows, List<String> uniqueBy, List<String> updateColumns)
+	{
+		Dialect dialect = DB.dialect();
+		int affected = 0;
+		for(Map.Entry<List<String>, List<Integer>> entry : groupByColumns(rows).entrySet()){
+			List<String> columns = entry.getKey();
+			if(!columns.containsAll(uniqueBy)){
+				throw new LadaljaException("The unique columns " + uniqueBy + " are not present in all rows");
+			}
+			List<String> updated = new ArrayList<String>();
+			for(String column : columns){
+				if(!uniqueBy.contains(column) && (updateColumns == null || updateColumns.contains(column))){
+					updated.add(column);
+				}
+			}
+			List<Map<String,Object>> group = new ArrayList<Map<String,Object>>(entry.getValue().size());
+			for(int index : entry.getValue()){
+				group.add(rows.get(index));
+			}
+			if(!dialect.supportsUpsert()){
+				for(Map<String,Object> row : group){
+					affected += updateOrInsert(row, uniqueBy, updated.isEmpty() ? uniqueBy : updated);
+				}
+				continue;
+			}
+			int rowsPerStatement = Math.max(1, dialect.getMaxParameters() / columns.size());
+			for(int from = 0; from < group.size(); from += rowsPerStatement){
+				List<Map<String,Object>> slice = group.subList(from, Math.min(from + rowsPerStatement, group.size()));
+				Object values[] = new Object[slice.size() * columns.size()];
+				int i = 0;
+				for(Map<String,Object> row : slice){
+					for(String column : columns){
+						values[i++] = row.get(column);
+					}
+				}
+				affected += DB.upsert(dialect.upsertQuery(table, columns, slice.size(), uniqueBy, updated), values);
+			}
+		}
+		return affected;
+	}
+	
+	
+	/**
+	 * The upsert of a database without upsert statement, the existing row is left as is when updateColumns are uniqueBy
+	 */
+	private int updateOrInsert(Map<String,Object> row, List<String> uniqueBy, List<String> updateColumns)
+	{
+		QueryBuilder<QueryBuilder> query = new QueryBuilder<QueryBuilder>(table);
+		for(String column : uniqueBy){
+			query.where(column, row.get(column));
+		}
+		Map<String,Object> data = new LinkedHashMap<String,Object>();
+		for(String column : updateColumns){
+			data.put(column, row.get(column));
+		}
+		int updated = query.update(data);
+		if(updated > 0){
+			return updated;
+		}
+		new QueryBuilder<QueryBuilder>(table).insert(row);
+		return 1;
+	}
+	
+	
+	private static Map<List<String>, List<Integer>> groupByColumns(List<Map<String,Object>> rows)
+	{
+		Map<List<String>, List<Integer>> groups = new LinkedHashMap<List<String>, List<Integer>>();
+		for(int i = 0; i < rows.size(); i++){
+			Map<String,Object> row = rows.get(i);
+			if(row == null || row.isEmpty()){
+				throw new LadaljaException("Null or empty row in argument list");
+			}
+			List<String> columns = new ArrayList<String>(new TreeSet<String>(row.keySet()));
+			List<Integer> group = groups.get(columns);
+			if(group == null){
+				group = new ArrayList<Integer>();
+				groups.put(columns, group);
+			}
+			group.add(i);
+		}
+		return groups;
+	}
+	
+	
+	private static Object[] values(List<String> columns, Map<String,Object> row)
+	{
+		Object values[] = new Object[columns.size()];
+		for(int i = 0; i < values.length; i++){
+			values[i] = row.get(columns.get(i));
+		}
+		return values;
+	}
+	
+	
+	private int insertChunk(final List<String> columns, final List<Map<String,Object>> rows)
+	{
+		return DB.transaction(new TransactionCallback<Integer>() {
+			@Override
+			public Integer run() {
+				int rowsPerStatement = Math.max(1, DB.dialect().getMaxParameters() / columns.size());
+				int inserted = 0;
+				for(int from = 0; from < rows.size(); from += rowsPerStatement){
+					List<Map<String,Object>> slice = rows.subList(from, Math.min(from + rowsPerStatement, rows.size()));
+					Object values[] = new Object[slice.size() * columns.size()];
+					int i = 0;
+					for(Map<String,Object> row : slice){
+						for(String column : columns){
+							values[i++] = row.get(column);
+						}
+					}
+					inserted += DB.insert(insertQuery(columns, slice.size()), values);
+				}
+				return inserted;
+			}
+		});
+	}
+	
+	
+	private String insertQuery(List<String> columns, int rowCount)
+	{
+		return DB.dialect().insertQuery(table, columns, rowCount);
 	}
 	
 	
 	/**
 	 * If the table has an auto-incrementing id, 
 	 * use the insertGetId method to insert a record and then retrieve the ID
+	 * @see io.github.mezatsong.ladalja.DB#insertGetId(String, Object...)
 	 * @param arg map of column names and values
 	 * @return The ID of new inserted row
 	 */
 	public Object insertGetId(Map<String,Object> arg)
+	{
+		Object id = DB.insertGetId(insertOne("insertGetId", arg, false), params.toArray());
+		EntityCache.invalidateAbsent(table);
+		return id;
+	}
+	
+	
+	/**
+	 * Insert a record and retrieve the row as stored by the database, with its generated ID and default values,
+	 * through a <code>returning *</code> clause.
+	 * @see io.github.mezatsong.ladalja.dialect.Dialect#supportsReturning()
+	 * @param arg map of column names and values
+	 * @return a ResultSet positioned before the new row, to be closed
+	 */
+	public ResultSet insertReturning(Map<String,Object> arg)
+	{
+		if(!DB.dialect().supportsReturning()){
+			throw new LadaljaException("returning clause is not supported by "+DB.dialect());
+		}
+		ResultSet resultSet = DB.insertReturning(insertOne("insertReturning", arg, true), params.toArray());
+		EntityCache.invalidateAbsent(table);
+		return resultSet;
+	}
+	
+	
+	private String insertOne(String kind, Map<String,Object> arg, boolean returning)
 	{
 		if(arg == null){
 			throw new LadaljaException("Null argument list");
 		}
 		
-		String columns = "(";
-		String values = "(";
-		for(String key : arg.keySet()){
-			columns += "`"+ key +"`,";
-			if( (arg.get(key) != null) ){
-				if( (arg.get(key) instanceof Boolean) )
-					arg.put(key, (Boolean)arg.get(key) ? 1:0 );
-				else
-					arg.put(key, arg.get(key).toString());
-			}
-			
-			if( (arg.get(key) instanceof String) ){
-				arg.put(key, "'"+arg.get(key)+"'");
-			}
-
-			values += arg.get(key)+",";
+		params = new ArrayList<Object>();
+		String[] keys = arg.keySet().toArray(new String[arg.size()]);
+		for(String key : keys){
+			params.add( arg.get(key) );
 		}
-		columns = columns.substring(0, columns.length()-1) + ")";
-		values = values.substring(0, values.length()-1) + ")";
-		String query = "insert into `" +table+ "` "+columns+" values "+values+" ;";
-		query = sloveAmbiguousColumn(query);
-		
-		return DB.insertGetId(query.trim());
+		SqlCache.Shape shape = shape(kind, (Object) keys);
+		String query = SQL_CACHE.get(shape);
+		if(query == null){
+			String sql = insertQuery(Arrays.asList(keys), 1);
+			query = SQL_CACHE.put(shape, returning ? sql + " returning *" : sql);
+		}
+		return query;
 	}
 	
 	
@@ -436,28 +1240,39 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 *  You may constrain the  update query using where clauses
 	 * @see io.github.mezatsong.ladalja.query.QueryBuilder#insert(Map)
 	 * @param arg the Map containing data
+	 * @return number of updated rows
 	 */
-	public void update(Map<String,Object> arg)
+	public int update(Map<String,Object> arg)
 	{
 		if(arg == null){
 			throw new LadaljaException("Null argument list");
 		}
 		
-		List<Object> params2 = new ArrayList<Object>();
-		String columnsValues = "";
-		for(String key : arg.keySet()){
-			columnsValues += " `"+ key +"` = ?,";
-			params2.add( arg.get(key) );
-		}
-		for(Object param : params){
-			params2.add(param);
-		}
-		columnsValues = columnsValues.substring(0, columnsValues.length()-1);
-		String query = "update `" +table+ "` set "+columnsValues+ " "+clauses;
-		query = sloveAmbiguousColumn(query);
-		
-		DB.update(query.trim(), params2.toArray());
+		String[] keys = arg.keySet().toArray(new String[arg.size()]);
+		Object[] values = new Object[keys.length];
+		for(int i = 0; i < keys.length; i++){
+			values[i] = arg.get(keys[i]);
+		}
+		SqlCache.Shape shape = shape("update", (Object) keys);
+		String query = SQL_CACHE.get(shape);
+		if(query == null){
+			Dialect dialect = DB.dialect();
+			StringBuilder sql = new StringBuilder(estimateLength() + keys.length * 16);
+			sql.append("update ");
+			dialect.quote(sql, table);
+			sql.append(" set ");
+			for(int i = 0; i < keys.length; i++){
+				if(i > 0){
+					sql.append(", ");
+				}
+				dialect.quote(sql, keys[i]);
+				sql.append(" = ?");
+			}
+			renderWhere(sql, dialect);
+			query = SQL_CACHE.put(shape, sql.toString());
+		}
 		
+		return write(query, values);
 	}
 	
 	
@@ -467,10 +1282,18 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public void delete()
 	{
-		String query = "delete from `" +table+ "` "+clauses;
-		query = sloveAmbiguousColumn(query);
+		SqlCache.Shape shape = shape("delete");
+		String query = SQL_CACHE.get(shape);
+		if(query == null){
+			Dialect dialect = DB.dialect();
+			StringBuilder sql = new StringBuilder(estimateLength());
+			sql.append("delete from ");
+			dialect.quote(sql, table);
+			renderWhere(sql, dialect);
+			query = SQL_CACHE.put(shape, sql.toString());
+		}
 		
-		DB.delete(query.trim(), params.toArray());
+		write(query);
 		
 	}
 
@@ -500,10 +1323,13 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public void increment(String column, int supplement)
 	{
-		String query = "update `" +table+ "` set `"+column+"` = `"+column+"` + "+supplement+" "+clauses;
-		query = sloveAmbiguousColumn(query);
+		SqlCache.Shape shape = shape("increment", column);
+		String query = SQL_CACHE.get(shape);
+		if(query == null){
+			query = SQL_CACHE.put(shape, incrementQuery(column, "+"));
+		}
 		
-		DB.update(query.trim(), params.toArray());
+		write(query, supplement);
 	}
 	
 	
@@ -532,10 +1358,13 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public void decrement(String column, int reduction)
 	{
-		String query = "update `" +table+ "` set `"+column+"` = `"+column+"` - "+reduction+" "+clauses;
-		query = sloveAmbiguousColumn(query);
+		SqlCache.Shape shape = shape("decrement", column);
+		String query = SQL_CACHE.get(shape);
+		if(query == null){
+			query = SQL_CACHE.put(shape, incrementQuery(column, "-"));
+		}
 		
-		DB.update(query.trim(), params.toArray());
+		write(query, reduction);
 	}
 	
 	
@@ -544,7 +1373,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public void truncate()
 	{
-		DB.statement("truncate "+table);
+		DB.statement(DB.dialect().truncateQuery(table));
+		EntityCache.invalidate(table, null, null);
 	}
 	
 	
@@ -559,15 +1389,12 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T select(String firstColumn, String... otherColumns)
 	{
-		if(selection.contains("distinct"))
-			selection = "distinct ";
-		else
-			selection = "";
-		selection += "`"+firstColumn+"`";
+		selection = new ArrayList<Node>(1 + (otherColumns == null ? 0 : otherColumns.length));
+		selection.add(new Node.Identifier(firstColumn));
 		if(otherColumns != null)
 		{
 			for(String column : otherColumns){
-				selection += ", `"+column+"`";
+				selection.add(new Node.Identifier(column));
 			}
 		}
 		return (T) this;
@@ -581,7 +1408,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T addSelect(String column)
 	{
-		selection += ", `"+column+"`";
+		selection.add(new Node.Identifier(column));
 		return (T) this;
 	}
 	
@@ -592,7 +1419,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T distinct()
 	{
-		selection = "distinct "+selection;
+		distinct = true;
 		return (T) this;
 	}
 	
@@ -612,14 +1439,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T where(String column, String operator, Object value)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " `"+column+"` "+operator+" ? ";
 		params.add(value);
-		return (T) this;
+		return where(new Node.Comparison(null, column, operator));
 	}
 	
 	
@@ -679,8 +1500,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T orWhere(String column, String operator, Object value)
 	{
-		clauses += " or `"+column+"` "+operator+" ? ";
 		params.add(value);
+		clauses.add(new Node.Condition(true, new Node.Comparison(null, column, operator)));
 		return (T) this;
 	}
 	
@@ -719,13 +1540,9 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereBetween(String column, double min, double max)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " `"+column+"` between "+min+" and "+max+" ";
-		return (T) this;
+		params.add(min);
+		params.add(max);
+		return where(new Node.Between(column, false));
 	}
 	
 	
@@ -765,51 +1582,50 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereNotBetween(String column, double min, double max)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
+		params.add(min);
+		params.add(max);
+		return where(new Node.Between(column, true));
+	}
+
+	
+	/**
+	 * The whereIn method verifies that a given column's value is contained within the given array.
+	 * The values are bound as parameters. A list longer than {@link DB#getMaxInSize()} is queried by chunks
+	 * and the results are merged. A query using orWhere, distinct, union, groupBy, having, orderBy, limit or offset
+	 * can't be split, it binds the whole list in one statement and fails if it exceeds {@link Dialect#getMaxParameters()}
+	 * @param column
+	 * @param values
+	 * @return this object with new changes
+	 */
+	public T whereIn(String column, Object[] values)
+	{
+		if(values == null || values.length < 1)
+		{
+			return where(FALSE);
 		}
-		clauses += " `"+column+"` not between "+min+" and "+max+" ";
-		return (T) this;
+		return whereIn(column, false, values);
 	}
 
 	
+	
 	/**
-	 * The whereIn method verifies that a given column's value is contained within the given array
+	 * The whereIn method verifies that a given column's value is contained within the given array of integers,
+	 * see {@link #pluckLongs(String)}
 	 * @param column
 	 * @param values
 	 * @return this object with new changes
 	 */
-	public T whereIn(String column, Object[] values)
+	public T whereIn(String column, long[] values)
 	{
 		if(values == null || values.length < 1)
 		{
-			if( !clauses.isEmpty() ){
-				clauses += " and";
-			}else{
-				clauses = " where ";
-			}
-			clauses += " 0 = 1 ";
-			return (T) this;
+			return where(FALSE);
 		}
-		
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		String intervale = "()";
-		if(values != null && values.length > 0){
-			intervale = "('"+values[0]+"'";
-			for(int i=1; i<values.length; i++){
-				intervale += ",'"+values[i]+"'";
-			}
-			intervale += ")";
+		Object[] boxed = new Object[values.length];
+		for(int i = 0; i < values.length; i++){
+			boxed[i] = values[i];
 		}
-			
-		clauses += " `"+column+"` in "+ intervale +" ";
-		return (T) this;
+		return whereIn(column, false, boxed);
 	}
 
 	
@@ -822,22 +1638,11 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereNotIn(String column, Object[] values)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		String intervale = "()";
-		if(values != null && values.length > 0){
-			intervale = "('"+values[0]+"'";
-			for(int i=1; i<values.length; i++){
-				intervale += ",'"+values[i]+"'";
-			}
-			intervale += ")";
+		if(values == null || values.length < 1)
+		{
+			return where(TRUE);
 		}
-			
-		clauses += " `"+column+"` not in "+ intervale +" ";
-		return (T) this;
+		return whereIn(column, true, values);
 	}
 
 	
@@ -849,13 +1654,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereNull(String column)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " `"+column+"` is null ";
-		return (T) this;
+		return where(new Node.IsNull(column, false));
 	}
 	
 	
@@ -866,13 +1665,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereNotNull(String column)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " `"+column+"` is not null ";
-		return (T) this;
+		return where(new Node.IsNull(column, true));
 	}
 	
 	
@@ -897,14 +1690,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereDate(String column, String operator, Date date)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " date(`"+column+"`) "+operator+"  ? ";
 		params.add(date.toString());
-		return (T) this;
+		return where(new Node.Comparison("date", column, operator));
 	}
 
 	
@@ -929,13 +1716,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereYear(String column, String operator, int year)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " year(`"+column+"`) "+operator+"  "+year;
-		return (T) this;
+		params.add(year);
+		return where(new Node.Comparison("year", column, operator));
 	}
 
 
@@ -960,13 +1742,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereMonth(String column, String operator, int month)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " month(`"+column+"`) "+operator+"  "+month;
-		return (T) this;
+		params.add(month);
+		return where(new Node.Comparison("month", column, operator));
 	}
 	
 	/**
@@ -989,13 +1766,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereDay(String column, String operator, int day)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " day(`"+column+"`) "+operator+"  "+day;
-		return (T) this;
+		params.add(day);
+		return where(new Node.Comparison("day", column, operator));
 	}
 
 	
@@ -1021,13 +1793,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T whereColumn(String column1, String operator, String column2)
 	{
-		if( !clauses.isEmpty() ){
-			clauses += " and";
-		}else{
-			clauses = " where ";
-		}
-		clauses += " `"+column1+"` "+operator+"  `"+column2+"` ";
-		return (T) this;
+		return where(new Node.ColumnComparison(column1, operator, column2));
 	}
 	
 	/**
@@ -1093,14 +1859,13 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T groupBy(String firstColumn, String... otherColumns)
 	{
-		String columns = "`"+firstColumn+"`";
-		if(otherColumns != null && otherColumns.length > 0){
-			for(int i=0; i<otherColumns.length; i++){
-				columns += ",`"+otherColumns[i]+"`";
+		groupBy = new ArrayList<Node>(1 + (otherColumns == null ? 0 : otherColumns.length));
+		groupBy.add(new Node.Identifier(firstColumn));
+		if(otherColumns != null){
+			for(String column : otherColumns){
+				groupBy.add(new Node.Identifier(column));
 			}
 		}
-		
-		groupBy = "group by "+ columns +" ";
 		return (T) this;
 	}
 	
@@ -1124,14 +1889,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T orderBy(String column, String order)
 	{
-		String cls = " order by ";
-		if(column.contains("()")){
-			cls += column;
-		}else{
-			cls += "`"+column+"` ";
-		}
-		
-		orderBy += cls + " "+order;
+		orderBy.add(new Node.Order(column, order));
 		return (T) this;
 	}
 	
@@ -1174,7 +1932,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T inRandomOrder()
 	{
-		return orderBy("RAND()");
+		orderBy.add(RANDOM);
+		return (T) this;
 	}
 	
 	/**
@@ -1188,12 +1947,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T having(String column, String operator, String value)
 	{
-		if(having.isEmpty()){
-			having = "having";
-		}else{
-			having += " and";
-		}
-		having += " `"+column+"` "+operator+ " ? ";
+		having.add(new Node.Condition(false, new Node.Comparison(null, column, operator)));
 		params.add(value);
 		return (T) this;
 	}
@@ -1206,7 +1960,8 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T havingRaw(String havingClause)
 	{
-		having = havingClause;
+		having.clear();
+		havingRaw = havingClause;
 		return (T) this;
 	}
 	
@@ -1240,7 +1995,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T offset(int arg)
 	{
-		offset = " offset "+arg;
+		offset = arg;
 		return (T) this;
 	}
 	
@@ -1251,7 +2006,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T limit(int arg)
 	{
-		limit = " limit "+arg;
+		limit = arg;
 		return (T) this;
 	}
 	
@@ -1264,7 +2019,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T sharedLock()
 	{
-		lock = " lock in share mode ";
+		lock = Dialect.Lock.SHARED;
 		return (T) this;
 	}
 	
@@ -1275,7 +2030,20 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T lockForUpdate()
 	{
-		lock = " for update ";
+		lock = Dialect.Lock.UPDATE;
+		return (T) this;
+	}
+	
+	/**
+	 * Take a "for update" lock on the rows which are not already locked by another transaction, skipping the others
+	 * instead of waiting for them, to share a queue table between workers.
+	 * Where the database can't skip locked rows, it is the same as {@link #lockForUpdate()}
+	 * @see io.github.mezatsong.ladalja.dialect.Dialect#supportsSkipLocked()
+	 * @return this object with new changes
+	 */
+	public T lockForUpdateSkipLocked()
+	{
+		lock = Dialect.Lock.UPDATE_SKIP_LOCKED;
 		return (T) this;
 	}
 	
@@ -1288,7 +2056,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 * To perform a basic "inner join", you may use the join method on a query builder instance. 
 	 * The first argument passed to the join method is the name of the table you need to join to, 
 	 * while the remaining arguments specify the column constraints for the join. 
-	 * Of course, you can join at most two tables in a single query
+	 * Each call joins one more table
 	 * @param joinTable
 	 * @param column
 	 * @param operator
@@ -1297,7 +2065,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T join(String joinTable, String column, String operator, String joinColumn)
 	{
-		join = " inner join `"+joinTable+"` on `"+column+"` "+operator+" `"+joinColumn+"` ";
+		joins.add(new Node.Join("inner", joinTable, column, operator, joinColumn));
 		return (T) this;
 	}
 	
@@ -1312,7 +2080,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T leftJoin(String joinTable, String column, String operator, String joinColumn)
 	{
-		join = " left join `"+joinTable+"` on `"+column+"` "+operator+" `"+joinColumn+"` ";
+		joins.add(new Node.Join("left", joinTable, column, operator, joinColumn));
 		return (T) this;
 	}
 	
@@ -1324,7 +2092,7 @@ public class QueryBuilder<T extends QueryBuilder> {
 	 */
 	public T crossJoin(String joinTable)
 	{
-		join = " cross join `"+joinTable+"` ";
+		joins.add(new Node.Join("cross", joinTable, null, null, null));
 		return (T) this;
 	}
 	
@@ -1342,20 +2110,494 @@ public class QueryBuilder<T extends QueryBuilder> {
 	}
 	
 	
+	/**
+	 * Cache the results of the reads of this query during the given time, for the same SQL and bound parameters.
+	 * The results of getMap, getRows, getColumns, firstMap, value, the pluck methods giving values and the aggregates are cached,
+	 * shared by all threads, until the time is over or a table of the query is written, see {@link ResultCache}.
+	 * The methods giving a ResultSet, the locked reads, the reads inside a transaction and the whereIn lists
+	 * queried by chunks of {@link DB#getMaxInSize()} values are not cached.
+	 * For example, for a dashboard counting the orders every second : <br>
+	 * DB.table("orders").where("status", "paid").remember(30, TimeUnit.SECONDS).count();
+	 * @param duration time to live of the cached results
+	 * @param unit the unit of duration
+	 * @return this object with new changes
+	 */
+	public T remember(long duration, TimeUnit unit)
+	{
+		if(duration < 1){
+			throw new LadaljaException("The duration to remember a result must be positive");
+		}
+		remember = unit.toNanos(duration);
+		return (T) this;
+	}
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	/**
+	 * Close a ResultSet returned by {@link io.github.mezatsong.ladalja.DB#select(String, Object...)},
+	 * which give its connection back to the pool
+	 * @param resultSet the ResultSet to close, may be null
+	 */
+	protected static void close(ResultSet resultSet)
+	{
+		if (resultSet != null) {
+			try {
+				resultSet.close();
+			} catch (SQLException e) {}
+		}
+	}
+	
+	
+	/**
+	 * The pieces of query of this builder, and those of the union, that make its SQL for a kind of statement.
+	 * The bound parameters are not part of it, so builders differing only by their parameters share the same SQL.
+	 * @param kind the finishing method
+	 * @param extras arguments of the finishing method used in the SQL
+	 */
+	private SqlCache.Shape shape(String kind, Object... extras)
+	{
+		if(!kind.equals("union")){
+			split();
+		}
+		return new SqlCache.Shape(kind, extras, DB.dialect(), table, distinct, selection.toArray(), joins.toArray(), clauses.toArray(),
+				groupBy.toArray(), having.toArray(), havingRaw, orderBy.toArray(), limit, offset, lock,
+				union == null ? null : union.shape("union"));
+	}
+	
+	
+	/**
+	 * Add a predicate to the where clause, joined with and
+	 */
+	private T where(Node predicate)
+	{
+		clauses.add(new Node.Condition(false, predicate));
+		return (T) this;
+	}
+	
+	
+	/**
+	 * Replace the selected columns by an expression, used by aggregates
+	 */
+	private void select(Node expression)
+	{
+		distinct = false;
+		selection = new ArrayList<Node>(1);
+		selection.add(expression);
+	}
+	
+	
+	/**
+	 * Add a [not] in predicate, its placeholders are padded to a power of two by repeating the last value,
+	 * so that lists of close lengths share their SQL. A whereIn list longer than {@link DB#getMaxInSize()} is bound
+	 * by chunks of this size, each one queried on its own, unless the query can't be split, see {@link #split()}.
+	 * A whereNotIn list is bound in one piece.
+	 */
+	private T whereIn(String column, boolean not, Object[] values)
+	{
+		int maxSize = DB.getMaxInSize();
+		if(!not && values.length > maxSize){
+			if(splitValues != null){
+				throw new LadaljaException("Only one whereIn list can have more than " + maxSize + " values");
+			}
+			// a value in two chunks would give its rows twice
+			values = new LinkedHashSet<Object>(Arrays.asList(values)).toArray();
+			if(values.length > maxSize){
+				splitValues = values;
+				splitIndex = params.size();
+				splitSize = maxSize;
+				splitColumn = column;
+				splitClause = new Node.Condition(false, new Node.In(column, false, maxSize));
+				params.addAll(Arrays.asList(values).subList(0, maxSize));
+				clauses.add(splitClause);
+				return (T) this;
+			}
+		}
+		
+		int size = values.length;
+		if(size > 1){
+			size = Math.min(Integer.highestOneBit(size - 1) << 1, Math.max(maxSize, size));
+		}
+		for(int i = 0; i < size; i++){
+			params.add(values[Math.min(i, values.length - 1)]);
+		}
+		return where(new Node.In(column, not, size));
+	}
+	
+	
+	/**
+	 * @return the parameters bound to the queries, for the given chunk of the split whereIn list,
+	 * the last chunk is padded with its last value
+	 * @param head parameters bound before the ones of the clauses
+	 */
+	private Object[] params(int chunk, Object... head)
+	{
+		Object[] values = new Object[head.length + params.size()];
+		System.arraycopy(head, 0, values, 0, head.length);
+		for(int i = 0; i < params.size(); i++){
+			values[head.length + i] = params.get(i);
+		}
+		if(splitValues != null){
+			int from = chunk * splitSize;
+			for(int i = 0; i < splitSize; i++){
+				values[head.length + splitIndex + i] = splitValues[Math.min(from + i, splitValues.length - 1)];
+			}
+		}
+		return values;
+	}
+	
+	
+	/**
+	 * @return the number of chunks of the split whereIn list, 1 if there is none
+	 */
+	private int chunkCount()
+	{
+		return splitValues == null ? 1 : (splitValues.length + splitSize - 1) / splitSize;
+	}
+	
+	
+	/**
+	 * Keep the whereIn list longer than {@link DB#getMaxInSize()} split when the rows of each chunk can be merged
+	 * as they come, otherwise bind it in one piece
+	 * @return true if the list is still queried by chunks
+	 */
+	private boolean split()
+	{
+		if(splitValues == null){
+			return false;
+		}
+		boolean or = false;
+		for(Node.Condition clause : clauses){
+			or |= clause.isOr();
+		}
+		if(or || distinct || union != null || !groupBy.isEmpty() || !having.isEmpty() || havingRaw != null 
+				|| !orderBy.isEmpty() || limit >= 0 || offset >= 0){
+			merge();
+			return false;
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Bind all the values of the split whereIn list in one statement, the query depends on all the rows
+	 * @throws LadaljaException if the statement would bind more parameters than the dialect allows
+	 */
+	private void merge()
+	{
+		int count = params.size() - splitSize + splitValues.length;
+		int maxParameters = DB.dialect().getMaxParameters();
+		if(count > maxParameters){
+			throw new LadaljaException("A whereIn list of " + splitValues.length + " values can't be used with orWhere, distinct, union, "
+					+ "groupBy, having, orderBy, limit or offset: the query would bind more than " + maxParameters + " parameters");
+		}
+		List<Object> merged = new ArrayList<Object>(count);
+		merged.addAll(params.subList(0, splitIndex));
+		merged.addAll(Arrays.asList(splitValues));
+		merged.addAll(params.subList(splitIndex + splitSize, params.size()));
+		params = merged;
+		for(int i = 0; i < clauses.size(); i++){
+			if(clauses.get(i) == splitClause){
+				clauses.set(i, new Node.Condition(false, new Node.In(splitColumn, false, splitValues.length)));
+			}
+		}
+		splitValues = null;
+		splitClause = null;
+	}
+	
+	
+	/**
+	 * Run a select query, once per chunk of the split whereIn list if any
+	 * @return the rows of all the queries
+	 */
+	private ResultSet select(final String query)
+	{
+		if(splitValues == null){
+			return DB.select(query, params.toArray());
+		}
+		return ChainedResultSet.chain(new Iterator<ResultSet>() {
+			private int chunk = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return chunk < chunkCount();
+			}
+			
+			@Override
+			public ResultSet next() {
+				return DB.select(query, params(chunk++));
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Run a select query and read its result, or give it from the {@link ResultCache} if the query is remembered
+	 * @param kind the name of the reader, in the key of the cached result since the same query can be read in several ways
+	 */
+	private <R> R read(String query, String kind, Reader<R> reader)
+	{
+		SqlCache.Shape key = null;
+		Set<String> tags = null;
+		long[] stamps = null;
+		if(remember > 0 && splitValues == null && lock == null){
+			key = new SqlCache.Shape(query, params.toArray(), kind);
+			Object cached = ResultCache.get(key);
+			if(cached != null){
+				return cached == ResultCache.NULL ? null : (R) ResultCache.copy(cached);
+			}
+			tags = tags();
+			stamps = ResultCache.getStamps(tags);
+		}
+		ResultSet resultSet = select(query);
+		R result;
+		try {
+			result = reader.read(resultSet);
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		} finally {
+			close(resultSet);
+		}
+		if(key != null && !DB.inTransaction()){
+			ResultCache.put(key, tags, result == null ? ResultCache.NULL : result, remember, stamps);
+			return (R) ResultCache.copy(result);
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * @return the tags of the tables read by this query, see {@link ResultCache#tag(String)}
+	 */
+	private Set<String> tags()
+	{
+		Set<String> tags = new TreeSet<String>();
+		tags.add(ResultCache.tag(table));
+		for(Node.Join join : joins){
+			tags.add(ResultCache.tag(join.getTable()));
+		}
+		if(union != null){
+			tags.addAll(union.tags());
+		}
+		return tags;
+	}
+	
+	
+	/**
+	 * Run an update or delete query, once per chunk of the split whereIn list if any, in one batch
+	 * @param head parameters bound before the ones of the clauses
+	 * @return number of rows written, as reported by the driver
+	 */
+	private int write(String query, Object... head)
+	{
+		if(splitValues == null){
+			int written = query.startsWith("delete") ? DB.delete(query, params(0, head)) : DB.update(query, params(0, head));
+			invalidateCaches();
+			return written;
+		}
+		List<Object[]> paramsList = new ArrayList<Object[]>(chunkCount());
+		for(int chunk = 0; chunk < chunkCount(); chunk++){
+			paramsList.add(params(chunk, head));
+		}
+		int written = 0;
+		for(int count : DB.batch(query, paramsList)){
+			if(count > 0){
+				written += count;
+			}
+		}
+		invalidateCaches();
+		return written;
+	}
+	
+	
+	/**
+	 * Evict the rows written by this query from the caches of the models of the table, 
+	 * only the written row when the query is constrained by a single equality
+	 * @see io.github.mezatsong.ladalja.EntityCache
+	 */
+	private void invalidateCaches()
+	{
+		String column = null;
+		if(splitValues == null && joins.isEmpty() && clauses.size() == 1 && params.size() == 1){
+			column = clauses.get(0).getEqualityColumn();
+		}
+		EntityCache.invalidate(table, column, column == null ? null : params.get(0));
+	}
+	
+	
+	/**
+	 * Run an aggregate once per chunk of the split whereIn list and combine the results
+	 * @param function count, sum, min or max
+	 * @return the aggregate, null if there is no value
+	 */
+	private Double splitAggregate(String function, String column)
+	{
+		select(new Node.Aggregate(function, column));
+		ResultSet resultSet = get();
+		try {
+			Double result = null;
+			while(resultSet.next()){
+				double value = resultSet.getDouble("aggregate");
+				if(resultSet.wasNull()){
+					continue;
+				}
+				if(result == null){
+					result = value;
+				}else if(function.equals("max")){
+					result = Math.max(result, value);
+				}else if(function.equals("min")){
+					result = Math.min(result, value);
+				}else{
+					result += value;
+				}
+			}
+			return result;
+		} catch (SQLException e) {
+			throw new LadaljaException(e);
+		} finally {
+			close(resultSet);
+		}
+	}
+	
+	
+	/**
+	 * Read the result of a select query
+	 */
+	private interface Reader<R> {
+		
+		R read(ResultSet resultSet) throws SQLException;
+	}
+	
+	
+	/**
+	 * @return a capacity for the StringBuilder of the query, large enough for most queries
+	 */
+	private int estimateLength()
+	{
+		return 48 + table.length() + 16 * (selection.size() + joins.size() + groupBy.size() + orderBy.size())
+				+ 24 * (clauses.size() + having.size());
+	}
 	
 	
+	/**
+	 * Render the select statement of this builder, without its union
+	 * @param column the only column to select instead of the selection, or null
+	 * @param single true to limit the result to one row
+	 */
+	private void renderSelect(StringBuilder sql, Dialect dialect, String column, boolean single)
+	{
+		sql.append("select ");
+		if(column != null){
+			dialect.quote(sql, column);
+		}else{
+			if(distinct){
+				sql.append("distinct ");
+			}
+			Node.render(sql, dialect, selection, ", ");
+		}
+		sql.append(" from ");
+		dialect.quote(sql, table);
+		for(Node.Join join : joins){
+			sql.append(' ');
+			join.render(sql, dialect);
+		}
+		renderWhere(sql, dialect);
+		if(!groupBy.isEmpty()){
+			sql.append(" group by ");
+			Node.render(sql, dialect, groupBy, ",");
+		}
+		if(havingRaw != null){
+			sql.append(' ').append(havingRaw);
+		}else if(!having.isEmpty()){
+			sql.append(" having ");
+			Node.Condition.render(sql, dialect, having);
+		}
+		if(!orderBy.isEmpty()){
+			sql.append(" order by ");
+			Node.render(sql, dialect, orderBy, ", ");
+		}
+		if(single){
+			sql.append(" limit 1");
+		}else if(limit >= 0){
+			sql.append(" limit ").append(limit);
+		}
+		if(offset >= 0){
+			sql.append(" offset ").append(offset);
+		}
+		String lockClause = lock == null ? null : dialect.getLock(lock);
+		if(lockClause != null){
+			sql.append(' ').append(lockClause);
+		}
+	}
+	
+	
+	private void renderWhere(StringBuilder sql, Dialect dialect)
+	{
+		if(!clauses.isEmpty()){
+			sql.append(" where ");
+			Node.Condition.render(sql, dialect, clauses);
+		}
+	}
+	
 	
+	/**
+	 * @param operator + or -
+	 */
+	private String incrementQuery(String column, String operator)
+	{
+		Dialect dialect = DB.dialect();
+		StringBuilder sql = new StringBuilder(estimateLength() + 2 * column.length());
+		sql.append("update ");
+		dialect.quote(sql, table);
+		sql.append(" set ");
+		dialect.quote(sql, column);
+		sql.append(" = ");
+		dialect.quote(sql, column);
+		sql.append(' ').append(operator).append(" ?");
+		renderWhere(sql, dialect);
+		return sql.toString();
+	}
 	
 	
+	/**
+	 * Statistics of the cache of rendered SQL shared by all query builders: a hit is a finishing method
+	 * that did not have to build its query because a builder of the same shape already did.
+	 * @return the statistics
+	 */
+	public static CacheStatistics getSqlCacheStatistics()
+	{
+		return SQL_CACHE.getStatistics();
+	}
 	
 	
+	/**
+	 * Empty the cache of rendered SQL, its statistics are kept
+	 */
+	public static void clearSqlCache()
+	{
+		SQL_CACHE.clear();
+	}
 	
 	
 	/**
 	 * Take a query and re-organize it, for exemple, it will make all `user.name` like `user`.`name`
 	 * @param query
 	 * @return unambiguous query string 
+	 * @deprecated identifiers are now quoted when the query is rendered, this method is no longer used
 	 */
+	@Deprecated
 	protected String sloveAmbiguousColumn(String query)
 	{
 		char tab[] = query.trim().toCharArray();
@@ -4,9 +4,12 @@
 package io.github.mezatsong.ladalja.query;
 
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
+import io.github.mezatsong.ladalja.ChunkCallback;
+import io.github.mezatsong.ladalja.EntityMetadata;
 import io.github.mezatsong.ladalja.LadaljaException;
 import io.github.mezatsong.ladalja.ModelRepository;
 
@@ -52,24 +55,91 @@ import io.github.mezatsong.ladalja.ModelRepository;
 	 * @param model the model class into the result will be casted
 	 * @return ResultSet of result a java.sql.ResultSet containing the results of builded of query. 
 	 */
-	@SuppressWarnings("unchecked")
 	public <T extends ModelRepository> List<T> get(Class<? extends ModelRepository> model)
 	{
 		try {
-			table = model.getDeclaredConstructor().newInstance().getTable();
+			table = EntityMetadata.of(model).getTable();
+			RowMapper<T> mapper = ModelRepository.rowMapper(model);
 			ResultSet resultSet = super.get();
-			List<T> list = new ArrayList<T>();
-			while(resultSet.next())
-			{
-				T e = (T) ModelRepository.mapping(resultSet,model);
-				list.add(e);
+			try {
+				List<T> list = new ArrayList<T>();
+				while(resultSet.next())
+				{
+					list.add(mapper.map(resultSet));
+				}
+				return list;
+			} finally {
+				close(resultSet);
 			}
-			return list;
 		} catch (Exception e) {
 			throw new LadaljaException(e);
 		}
 	}
 
+	/**
+	 * Build query and return a cursor mapping its rows into models one by one, 
+	 * instead of loading them all in memory like {@link #get(Class)}.
+	 * The connection stays leased until the cursor is exhausted or closed, so use it in a try-with-resources block.
+	 * @param model the model class into the rows will be casted
+	 * @return a cursor over the models
+	 */
+	public <T extends ModelRepository> Cursor<T> cursor(Class<? extends ModelRepository> model)
+	{
+		return cursor(model, DEFAULT_FETCH_SIZE);
+	}
+	
+	/**
+	 * @see #cursor(Class)
+	 * @param model the model class into the rows will be casted
+	 * @param fetchSize number of rows the driver should fetch per round-trip
+	 * @return a cursor over the models
+	 */
+	public <T extends ModelRepository> Cursor<T> cursor(Class<? extends ModelRepository> model, int fetchSize)
+	{
+		final RowMapper<T> mapper = mapper(model);
+		return new Cursor<T>(openCursor(fetchSize)) {
+			@Override
+			protected T map(ResultSet resultSet) throws SQLException {
+				return mapper.map(resultSet);
+			}
+		};
+	}
+	
+	/**
+	 * Process the models of the query by chunks
+	 * @see io.github.mezatsong.ladalja.query.QueryBuilder#chunk(int, ChunkCallback)
+	 * @param model the model class into the rows will be casted
+	 * @param size number of models per chunk
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public <T extends ModelRepository> boolean chunk(Class<? extends ModelRepository> model, int size, ChunkCallback<T> callback)
+	{
+		return chunk(size, this.<T>mapper(model), callback);
+	}
+	
+	/**
+	 * Process the models of the query by chunks, paging on the primary key of the model
+	 * @see io.github.mezatsong.ladalja.query.QueryBuilder#chunkById(int, String, ChunkCallback)
+	 * @param model the model class into the rows will be casted
+	 * @param size number of models per chunk
+	 * @param callback the work to do on each chunk, returning false stop the iteration
+	 * @return false if the callback stopped the iteration, true otherwise
+	 */
+	public <T extends ModelRepository> boolean chunkById(Class<? extends ModelRepository> model, int size, ChunkCallback<T> callback)
+	{
+		return chunkById(size, ModelRepository.getPrimaryKey(model), this.<T>mapper(model), callback);
+	}
+	
+	/**
+	 * Set the table of the model on this query builder and give the mapper of its rows
+	 */
+	private <T extends ModelRepository> RowMapper<T> mapper(Class<? extends ModelRepository> model)
+	{
+		table = EntityMetadata.of(model).getTable();
+		return ModelRepository.rowMapper(model);
+	}
+
 	/**
 	 * @deprecated don't use it
 	 */
@@ -89,14 +159,17 @@ import io.github.mezatsong.ladalja.ModelRepository;
 	public <T extends ModelRepository> T first(Class<? extends ModelRepository> model)
 	{
 		try {
-			table = model.getDeclaredConstructor().newInstance().getTable();
-			ResultSet resultSet = super.get();
-			if(resultSet.next())
-			{
-				T e = (T) ModelRepository.mapping(resultSet,model);
-				return e;
+			table = EntityMetadata.of(model).getTable();
+			ResultSet resultSet = super.first();
+			try {
+				if(resultSet.next())
+				{
+					return (T) ModelRepository.mapping(resultSet,model);
+				}
+				return null;
+			} finally {
+				close(resultSet);
 			}
-			return null;
 		} catch (Exception e) {
 			throw new LadaljaException(e);
 		}
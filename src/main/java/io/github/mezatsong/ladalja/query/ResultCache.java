@@ -0,0 +1,462 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.mezatsong.ladalja.DB;
+import io.github.mezatsong.ladalja.LadaljaException;
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+/**
+ * The results of the reads of {@link QueryBuilder#remember(long, java.util.concurrent.TimeUnit)}, keyed by their SQL
+ * and bound parameters, and tagged with the tables they read: the table of the builder, the joined ones and those of the union.<br>
+ * It is shared by all builders and threads. Its memory is bounded by an estimate of the weight of the cached results,
+ * the least recently used ones are evicted first, and a result heavier than an eighth of the maximal weight is not cached.
+ * <p>
+ * Each write made through {@link DB} evicts the results tagged with the written tables, whether it comes from a model,
+ * a query builder or raw SQL, whose tables are read after the <code>into</code>, <code>update</code>, <code>from</code>,
+ * <code>table</code> or <code>join</code> keywords. A statement naming no table empties the whole cache.
+ * Writes to tables never read by a remembered query cost nothing more, and only the writes to its tables stop
+ * a result read at the same time from being cached.
+ * Results read inside a transaction are not cached, and the tables written by a transaction are evicted again when it ends.
+ * Tables read only by raw pieces of query, like a sub query in whereRaw, are not tags: their writes are not seen.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class ResultCache {
+
+	/**
+	 * Default maximal weight of the cached results, in bytes
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 16L << 20;
+
+	/**
+	 * The result cached for a read giving null
+	 */
+	static final Object NULL = new Object();
+
+	private static final Pattern WRITTEN_TABLE = Pattern.compile(
+			"\\b(?:into|update|from|table|join)\\s+(?:if\\s+(?:not\\s+)?exists\\s+)?(?:only\\s+)?([`\"\\[]?[\\w$.`\"\\[\\]]+)",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Object LOCK = new Object();
+
+	/**
+	 * The entries, in access order for the least recently used one to be evicted first
+	 */
+	private static final LinkedHashMap<SqlCache.Shape, Entry> ENTRIES = new LinkedHashMap<SqlCache.Shape, Entry>(64, 0.75f, true);
+
+	/**
+	 * The keys of the entries, by tag. The sets are changed and read holding the lock,
+	 * but a tag can be looked up without it, to skip the writes to a table having no entry
+	 */
+	private static final ConcurrentMap<String, Set<SqlCache.Shape>> TAGGED = new ConcurrentHashMap<String, Set<SqlCache.Shape>>();
+
+	/**
+	 * The tables written by the transaction of the current thread, evicted again when it ends
+	 */
+	private static final ThreadLocal<Set<String>> WRITTEN = new ThreadLocal<Set<String>>();
+
+	/**
+	 * The stamps of the tables read by remembered queries, incremented by each invalidation of the table:
+	 * a result read before it must not be cached
+	 */
+	private static final ConcurrentMap<String, AtomicLong> STAMPS = new ConcurrentHashMap<String, AtomicLong>();
+
+	private static final CacheStatistics STATISTICS = new CacheStatistics();
+
+	private static volatile long maxWeight = DEFAULT_MAX_WEIGHT;
+
+	private static long weight;
+
+
+	private ResultCache() {
+	}
+
+
+	/**
+	 * @return the cached result, {@link #NULL} for a null one, or null if it is not cached
+	 */
+	static Object get(SqlCache.Shape key)
+	{
+		Entry entry;
+		synchronized (LOCK) {
+			entry = ENTRIES.get(key);
+			if(entry != null && entry.expires - System.nanoTime() < 0){
+				remove(key);
+				entry = null;
+			}
+		}
+		if(entry == null){
+			STATISTICS.miss();
+			return null;
+		}
+		STATISTICS.hit();
+		return entry.result;
+	}
+
+
+	/**
+	 * @param tags the tables read by a query
+	 * @return the stamps of the tables, in the order of tags, to give to {@link #put(SqlCache.Shape, Set, Object, long, long[])}
+	 * for a result read from now
+	 */
+	static long[] getStamps(Set<String> tags)
+	{
+		long[] stamps = new long[tags.size()];
+		int i = 0;
+		for(String tag : tags){
+			stamps[i++] = stamp(tag).get();
+		}
+		return stamps;
+	}
+
+
+	private static AtomicLong stamp(String tag)
+	{
+		AtomicLong stamp = STAMPS.get(tag);
+		if(stamp == null){
+			AtomicLong created = new AtomicLong();
+			stamp = STAMPS.putIfAbsent(tag, created);
+			if(stamp == null){
+				stamp = created;
+			}
+		}
+		return stamp;
+	}
+
+
+	/**
+	 * Cache a result, unless one of its tables was written since it was read
+	 * @param tags the tables read by the query, in lower case
+	 * @param result the result, {@link #NULL} for null, it must not be modified anymore
+	 * @param ttl time to live in nanoseconds
+	 * @param stamps the value of {@link #getStamps(Set)} before the result was read
+	 */
+	static void put(SqlCache.Shape key, Set<String> tags, Object result, long ttl, long[] stamps)
+	{
+		long entryWeight = 64 + weigh(key.getParts()) + weigh(result);
+		if(entryWeight > maxWeight / 8){
+			return;
+		}
+		synchronized (LOCK) {
+			remove(key);
+			ENTRIES.put(key, new Entry(tags, result, entryWeight, System.nanoTime() + ttl));
+			for(String tag : tags){
+				Set<SqlCache.Shape> keys = TAGGED.get(tag);
+				if(keys == null){
+					keys = new HashSet<SqlCache.Shape>();
+					TAGGED.put(tag, keys);
+				}
+				keys.add(key);
+			}
+			weight += entryWeight;
+			// checked once tagged: a write either sees the tag and evicts the entry, or has changed the stamp before
+			int i = 0;
+			for(String tag : tags){
+				if(stamp(tag).get() != stamps[i++]){
+					remove(key);
+					return;
+				}
+			}
+			evict();
+		}
+	}
+
+
+	/**
+	 * Evict the results read from a table
+	 * @param table the written table
+	 */
+	public static void invalidate(String table)
+	{
+		String tag = tag(table);
+		AtomicLong stamp = STAMPS.get(tag);
+		if(stamp != null){
+			stamp.incrementAndGet();
+			if(TAGGED.containsKey(tag)){
+				synchronized (LOCK) {
+					Set<SqlCache.Shape> keys = TAGGED.get(tag);
+					if(keys != null){
+						for(SqlCache.Shape key : keys.toArray(new SqlCache.Shape[keys.size()])){
+							remove(key);
+						}
+					}
+				}
+			}
+		}
+		if(DB.inTransaction()){
+			Set<String> written = WRITTEN.get();
+			if(written == null){
+				written = new HashSet<String>();
+				WRITTEN.set(written);
+			}
+			written.add(tag);
+		}
+	}
+
+
+	/**
+	 * Evict the results read from the tables written by a query, or all the results if it names no table
+	 * @param query an SQL query writing rows or changing tables
+	 */
+	public static void invalidateQuery(String query)
+	{
+		if(STAMPS.isEmpty() && !DB.inTransaction()){
+			// no query was ever remembered
+			return;
+		}
+		Matcher matcher = WRITTEN_TABLE.matcher(query);
+		boolean found = false;
+		while(matcher.find()){
+			invalidate(matcher.group(1));
+			found = true;
+		}
+		if(!found){
+			clear();
+		}
+	}
+
+
+	/**
+	 * Evict again the tables written by the transaction of the current thread, once it is committed or rolled back,
+	 * for the results read meanwhile by other threads, before the commit, not to stay cached
+	 */
+	public static void transactionEnded()
+	{
+		Set<String> written = WRITTEN.get();
+		if(written != null){
+			WRITTEN.remove();
+			for(String table : written){
+				invalidate(table);
+			}
+		}
+	}
+
+
+	/**
+	 * Remove all the cached results
+	 */
+	public static void clear()
+	{
+		for(AtomicLong stamp : STAMPS.values()){
+			stamp.incrementAndGet();
+		}
+		synchronized (LOCK) {
+			ENTRIES.clear();
+			TAGGED.clear();
+			weight = 0;
+		}
+	}
+
+
+	/**
+	 * @return number of cached results, expired ones included
+	 */
+	public static int size()
+	{
+		synchronized (LOCK) {
+			return ENTRIES.size();
+		}
+	}
+
+
+	/**
+	 * @return the estimated weight of the cached results, in bytes
+	 */
+	public static long getWeight()
+	{
+		synchronized (LOCK) {
+			return weight;
+		}
+	}
+
+
+	/**
+	 * @param bytes maximal estimated weight of the cached results, the least recently used are evicted to stay under it
+	 * @throws io.github.mezatsong.ladalja.LadaljaException if the weight is not positive
+	 */
+	public static void setMaxWeight(long bytes) throws LadaljaException
+	{
+		if(bytes < 1){
+			throw new LadaljaException("The maximal weight of the result cache must be positive");
+		}
+		synchronized (LOCK) {
+			maxWeight = bytes;
+			evict();
+		}
+	}
+
+
+	/**
+	 * @return hit, miss and eviction counters of the cache, evictions being the results removed to stay under the maximal weight
+	 */
+	public static CacheStatistics getStatistics()
+	{
+		return STATISTICS;
+	}
+
+
+	/**
+	 * @return the tag of a table, its name in lower case without alias, schema nor quotes
+	 */
+	static String tag(String table)
+	{
+		String name = table.trim().split("\\s+")[0].replaceAll("[`\"\\[\\]]", "").toLowerCase();
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+
+
+	/**
+	 * @return a result given by the cache, copied if it can be modified
+	 */
+	static Object copy(Object result)
+	{
+		if(result instanceof Collection && !(result instanceof RowSet)){
+			return new ArrayList<Object>((Collection<?>) result);
+		}
+		if(result instanceof long[]){
+			return ((long[]) result).clone();
+		}
+		if(result instanceof int[]){
+			return ((int[]) result).clone();
+		}
+		if(result instanceof double[]){
+			return ((double[]) result).clone();
+		}
+		if(result instanceof Object[]){
+			return ((Object[]) result).clone();
+		}
+		return result;
+	}
+
+
+	/**
+	 * @return a rough estimate of the memory used by a result, in bytes
+	 */
+	static long weigh(Object value)
+	{
+		if(value == null || value == NULL){
+			return 4;
+		}
+		if(value instanceof String){
+			return 40 + 2L * ((String) value).length();
+		}
+		if(value instanceof byte[]){
+			return 16 + ((byte[]) value).length;
+		}
+		if(value instanceof long[]){
+			return 16 + 8L * ((long[]) value).length;
+		}
+		if(value instanceof int[]){
+			return 16 + 4L * ((int[]) value).length;
+		}
+		if(value instanceof double[]){
+			return 16 + 8L * ((double[]) value).length;
+		}
+		if(value instanceof Object[]){
+			long total = 16;
+			for(Object element : (Object[]) value){
+				total += 4 + weigh(element);
+			}
+			return total;
+		}
+		if(value instanceof Map){
+			long total = 32;
+			for(Object element : ((Map<?, ?>) value).values()){
+				total += 4 + weigh(element);
+			}
+			return total;
+		}
+		if(value instanceof Collection){
+			long total = 32;
+			for(Object element : (Collection<?>) value){
+				total += 4 + weigh(element);
+			}
+			return total;
+		}
+		if(value instanceof ColumnSet){
+			long total = 32;
+			for(ColumnSet.Column column : ((ColumnSet) value).getColumns()){
+				// the bitmap of the nulls, then the values
+				total += 48 + column.size() / 8;
+				total += column.getType() == ColumnSet.Type.STRING ? weigh(column.strings()) : 16 + 8L * column.size();
+			}
+			return total;
+		}
+		return 24;
+	}
+
+
+	private static void remove(SqlCache.Shape key)
+	{
+		Entry entry = ENTRIES.remove(key);
+		if(entry != null){
+			untag(key, entry);
+		}
+	}
+
+
+	private static void untag(SqlCache.Shape key, Entry entry)
+	{
+		weight -= entry.weight;
+		for(String tag : entry.tags){
+			Set<SqlCache.Shape> keys = TAGGED.get(tag);
+			if(keys != null){
+				keys.remove(key);
+				if(keys.isEmpty()){
+					TAGGED.remove(tag);
+				}
+			}
+		}
+	}
+
+
+	private static void evict()
+	{
+		Iterator<Map.Entry<SqlCache.Shape, Entry>> entries = ENTRIES.entrySet().iterator();
+		while(weight > maxWeight && entries.hasNext()){
+			Map.Entry<SqlCache.Shape, Entry> eldest = entries.next();
+			entries.remove();
+			untag(eldest.getKey(), eldest.getValue());
+			STATISTICS.eviction();
+		}
+	}
+
+
+
+	private static final class Entry {
+
+		private final Set<String> tags;
+
+		private final Object result;
+
+		private final long weight;
+
+		private final long expires;
+
+
+		Entry(Set<String> tags, Object result, long weight, long expires) {
+			this.tags = tags;
+			this.result = result;
+			this.weight = weight;
+			this.expires = expires;
+		}
+
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read only row of a query result, seen as a map where keys are column names.<br>
+ * A row only holds its values in an array, the column names and their positions are shared
+ * by all the rows of a same result, so it costs far less memory than a HashMap per row.
+ * When a name is used by several columns, the last one is kept, like a map filled column by column would do.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class Row extends AbstractMap<String, Object> {
+
+	private final Columns columns;
+
+	private final Object[] values;
+
+
+	Row(Columns columns, Object[] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+
+
+	/**
+	 * Read the current row of a ResultSet
+	 * @param resultSet the ResultSet positioned on the row to read
+	 * @param columns the columns of the ResultSet, see {@link Columns#of(ResultSet)}
+	 * @return the row
+	 * @throws SQLException if a column can't be read
+	 */
+	static Row read(ResultSet resultSet, Columns columns) throws SQLException
+	{
+		int[] positions = columns.positions;
+		Object[] values = new Object[positions.length];
+		for(int i = 0; i < positions.length; i++){
+			values[i] = resultSet.getObject(positions[i]);
+		}
+		return new Row(columns, values);
+	}
+
+
+	/**
+	 * @return the names of the columns, in the order of the query, the list can't be modified
+	 */
+	public List<String> getColumnNames()
+	{
+		return columns.getNames();
+	}
+
+
+	/**
+	 * @param index index of a column in {@link #getColumnNames()}, from 0
+	 * @return the value of the column
+	 */
+	public Object get(int index)
+	{
+		return values[index];
+	}
+
+
+	@Override
+	public Object get(Object key)
+	{
+		Integer index = columns.index.get(key);
+		return index == null ? null : values[index];
+	}
+
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return columns.index.containsKey(key);
+	}
+
+
+	@Override
+	public int size()
+	{
+		return values.length;
+	}
+
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<String, Object>>() {
+			@Override
+			public Iterator<Map.Entry<String, Object>> iterator() {
+				return new Iterator<Map.Entry<String, Object>>() {
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return next < values.length;
+					}
+
+					@Override
+					public Map.Entry<String, Object> next() {
+						if(next >= values.length){
+							throw new NoSuchElementException();
+						}
+						int i = next++;
+						return new SimpleImmutableEntry<String, Object>(columns.names[i], values[i]);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException("A row is read only");
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return values.length;
+			}
+		};
+	}
+
+
+
+	/**
+	 * The column names of a result, with their position in the ResultSet and their index in the values of a row.
+	 * It is computed once per ResultSet and shared by all its rows.
+	 */
+	static final class Columns {
+
+		private final String[] names;
+
+		private final int[] positions;
+
+		private final List<String> list;
+
+		private final Map<String, Integer> index;
+
+
+		private Columns(String[] names, int[] positions) {
+			this.names = names;
+			this.positions = positions;
+			this.list = Collections.unmodifiableList(Arrays.asList(names));
+			this.index = new HashMap<String, Integer>(names.length * 2);
+			for(int i = 0; i < names.length; i++){
+				index.put(names[i], i);
+			}
+		}
+
+
+		/**
+		 * @return the names of the columns, the list can't be modified
+		 */
+		List<String> getNames()
+		{
+			return list;
+		}
+
+
+		/**
+		 * @param resultSet a ResultSet
+		 * @return its columns, named with ResultSetMetaData#getColumnName
+		 * @throws SQLException if the metadata can't be read
+		 */
+		static Columns of(ResultSet resultSet) throws SQLException
+		{
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			int count = metaData.getColumnCount();
+			Map<String, Integer> last = new HashMap<String, Integer>(count * 2);
+			for(int i = 1; i <= count; i++){
+				last.put(metaData.getColumnName(i), i);
+			}
+
+			String[] names = new String[last.size()];
+			int[] positions = new int[names.length];
+			int n = 0;
+			for(int i = 1; i <= count; i++){
+				String name = metaData.getColumnName(i);
+				if(last.get(name) == i){
+					names[n] = name;
+					positions[n] = i;
+					n++;
+				}
+			}
+			return new Columns(names, positions);
+		}
+
+	}
+
+}
@@ -0,0 +1,23 @@
+/**
+ * 
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turn the current row of a java.sql.ResultSet into an object.
+ * 
+ * @param <E> the type of the mapped rows
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ */
+public interface RowMapper<E> {
+
+	/**
+	 * @param resultSet the ResultSet positioned on the row to map, the mapper must not move it
+	 * @return the mapped row
+	 * @throws SQLException if a column can't be read
+	 */
+	E map(ResultSet resultSet) throws SQLException;
+}
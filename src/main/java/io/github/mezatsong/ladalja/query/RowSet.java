@@ -0,0 +1,74 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The rows of a query result, loaded in memory, each row being a read only {@link Row}.<br>
+ * The column names are read once from the metadata of the ResultSet and shared by all rows,
+ * a row only holds an array of its values.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class RowSet extends AbstractList<Map<String, Object>> implements RandomAccess {
+
+	private final List<String> columnNames;
+
+	private final List<Row> rows;
+
+
+	private RowSet(List<String> columnNames, List<Row> rows) {
+		this.columnNames = columnNames;
+		this.rows = rows;
+	}
+
+
+	/**
+	 * Read all the remaining rows of a ResultSet, it is not closed
+	 * @param resultSet the ResultSet to read
+	 * @return the rows
+	 * @throws SQLException if a row can't be read
+	 */
+	static RowSet read(ResultSet resultSet) throws SQLException
+	{
+		Row.Columns columns = Row.Columns.of(resultSet);
+		List<Row> rows = new ArrayList<Row>();
+		while(resultSet.next()){
+			rows.add(Row.read(resultSet, columns));
+		}
+		return new RowSet(columns.getNames(), rows);
+	}
+
+
+	/**
+	 * @return the names of the columns, in the order of the query, the list can't be modified
+	 */
+	public List<String> getColumnNames()
+	{
+		return columnNames;
+	}
+
+
+	@Override
+	public Row get(int index)
+	{
+		return rows.get(index);
+	}
+
+
+	@Override
+	public int size()
+	{
+		return rows.size();
+	}
+
+}
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.query;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+/**
+ * The SQL rendered by {@link QueryBuilder}, keyed by the shape of the builder: the kind of statement
+ * and the pieces of query it is made of, but not the bound parameters.<br>
+ * It is shared by all builders and threads. When it is full, an arbitrary entry is evicted for each new one.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+final class SqlCache {
+
+	/**
+	 * Maximal number of cached queries
+	 */
+	static final int CAPACITY = 2048;
+
+	private final ConcurrentMap<Shape, String> queries = new ConcurrentHashMap<Shape, String>();
+
+	private final CacheStatistics statistics = new CacheStatistics();
+
+
+	/**
+	 * @return the SQL rendered for this shape, or null if it is not cached
+	 */
+	String get(Shape shape)
+	{
+		String query = queries.get(shape);
+		if(query == null){
+			statistics.miss();
+		}else{
+			statistics.hit();
+		}
+		return query;
+	}
+
+
+	/**
+	 * Cache the SQL rendered for a shape
+	 * @return the query
+	 */
+	String put(Shape shape, String query)
+	{
+		if(queries.size() >= CAPACITY){
+			Iterator<Shape> shapes = queries.keySet().iterator();
+			if(shapes.hasNext()){
+				shapes.next();
+				shapes.remove();
+				statistics.eviction();
+			}
+		}
+		queries.put(shape, query);
+		return query;
+	}
+
+
+	CacheStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+
+	void clear()
+	{
+		queries.clear();
+	}
+
+
+
+	/**
+	 * The pieces a query is rendered from, compared by value, arrays and nested shapes included
+	 */
+	static final class Shape {
+
+		private final Object[] parts;
+
+		private final int hash;
+
+
+		Shape(Object... parts) {
+			this.parts = parts;
+			this.hash = Arrays.deepHashCode(parts);
+		}
+
+
+		Object[] getParts()
+		{
+			return parts;
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+
+		@Override
+		public boolean equals(Object other)
+		{
+			return other instanceof Shape && hash == ((Shape) other).hash && Arrays.deepEquals(parts, ((Shape) other).parts);
+		}
+
+	}
+
+}
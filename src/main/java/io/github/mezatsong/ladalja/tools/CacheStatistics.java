@@ -0,0 +1,76 @@
+package io.github.mezatsong.ladalja.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe hit, miss and eviction counters of a cache.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class CacheStatistics {
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+
+	public void hit() {
+		hits.incrementAndGet();
+	}
+
+	public void miss() {
+		misses.incrementAndGet();
+	}
+
+	public void eviction() {
+		evictions.incrementAndGet();
+	}
+
+	/**
+	 * @return number of lookups which found a cached entry
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups which did not find a cached entry
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of entries removed to make room for new ones
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return hits divided by lookups, or 0 if there was no lookup
+	 */
+	public double getHitRatio() {
+		long hit = hits.get();
+		long total = hit + misses.get();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	/**
+	 * Set all counters to zero
+	 */
+	public void reset() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions();
+	}
+
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package io.github.mezatsong.ladalja.tools;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+/**
+ * Conversions of the values read from the database into the types of model fields.<br>
+ * They are shared by {@link io.github.mezatsong.ladalja.EntityMetadata} and the mappers generated by
+ * {@link io.github.mezatsong.ladalja.processor.MapperProcessor}, so both give the same result.
+ * Arguments must not be null.
+ *
+ * @author MEZATSONG TSAFACK Carrel, meztsacar@gmail.com
+ *
+ */
+public final class Converters {
+
+	private Converters() {}
+
+
+	public static Long asLong(Object value)
+	{
+		return value instanceof Long ? (Long) value : Long.valueOf(value.toString());
+	}
+
+
+	public static Integer asInteger(Object value)
+	{
+		return value instanceof Integer ? (Integer) value : Integer.valueOf(value.toString());
+	}
+
+
+	public static Double asDouble(Object value)
+	{
+		return value instanceof Double ? (Double) value : Double.valueOf(value.toString());
+	}
+
+
+	public static Float asFloat(Object value)
+	{
+		return value instanceof Float ? (Float) value : Float.valueOf(value.toString());
+	}
+
+
+	public static Short asShort(Object value)
+	{
+		return value instanceof Short ? (Short) value : Short.valueOf(value.toString());
+	}
+
+
+	public static BigInteger asBigInteger(Object value)
+	{
+		return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf(Long.valueOf(value.toString()));
+	}
+
+
+	public static BigDecimal asBigDecimal(Object value)
+	{
+		return value instanceof BigDecimal ? (BigDecimal) value : BigDecimal.valueOf(Double.valueOf(value.toString()));
+	}
+
+
+	public static String asString(Object value)
+	{
+		return value.toString();
+	}
+
+
+	public static Date asDate(Object value)
+	{
+		if (value instanceof Number) {
+			return new Date(Long.valueOf(value.toString()));
+		} else if (value instanceof Timestamp) {
+			return new Date(((Timestamp) value).getTime());
+		} else if (value instanceof Date) {
+			return (Date) value;
+		}
+		return Date.valueOf(value.toString());
+	}
+
+
+	public static Timestamp asTimestamp(Object value)
+	{
+		if (value instanceof Number) {
+			return new Timestamp(Long.valueOf(value.toString()));
+		} else if (value instanceof Date) {
+			return new Timestamp(((Date) value).getTime());
+		} else if (value instanceof Timestamp) {
+			return (Timestamp) value;
+		}
+		return Timestamp.valueOf(value.toString());
+	}
+
+}
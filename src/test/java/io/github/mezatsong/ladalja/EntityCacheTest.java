@@ -0,0 +1,166 @@
+package io.github.mezatsong.ladalja;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.mezatsong.ladalja.model.Country;
+import io.github.mezatsong.ladalja.model.Role;
+import io.github.mezatsong.ladalja.query.QueryBuilder;
+import io.github.mezatsong.ladalja.query.QueryListener;
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+public class EntityCacheTest {
+
+    private final List<String> queries = new ArrayList<String>();
+
+    private QueryListener listener;
+
+    private EntityCache cache;
+
+    @Before
+    public void setUp() {
+        UtilsForTest.connect();
+        DB.statement("create table if not exists countries (id integer primary key, name text)");
+        QueryBuilder<?> countries = DB.table("countries");
+        for (int i = 1; i <= 100; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("id", i);
+            row.put("name", "country" + i);
+            countries.insert(row);
+        }
+        listener = UtilsForTest.recordQueries(queries);
+        cache = EntityCache.of(Country.class);
+        cache.clear();
+        cache.getStatistics().reset();
+    }
+
+    @After
+    public void tearDown() {
+        DB.unregister(listener);
+        DB.statement("drop table if exists countries");
+        DB.closeConnection();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        assertNull(EntityCache.of(Role.class));
+        CacheStatistics statistics = cache.getStatistics();
+
+        Country country = ModelRepository.find(Country.class, 1);
+        assertEquals("country1", country.getName());
+        queries.clear();
+        Country cached = ModelRepository.find(Country.class, 1L);
+        assertEquals(0, queries.size());
+        assertNotSame(country, cached);
+        assertEquals("country1", cached.getName());
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+
+        assertNull(ModelRepository.find(Country.class, 1000));
+        queries.clear();
+        assertNull(ModelRepository.find(Country.class, 1000));
+        assertEquals(0, queries.size());
+        assertEquals(2, statistics.getHits());
+
+        Country neighbour = new Country();
+        neighbour.setId(2L);
+        queries.clear();
+        assertEquals("country2", neighbour.<Country>belongsTo(Country.class, "id").getName());
+        assertEquals("country2", neighbour.<Country>belongsTo(Country.class, "id").getName());
+        assertEquals(1, queries.size());
+    }
+
+    @Test
+    public void testInvalidation() {
+        ModelRepository.find(Country.class, 1);
+        ModelRepository.find(Country.class, 2);
+        rename(DB.table("countries").where("id", 1), "renamed1");
+        assertEquals(1, cache.size());
+        assertEquals("renamed1", ModelRepository.<Country>find(Country.class, 1).getName());
+
+        Country country = ModelRepository.find(Country.class, 2);
+        country.setName("renamed2");
+        country.save();
+        assertEquals("renamed2", ModelRepository.<Country>find(Country.class, 2).getName());
+        country.delete();
+        assertNull(ModelRepository.find(Country.class, 2));
+
+        assertNull(ModelRepository.find(Country.class, 1000));
+        Map<String, Object> row = name("country1000");
+        row.put("id", 1000);
+        QueryBuilder<?> countries = DB.table("countries");
+        countries.insert(row);
+        assertNotNull(ModelRepository.find(Country.class, 1000));
+
+        rename(DB.table("countries").where("id", ">", 500), "renamed");
+        assertEquals(0, cache.size());
+        assertEquals("renamed", ModelRepository.<Country>find(Country.class, 1000).getName());
+
+        ModelRepository.destroy(Country.class, 1000);
+        assertNull(ModelRepository.find(Country.class, 1000));
+    }
+
+    @Test
+    public void testEvictedAgainAfterTransaction() {
+        DB.transaction(new TransactionCallback<Void>() {
+            @Override
+            public Void run() {
+                rename(DB.table("countries").where("id", 1), "renamed1");
+                // another thread reading the committed row before the commit
+                cache.put(1, new Object[] {1L, "country1"}, cache.getStamp());
+                return null;
+            }
+        });
+        assertNull(cache.get(1));
+        assertEquals("renamed1", ModelRepository.<Country>find(Country.class, 1).getName());
+    }
+
+    @Test
+    public void testEviction() {
+        for (int i = 1; i <= 100; i++) {
+            ModelRepository.find(Country.class, i);
+        }
+        assertTrue(cache.size() <= 32);
+        assertTrue(cache.getStatistics().getEvictions() >= 68);
+
+        EntityCache expiring = new EntityCache("countries", "id", 10, 50);
+        expiring.put(1, new Object[] {1L, "country1"}, expiring.getStamp());
+        assertEquals("country1", expiring.get(1)[1]);
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+        }
+        assertNull(expiring.get(1));
+
+        long stamp = expiring.getStamp();
+        expiring.evict(2);
+        expiring.put(2, null, stamp);
+        assertNull(expiring.get(2));
+        expiring.put(2, null, expiring.getStamp());
+        assertSame(EntityCache.ABSENT, expiring.get(2));
+    }
+
+    private static Map<String, Object> name(String name) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("name", name);
+        return row;
+    }
+
+    private static void rename(QueryBuilder<?> query, String name) {
+        query.update(name(name));
+    }
+
+}
@@ -0,0 +1,80 @@
+package io.github.mezatsong.ladalja;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.mezatsong.ladalja.model.Game;
+import io.github.mezatsong.ladalja.model.Tag;
+import io.github.mezatsong.ladalja.model.User;
+import io.github.mezatsong.ladalja.query.QueryBuilderORM;
+
+public class EntityMetadataTest {
+
+    @Test
+    public void testMetadataIsComputedOnce() {
+        EntityMetadata metadata = EntityMetadata.of(User.class);
+        assertSame(metadata, EntityMetadata.of(User.class));
+        assertEquals("users", metadata.getTable());
+        assertEquals("ID", metadata.getPrimaryKey());
+        assertEquals("id", metadata.getPrimaryProperty().getName());
+    }
+
+    @Test
+    public void testColumnBindings() {
+        EntityMetadata metadata = EntityMetadata.of(Game.class);
+        assertEquals("games", metadata.getTable());
+        assertEquals(3, metadata.getColumns().size());
+        assertEquals("userId", metadata.findProperty("user_id").getName());
+        assertEquals("user_id", metadata.findProperty("userId").getColumn());
+        assertNull(metadata.findProperty("unknown"));
+
+        Game game = new Game();
+        metadata.getProperty("userId").set(game, Integer.valueOf(7));
+        assertEquals(Long.valueOf(7), game.getUserId());
+        assertEquals(Long.valueOf(7), metadata.getProperty("userId").get(game));
+    }
+
+    @Test
+    public void testGeneratedMapperIsPickedUp() {
+        EntityMapper<User> mapper = EntityMetadata.of(User.class).getMapper();
+        assertNotNull(mapper);
+        assertArrayEquals(new String[] {"ID", "name"}, mapper.getColumns());
+
+        User user = new User();
+        user.setId(3L);
+        user.setName("Mapped");
+        assertArrayEquals(new Object[] {3L, "Mapped"}, mapper.values(user));
+    }
+
+    @Test
+    public void testReflectionMappingSkipsMissingColumns() {
+        UtilsForTest.connect();
+        DB.statement("create table if not exists tags (id integer primary key, label text, weight real)");
+        try {
+            assertNull(EntityMetadata.of(Tag.class).getMapper());
+            DB.insert("insert into tags (label, weight) values (?, ?)", "first", 1.5);
+            DB.insert("insert into tags (label, weight) values (?, ?)", "second", 2.5);
+
+            List<Tag<?>> tags = ModelRepository.orderBy("id").get(Tag.class);
+            assertEquals(2, tags.size());
+            assertEquals("second", tags.get(1).getName());
+            assertEquals(Double.valueOf(2.5), tags.get(1).getWeight());
+
+            tags = new QueryBuilderORM().select("id", "label").get(Tag.class);
+            assertEquals(2, tags.size());
+            assertNotNull(tags.get(0).getId());
+            assertNull(tags.get(0).getWeight());
+        } finally {
+            DB.statement("drop table if exists tags");
+            DB.closeConnection();
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.After;
@@ -18,32 +19,35 @@ import io.github.mezatsong.ladalja.model.User;
 import io.github.mezatsong.ladalja.query.QueryListener;
 
 public class ModelRepositoryTest {
-    
-    @Before
-    public void setUp() {
-        UtilsForTest.connect();
-        DB.register(new QueryListener() {
 
-            @Override
-            public void listenQuery(String query) {
-                System.out.println("|== SQL ==> " + query);
-            }
+    private final QueryListener printer = new QueryListener() {
 
-            @Override
-            public void listenResultSet(String query, ResultSet result) {
-                
-            }
+        @Override
+        public void listenQuery(String query) {
+            System.out.println("|== SQL ==> " + query);
+        }
 
-            @Override
-            public void listenUpdatedRows(String query, int rows) {
-                System.out.println("#== SQL ==> " + query + " |== ROW ==> " + rows);
-            }
+        @Override
+        public void listenResultSet(String query, ResultSet result) {
             
-        });
+        }
+
+        @Override
+        public void listenUpdatedRows(String query, int rows) {
+            System.out.println("#== SQL ==> " + query + " |== ROW ==> " + rows);
+        }
+        
+    };
+    
+    @Before
+    public void setUp() {
+        UtilsForTest.connect();
+        DB.register(printer);
     }
 
     @After
     public void tearDown() {
+        DB.unregister(printer);
         DB.closeConnection();
     }
 
@@ -100,6 +104,94 @@ public class ModelRepositoryTest {
         assertTrue(ModelRepository.min(User.class, "id") <= ModelRepository.max(User.class, "id"));
     }
 
+    @Test
+    public void testCreateInOneQuery() {
+        final List<String> queries = new ArrayList<String>();
+        QueryListener listener = UtilsForTest.recordQueries(queries);
+        Role role = new Role();
+        role.setName("CreatedRole");
+        queries.clear();
+        role = ModelRepository.create(role);
+        int created = queries.size();
+        DB.unregister(listener);
+        try {
+            assertEquals(1, created);
+            assertNotNull(role.getId());
+            Role stored = ModelRepository.find(Role.class, role.getId());
+            assertEquals("CreatedRole", stored.getName());
+        } finally {
+            if (role.getId() != null) {
+                ModelRepository.destroy(Role.class, role.getId());
+            }
+        }
+    }
+
+    @Test
+    public void testDirtyTracking() {
+        final List<String> queries = new ArrayList<String>();
+        QueryListener listener = UtilsForTest.recordQueries(queries);
+        Role role = new Role();
+        role.setName("CleanRole");
+        role.save();
+        try {
+            Role loaded = ModelRepository.find(Role.class, role.getId());
+            assertFalse(loaded.isDirty());
+            queries.clear();
+            loaded.save();
+            assertTrue(queries.isEmpty());
+
+            loaded.setName("DirtyRole");
+            assertTrue(loaded.isDirty());
+            assertEquals(1, loaded.getDirty().size());
+            assertEquals("DirtyRole", loaded.getDirty().get("name"));
+            loaded.save();
+            assertEquals(1, queries.size());
+            assertTrue(queries.get(0).startsWith("update"));
+            assertTrue(queries.get(0).contains("set `name` = ? where"));
+            assertFalse(loaded.isDirty());
+            Role stored = ModelRepository.find(Role.class, role.getId());
+            assertEquals("DirtyRole", stored.getName());
+        } finally {
+            DB.unregister(listener);
+            role.delete();
+        }
+    }
+
+    @Test
+    public void testSaveAllAndCreateMany() {
+        List<Role> roles = new ArrayList<Role>();
+        for (int i = 0; i < 3; i++) {
+            Role role = new Role();
+            role.setName("BatchRole" + i);
+            roles.add(role);
+        }
+        try {
+            ModelRepository.createMany(roles);
+            for (Role role : roles) {
+                assertNotNull(role.getId());
+                Role stored = ModelRepository.find(Role.class, role.getId());
+                assertEquals(role.getName(), stored.getName());
+            }
+
+            roles.get(0).setName("BatchRoleRenamed");
+            Role fresh = new Role();
+            fresh.setName("BatchRole3");
+            roles.add(fresh);
+            ModelRepository.saveAll(roles);
+
+            assertNotNull(fresh.getId());
+            Role renamed = ModelRepository.find(Role.class, roles.get(0).getId());
+            assertEquals("BatchRoleRenamed", renamed.getName());
+            assertEquals(1, ModelRepository.where("name", "BatchRole1").get(Role.class).size());
+        } finally {
+            for (Role role : roles) {
+                if (role.getId() != null) {
+                    ModelRepository.destroy(Role.class, role.getId());
+                }
+            }
+        }
+    }
+
     @Test 
     public void testDelete() {
         List<User> users = User.all(User.class);
@@ -0,0 +1,527 @@
+package io.github.mezatsong.ladalja;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.mezatsong.ladalja.query.ColumnSet;
+import io.github.mezatsong.ladalja.query.Cursor;
+import io.github.mezatsong.ladalja.query.QueryBuilder;
+import io.github.mezatsong.ladalja.query.ResultCache;
+import io.github.mezatsong.ladalja.query.Row;
+import io.github.mezatsong.ladalja.query.RowSet;
+import io.github.mezatsong.ladalja.tools.CacheStatistics;
+
+public class QueryBuilderTest {
+
+    @Before
+    public void setUp() {
+        UtilsForTest.connect();
+        DB.statement("create table if not exists query_builder_tests (id integer primary key, name text, price real)");
+    }
+
+    @After
+    public void tearDown() {
+        DB.statement("drop table if exists query_builder_tests");
+        DB.closeConnection();
+    }
+
+    private static QueryBuilder<?> table() {
+        return DB.table("query_builder_tests");
+    }
+
+    private static void update(QueryBuilder<?> query, Map<String, Object> values) {
+        query.update(values);
+    }
+
+    private static Map<String, Object> row(String name, Double price) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("name", name);
+        if (price != null) {
+            row.put("price", price);
+        }
+        return row;
+    }
+
+    @Test
+    public void testBatch() {
+        List<Object[]> params = new ArrayList<Object[]>();
+        for (int i = 0; i < 10; i++) {
+            params.add(new Object[] {"item" + i, (double) i});
+        }
+        int[] counts = DB.batch("insert into query_builder_tests (name, price) values (?, ?)", params);
+        assertEquals(10, counts.length);
+        assertEquals(10, DB.table("query_builder_tests").count());
+
+        counts = DB.batch("update query_builder_tests set price = price + 1 where name = ?", 
+            Arrays.asList(new Object[] {"item1"}, new Object[] {"none"}));
+        assertArrayEquals(new int[] {1, 0}, counts);
+    }
+
+    @Test
+    public void testBatchRollBackOnError() {
+        List<Object[]> params = new ArrayList<Object[]>();
+        params.add(new Object[] {1, "first"});
+        params.add(new Object[] {1, "duplicate"});
+        try {
+            DB.batch("insert into query_builder_tests (id, name) values (?, ?)", params);
+            fail("Duplicate primary key must fail");
+        } catch (LadaljaException e) {}
+        assertEquals(0, DB.table("query_builder_tests").count());
+    }
+
+    @Test
+    public void testInsertMany() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 1200; i++) {
+            rows.add(row("item" + i, i % 2 == 0 ? (double) i : null));
+        }
+        assertEquals(1200, table().insertMany(rows, 500));
+        assertEquals(1200, DB.table("query_builder_tests").count());
+        assertEquals(600, DB.table("query_builder_tests").whereNull("price").count());
+        assertEquals(0, table().insertMany(new ArrayList<Map<String, Object>>()));
+    }
+
+    @Test
+    public void testCursor() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(row("item" + i, (double) i));
+        }
+        table().insertMany(rows);
+
+        double total = 0;
+        int count = 0;
+        QueryBuilder<?> ordered = DB.table("query_builder_tests").orderBy("id");
+        Cursor<Map<String, Object>> cursor = ordered.cursor(10);
+        for (Map<String, Object> row : cursor) {
+            total += ((Number) row.get("price")).doubleValue();
+            count++;
+        }
+        assertEquals(50, count);
+        assertEquals(1225.0, total, 0.0);
+        assertFalse(cursor.hasNext());
+
+        try (Cursor<Map<String, Object>> partial = table().cursor()) {
+            assertTrue(partial.hasNext());
+            assertEquals("item0", partial.next().get("name"));
+        }
+        DB.statement("delete from query_builder_tests");
+        assertEquals(0, DB.table("query_builder_tests").count());
+    }
+
+    @Test
+    public void testChunk() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 25; i++) {
+            rows.add(row("item" + i, (double) i));
+        }
+        table().insertMany(rows);
+
+        final List<Integer> sizes = new ArrayList<Integer>();
+        QueryBuilder<?> ordered = DB.table("query_builder_tests").orderBy("id");
+        boolean completed = ordered.chunk(10, new ChunkCallback<Map<String, Object>>() {
+            @Override
+            public boolean handle(List<Map<String, Object>> chunk) {
+                sizes.add(chunk.size());
+                return true;
+            }
+        });
+        assertTrue(completed);
+        assertEquals(Arrays.asList(10, 10, 5), sizes);
+
+        sizes.clear();
+        QueryBuilder<?> filtered = DB.table("query_builder_tests").where("price", ">=", 5.0).orWhere("name", "item0");
+        completed = filtered.chunkById(4, new ChunkCallback<Map<String, Object>>() {
+            @Override
+            public boolean handle(List<Map<String, Object>> chunk) {
+                sizes.add(chunk.size());
+                // rows updated by the callback must be neither skipped nor read twice
+                for (Map<String, Object> row : chunk) {
+                    DB.update("update query_builder_tests set price = price + 100 where id = ?", row.get("id"));
+                }
+                return sizes.size() < 5;
+            }
+        });
+        assertFalse(completed);
+        assertEquals(Arrays.asList(4, 4, 4, 4, 4), sizes);
+        assertEquals(20, DB.table("query_builder_tests").where("price", ">=", 100.0).count());
+    }
+
+    @Test
+    public void testGetRows() {
+        table().insertMany(Arrays.asList(row("first", 1.5), row("second", null)));
+
+        RowSet rows = DB.table("query_builder_tests").orderBy("id").getRows();
+        assertEquals(Arrays.asList("id", "name", "price"), rows.getColumnNames());
+        assertEquals(2, rows.size());
+        Row first = rows.get(0);
+        assertEquals("first", first.get("name"));
+        assertEquals("first", first.get(1));
+        assertEquals(1.5, first.get("price"));
+        assertTrue(rows.get(1).containsKey("price"));
+        assertNull(rows.get(1).get("price"));
+        assertNull(first.get("missing"));
+
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("id", first.get("id"));
+        expected.put("name", "first");
+        expected.put("price", 1.5);
+        assertEquals(expected, first);
+        assertEquals(expected, DB.table("query_builder_tests").orderBy("id").firstMap());
+        assertEquals(rows, DB.table("query_builder_tests").orderBy("id").getMap());
+        assertTrue(DB.table("query_builder_tests").where("name", "none").firstMap().isEmpty());
+
+        try {
+            first.put("name", "changed");
+            fail("A row is read only");
+        } catch (UnsupportedOperationException e) {}
+    }
+
+    @Test
+    public void testPluckPrimitives() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 40; i++) {
+            rows.add(row("item" + i, i % 10 == 0 ? null : i * 0.5));
+        }
+        table().insertMany(rows);
+
+        long[] ids = DB.table("query_builder_tests").orderBy("id").pluckLongs("id");
+        assertEquals(40, ids.length);
+        assertEquals(40, DB.table("query_builder_tests").orderBy("id").pluckInts("id").length);
+        assertEquals(ids[39], DB.table("query_builder_tests").orderBy("id").pluckInts("id")[39]);
+        assertEquals(36, DB.table("query_builder_tests").pluckDoubles("price").length);
+        assertEquals(0.5, DB.table("query_builder_tests").orderBy("id").pluckDoubles("price")[0], 0.0);
+
+        String[] names = DB.table("query_builder_tests").orderBy("id").pluckStrings("name");
+        assertEquals("item0", names[0]);
+        assertNull(DB.table("query_builder_tests").orderBy("id").pluckStrings("price")[0]);
+
+        assertEquals(3, DB.table("query_builder_tests").whereIn("id", new long[] {ids[0], ids[1], ids[2]}).count());
+        assertEquals(0, DB.table("query_builder_tests").whereIn("id", new long[0]).count());
+    }
+
+    @Test
+    public void testGetColumns() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 100; i++) {
+            rows.add(row(i % 2 == 0 ? "even" : "odd", i % 10 == 9 ? null : (double) i));
+        }
+        table().insertMany(rows);
+
+        ColumnSet columns = DB.table("query_builder_tests").orderBy("id").getColumns();
+        assertEquals(100, columns.size());
+        assertEquals(Arrays.asList("id", "name", "price"), columns.getColumnNames());
+        assertEquals(ColumnSet.Type.LONG, columns.getColumn("id").getType());
+        assertEquals(ColumnSet.Type.STRING, columns.getColumn("name").getType());
+
+        final ColumnSet.Column price = columns.getColumn("price");
+        assertEquals(ColumnSet.Type.DOUBLE, price.getType());
+        assertEquals(100, price.doubles().length);
+        assertEquals(10, price.getNulls().cardinality());
+        int firstNull = price.getNulls().nextSetBit(0);
+        assertTrue(price.isNull(firstNull));
+        assertNull(price.get(firstNull));
+        assertFalse(price.isNull(0));
+        assertEquals(4950.0 - 540.0, price.sum(), 0.0);
+        assertEquals(0.0, price.min(), 0.0);
+        assertEquals(98.0, price.max(), 0.0);
+
+        BitSet even = columns.getColumn("name").equalTo("even");
+        assertEquals(50, even.cardinality());
+        assertEquals(2450.0, price.sum(even), 0.0);
+        assertEquals(10, price.between(10, 20).cardinality());
+        assertEquals(4, columns.filter(new ColumnSet.Filter() {
+            @Override
+            public boolean accept(int row) {
+                return price.doubles()[row] >= 95;
+            }
+        }).cardinality());
+        assertNull(price.max(new BitSet()));
+
+        assertEquals(0, DB.table("query_builder_tests").where("id", "<", 0).getColumns().size());
+    }
+
+    @Test
+    public void testSqlCache() {
+        table().insertMany(Arrays.asList(row("a", 1.0), row("b", 2.0), row("c", 3.0)));
+
+        QueryBuilder.clearSqlCache();
+        CacheStatistics statistics = QueryBuilder.getSqlCacheStatistics();
+        long hits = statistics.getHits();
+        long misses = statistics.getMisses();
+        assertEquals("a", DB.table("query_builder_tests").where("name", "a").firstMap().get("name"));
+        assertEquals("b", DB.table("query_builder_tests").where("name", "b").firstMap().get("name"));
+        assertEquals(misses + 1, statistics.getMisses());
+        assertEquals(hits + 1, statistics.getHits());
+
+        // same pieces but another statement or another shape must not share the SQL
+        assertEquals(1, DB.table("query_builder_tests").where("name", "c").count());
+        assertEquals(2, DB.table("query_builder_tests").where("price", ">", 1.0).count());
+        assertEquals(Arrays.asList("b"), DB.table("query_builder_tests").where("price", 2.0).pluckList("name"));
+        assertEquals(misses + 4, statistics.getMisses());
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("price", 10.0);
+        update(DB.table("query_builder_tests").where("name", "a"), values);
+        update(DB.table("query_builder_tests").where("name", "b"), values);
+        DB.table("query_builder_tests").where("name", "b").increment("price", 5);
+        assertEquals(1, DB.table("query_builder_tests").where("price", 10.0).count());
+        assertEquals(1, DB.table("query_builder_tests").where("price", 15.0).count());
+        assertEquals(hits + 3, statistics.getHits());
+    }
+
+    @Test
+    public void testClauses() {
+        table().insertMany(Arrays.asList(
+            row("a", 1.0), row("a", 2.0), row("b", 3.0), row("c", 4.0), row("c", null)));
+        DB.statement("create table if not exists query_builder_labels (name text, label text)");
+        try {
+            DB.statement("insert into query_builder_labels (name, label) values ('a', 'first'), ('b', 'second')");
+
+            assertArrayEquals(new String[] {"a", "a", "b"}, DB.table("query_builder_tests")
+                .join("query_builder_labels", "query_builder_tests.name", "=", "query_builder_labels.name")
+                .orderBy("query_builder_tests.name").orderBy("price", "asc")
+                .pluckStrings("query_builder_tests.name"));
+            assertEquals(2, DB.table("query_builder_tests")
+                .leftJoin("query_builder_labels", "query_builder_tests.name", "=", "query_builder_labels.name")
+                .whereNull("query_builder_labels.label").count());
+
+            assertEquals(Arrays.asList((Object) "c", "a"), DB.table("query_builder_tests").select("name")
+                .groupBy("name").havingRaw("having count(*) > 1").orderByDesc("name").pluckList("name"));
+            assertEquals(3, DB.table("query_builder_tests").select("name").distinct().getMap().size());
+
+            assertEquals(3, DB.table("query_builder_tests").whereBetween("price", 1, 3).count());
+            assertEquals(1, DB.table("query_builder_tests").whereNotBetween("price", 1, 3).count());
+            assertEquals(3, DB.table("query_builder_tests").whereIn("name", new Object[] {"a", "c"}).whereNotNull("price").count());
+            assertEquals(1, DB.table("query_builder_tests").whereNotIn("name", new Object[] {"a", "c"}).count());
+            assertEquals(0, DB.table("query_builder_tests").whereIn("name", new Object[0]).count());
+            assertEquals(3, DB.table("query_builder_tests").where("name", "a").orWhere("price", ">=", 4.0).whereNotNull("price").count());
+            assertEquals(5, DB.table("query_builder_tests").whereColumn("name", "name").count());
+            assertEquals(2, DB.table("query_builder_tests").orderBy("id").skip(1).take(2).getMap().size());
+            assertEquals(10.0, DB.table("query_builder_tests").sum("price"), 0.0);
+
+            assertEquals(5, DB.table("query_builder_tests").inRandomOrder().getMap().size());
+            assertEquals(5, DB.table("query_builder_tests").lockForUpdate().count());
+
+            DB.table("query_builder_tests").where("name", "b").increment("price", 2);
+            DB.table("query_builder_tests").where("name", "b").decrement("price");
+            assertEquals(4.0, DB.table("query_builder_tests").where("name", "b").value("price"));
+
+            DB.table("query_builder_labels").truncate();
+            assertEquals(0, DB.table("query_builder_labels").count());
+        } finally {
+            DB.statement("drop table if exists query_builder_labels");
+        }
+    }
+
+    @Test
+    public void testBoundValues() {
+        table().insertMany(Arrays.asList(row("a", 1.0), row("b", 2.0), row("c", 3.0), row("d", 4.0)));
+
+        QueryBuilder.clearSqlCache();
+        CacheStatistics statistics = QueryBuilder.getSqlCacheStatistics();
+        long misses = statistics.getMisses();
+        assertEquals(2, DB.table("query_builder_tests").whereBetween("price", 1, 2).count());
+        assertEquals(3, DB.table("query_builder_tests").whereBetween("price", 2, 4).count());
+        assertEquals(1, DB.table("query_builder_tests").whereNotBetween("price", 1, 3).count());
+        assertEquals(2, DB.table("query_builder_tests").whereNotBetween("price", 2, 3).count());
+        assertEquals(2, DB.table("query_builder_tests").whereIn("name", new Object[] {"a", "b"}).count());
+        assertEquals(1, DB.table("query_builder_tests").whereIn("name", new Object[] {"c", "x"}).count());
+        assertEquals(2, DB.table("query_builder_tests").whereNotIn("name", new Object[] {"a", "b"}).count());
+        assertEquals(4, DB.table("query_builder_tests").whereNotIn("name", new Object[0]).count());
+        DB.table("query_builder_tests").where("name", "a").increment("price", 10);
+        DB.table("query_builder_tests").where("name", "b").increment("price", 20);
+        DB.table("query_builder_tests").where("name", "c").decrement("price", 3);
+        assertEquals(misses + 7, statistics.getMisses());
+
+        assertEquals(11.0, DB.table("query_builder_tests").where("name", "a").value("price"));
+        assertEquals(22.0, DB.table("query_builder_tests").where("name", "b").value("price"));
+        assertEquals(0.0, DB.table("query_builder_tests").where("name", "c").value("price"));
+    }
+
+    @Test
+    public void testLargeWhereIn() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 1; i <= 20; i++) {
+            rows.add(row("item" + i, (double) i));
+        }
+        table().insertMany(rows);
+
+        QueryBuilder.clearSqlCache();
+        CacheStatistics statistics = QueryBuilder.getSqlCacheStatistics();
+        long misses = statistics.getMisses();
+        assertEquals(3, DB.table("query_builder_tests").whereIn("price", new long[] {1, 2, 3}).count());
+        assertEquals(4, DB.table("query_builder_tests").whereIn("price", new long[] {1, 2, 3, 4}).count());
+        assertEquals(misses + 1, statistics.getMisses());
+
+        int maxInSize = DB.getMaxInSize();
+        DB.setMaxInSize(4);
+        try {
+            long[] prices = {1, 3, 5, 7, 9, 11, 13, 15, 17, 19, 3, 42};
+            assertEquals(10, DB.table("query_builder_tests").whereIn("price", prices).getMap().size());
+            assertEquals(10, DB.table("query_builder_tests").whereIn("price", prices).pluckLongs("price").length);
+            assertEquals(8, DB.table("query_builder_tests").whereIn("price", prices).where("price", ">", 3.0).count());
+            assertEquals(100.0, DB.table("query_builder_tests").whereIn("price", prices).sum("price"), 0.0);
+            assertEquals(19.0, DB.table("query_builder_tests").whereIn("price", prices).max("price"), 0.0);
+            assertEquals(1.0, DB.table("query_builder_tests").whereIn("price", prices).min("price"), 0.0);
+            assertEquals(10.0, DB.table("query_builder_tests").whereIn("price", prices).avg("price"), 0.0);
+            assertEquals("item1", DB.table("query_builder_tests").whereIn("price", prices).firstMap().get("name"));
+            assertEquals(10, DB.table("query_builder_tests").whereNotIn("price", new Object[] {1, 3, 5, 7, 9, 11, 13, 15, 17, 19}).count());
+
+            QueryBuilder<?> byPrice = DB.table("query_builder_tests").whereIn("price", prices).orderBy("price", "desc");
+            List<Map<String, Object>> ordered = byPrice.getMap();
+            assertEquals(10, ordered.size());
+            assertEquals("item19", ordered.get(0).get("name"));
+            assertEquals(2, DB.table("query_builder_tests").whereIn("price", prices).limit(2).getMap().size());
+            assertEquals(11, DB.table("query_builder_tests").whereIn("price", prices).orWhere("price", 2.0).count());
+            assertEquals(10, DB.table("query_builder_tests").whereIn("price", prices).distinct().pluckLongs("price").length);
+
+            Object[] tooMany = new Object[1000];
+            for (int i = 0; i < tooMany.length; i++) {
+                tooMany[i] = i;
+            }
+            try {
+                DB.table("query_builder_tests").whereIn("price", tooMany).orderBy("price").getMap();
+                fail("A whereIn list over the parameter limit can't be bound in one statement");
+            } catch (LadaljaException e) {
+            }
+
+            DB.table("query_builder_tests").whereIn("price", prices).increment("price", 100);
+            assertEquals(10, DB.table("query_builder_tests").where("price", ">", 100.0).count());
+            DB.table("query_builder_tests").whereIn("name", new Object[] {"item1", "item2", "item3", "item4", "item5", "item6"}).delete();
+            assertEquals(14, DB.table("query_builder_tests").count());
+        } finally {
+            DB.setMaxInSize(maxInSize);
+        }
+    }
+
+    @Test
+    public void testUpsert() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 1; i <= 3; i++) {
+            Map<String, Object> row = row("item" + i, (double) i);
+            row.put("id", i);
+            rows.add(row);
+        }
+        List<String> uniqueBy = Arrays.asList("id");
+        assertEquals(3, table().upsert(rows, uniqueBy, null));
+
+        rows.get(0).put("name", "renamed1");
+        rows.get(0).put("price", 10.0);
+        rows.get(1).put("name", "renamed2");
+        Map<String, Object> fresh = row("item4", 4.0);
+        fresh.put("id", 4);
+        rows.add(fresh);
+        table().upsert(rows, uniqueBy, Arrays.asList("name"));
+        assertEquals(4, DB.table("query_builder_tests").count());
+        assertEquals("renamed1", DB.table("query_builder_tests").where("id", 1).firstMap().get("name"));
+        assertEquals(1.0, DB.table("query_builder_tests").where("id", 1).max("price"), 0.0);
+        assertEquals("renamed2", DB.table("query_builder_tests").where("id", 2).firstMap().get("name"));
+
+        try {
+            table().upsert(Arrays.asList(row("item5", 5.0)), uniqueBy, null);
+            fail("Rows without the unique columns can't be upserted");
+        } catch (LadaljaException e) {
+        }
+    }
+
+    @Test
+    public void testRememberResults() {
+        for (int i = 1; i <= 3; i++) {
+            table().insert(row("item" + i, (double) i));
+        }
+        ResultCache.clear();
+        CacheStatistics statistics = ResultCache.getStatistics();
+        statistics.reset();
+
+        assertEquals(3, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).count());
+        assertEquals(3, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).count());
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, DB.table("query_builder_tests").where("price", ">", 1).remember(1, TimeUnit.MINUTES).count());
+        assertEquals(1, statistics.getHits());
+
+        QueryBuilder<?> remembered = DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES);
+        List<Object> names = remembered.pluckList("name");
+        names.clear();
+        assertEquals(3, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).pluckList("name").size());
+        assertEquals(2, statistics.getHits());
+
+        assertEquals(3, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).pluckList("id").size());
+        assertArrayEquals(new long[] {1, 2, 3}, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).pluckLongs("id"));
+        assertArrayEquals(new String[] {"1", "2", "3"}, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).pluckStrings("id"));
+        assertEquals(2, statistics.getHits());
+
+        assertEquals(3, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).getColumns().size());
+        assertEquals(6.0, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).getColumns().getColumn("price").sum(), 0.0);
+        assertEquals(3, statistics.getHits());
+
+        DB.insert("insert into query_builder_tests (name, price) values (?, ?)", "item4", 4.0);
+        assertEquals(0, ResultCache.size());
+        assertEquals(4, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).count());
+        assertEquals(10.0, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).sum("price"), 0.0);
+        DB.table("query_builder_tests").where("name", "item4").delete();
+        assertEquals(6.0, DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).sum("price"), 0.0);
+
+        DB.statement("create table if not exists query_builder_joins (id integer primary key, label text)");
+        try {
+            DB.insert("insert into query_builder_joins (id, label) values (1, 'first')");
+            QueryBuilder<?> joined = DB.table("query_builder_tests")
+                .join("query_builder_joins", "query_builder_tests.id", "=", "query_builder_joins.id")
+                .remember(1, TimeUnit.MINUTES);
+            assertEquals(1, joined.getMap().size());
+            DB.update("update query_builder_joins set id = 2 where id = 1");
+            assertEquals("item2", joined.getMap().get(0).get("name"));
+
+            DB.transaction(new TransactionCallback<Void>() {
+                @Override
+                public Void run() {
+                    int size = ResultCache.size();
+                    DB.table("query_builder_joins").remember(1, TimeUnit.MINUTES).getMap();
+                    assertEquals(size, ResultCache.size());
+                    return null;
+                }
+            });
+        } finally {
+            DB.statement("drop table if exists query_builder_joins");
+        }
+
+        DB.statement("create table if not exists query_builder_logs (id integer primary key, message text)");
+        try {
+            DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).count();
+            long hits = statistics.getHits();
+            DB.insert("insert into query_builder_logs (message) values (?)", "unrelated");
+            DB.table("query_builder_tests").remember(1, TimeUnit.MINUTES).count();
+            assertEquals(hits + 1, statistics.getHits());
+        } finally {
+            DB.statement("drop table if exists query_builder_logs");
+        }
+
+        ResultCache.setMaxWeight(4096);
+        try {
+            for (int i = 0; i < 50; i++) {
+                DB.table("query_builder_tests").where("id", i).remember(1, TimeUnit.MINUTES).firstMap();
+            }
+            assertTrue(ResultCache.getWeight() <= 4096);
+            assertTrue(statistics.getEvictions() > 0);
+        } finally {
+            ResultCache.setMaxWeight(ResultCache.DEFAULT_MAX_WEIGHT);
+        }
+    }
+
+}
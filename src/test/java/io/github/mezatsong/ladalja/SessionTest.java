@@ -0,0 +1,119 @@
+package io.github.mezatsong.ladalja;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.mezatsong.ladalja.model.Role;
+import io.github.mezatsong.ladalja.query.QueryListener;
+
+public class SessionTest {
+
+    private final List<String> queries = new ArrayList<String>();
+
+    private QueryListener listener;
+
+    private Role role;
+
+    @Before
+    public void setUp() {
+        UtilsForTest.connect();
+        listener = UtilsForTest.recordQueries(queries);
+        role = new Role();
+        role.setName("SessionRole");
+        role.save();
+    }
+
+    @After
+    public void tearDown() {
+        DB.unregister(listener);
+        DB.table("roles").where("name", "like", "Session%").delete();
+        DB.closeConnection();
+    }
+
+    @Test
+    public void testIdentityMap() {
+        Session.run(new TransactionCallback<Void>() {
+            @Override
+            public Void run() {
+                Role loaded = ModelRepository.find(Role.class, role.getId());
+                queries.clear();
+                assertSame(loaded, ModelRepository.find(Role.class, role.getId()));
+                assertEquals(0, queries.size());
+                assertSame(loaded, ModelRepository.where("name", "SessionRole").first(Role.class));
+                assertSame(loaded, ModelRepository.where("name", "SessionRole").get(Role.class).get(0));
+
+                Session.current().clear();
+                assertEquals(loaded.getId(), ModelRepository.<Role>find(Role.class, role.getId()).getId());
+                return null;
+            }
+        });
+        assertNull(Session.current());
+    }
+
+    @Test
+    public void testQueuedWrites() {
+        final Role created = new Role();
+        created.setName("SessionCreated");
+        final Role deleted = new Role();
+        deleted.setName("SessionDeleted");
+        deleted.save();
+
+        Session.run(new TransactionCallback<Void>() {
+            @Override
+            public Void run() {
+                Role loaded = ModelRepository.find(Role.class, role.getId());
+                loaded.setName("SessionRenamed");
+                loaded.save();
+                created.save();
+                ModelRepository.<Role>find(Role.class, deleted.getId()).delete();
+                queries.clear();
+                Session.run(new TransactionCallback<Void>() {
+                    @Override
+                    public Void run() {
+                        return null;
+                    }
+                });
+                assertEquals(0, queries.size());
+                assertNull(created.getId());
+                assertEquals(1, DB.table("roles").where("name", "SessionRole").count());
+                return null;
+            }
+        });
+
+        assertNotNull(created.getId());
+        assertEquals("SessionRenamed", ModelRepository.<Role>find(Role.class, role.getId()).getName());
+        assertEquals("SessionCreated", ModelRepository.<Role>find(Role.class, created.getId()).getName());
+        assertNull(ModelRepository.find(Role.class, deleted.getId()));
+    }
+
+    @Test
+    public void testWritesDroppedOnException() {
+        try {
+            Session.run(new TransactionCallback<Void>() {
+                @Override
+                public Void run() throws Exception {
+                    Role loaded = ModelRepository.find(Role.class, role.getId());
+                    loaded.setName("SessionLost");
+                    loaded.save();
+                    throw new Exception("failure");
+                }
+            });
+            fail("The exception must be thrown");
+        } catch (LadaljaException e) {
+            assertEquals("failure", e.getCause().getMessage());
+        }
+        assertNull(Session.current());
+        assertEquals("SessionRole", ModelRepository.<Role>find(Role.class, role.getId()).getName());
+    }
+
+}
@@ -0,0 +1,109 @@
+package io.github.mezatsong.ladalja;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.mezatsong.ladalja.query.QueryBuilder;
+
+public class TransactionTest {
+
+    @Before
+    public void setUp() {
+        UtilsForTest.connect();
+        DB.statement("create table if not exists transaction_tests (id integer primary key, name text)");
+    }
+
+    @After
+    public void tearDown() {
+        DB.statement("drop table if exists transaction_tests");
+        DB.closeConnection();
+    }
+
+    private static void insert(String name) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("name", name);
+        QueryBuilder<?> table = DB.table("transaction_tests");
+        table.insert(row);
+    }
+
+    @Test
+    public void testCommit() {
+        int count = DB.transaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer run() {
+                assertTrue(DB.inTransaction());
+                insert("first");
+                insert("second");
+                return (int) DB.table("transaction_tests").count();
+            }
+        });
+        assertEquals(2, count);
+        assertFalse(DB.inTransaction());
+        assertEquals(2, DB.table("transaction_tests").count());
+    }
+
+    @Test
+    public void testRollBackOnException() {
+        try {
+            DB.transaction(new TransactionCallback<Void>() {
+                @Override
+                public Void run() throws Exception {
+                    insert("lost");
+                    throw new Exception("failure");
+                }
+            });
+            fail("The exception of the callback must be thrown");
+        } catch (LadaljaException e) {
+            assertEquals("failure", e.getCause().getMessage());
+        }
+        assertEquals(0, DB.table("transaction_tests").count());
+    }
+
+    @Test
+    public void testNestedTransactionUseSavepoint() {
+        DB.transaction(new TransactionCallback<Void>() {
+            @Override
+            public Void run() {
+                insert("kept");
+                try {
+                    DB.transaction(new TransactionCallback<Void>() {
+                        @Override
+                        public Void run() {
+                            insert("lost");
+                            throw new IllegalStateException();
+                        }
+                    });
+                } catch (IllegalStateException e) {}
+                return null;
+            }
+        });
+        assertEquals(1, DB.table("transaction_tests").count());
+        assertEquals("kept", DB.table("transaction_tests").value("name"));
+    }
+
+    @Test
+    public void testManualTransaction() {
+        DB.beginTransaction();
+        insert("lost");
+        DB.rollBack();
+        DB.beginTransaction();
+        insert("kept");
+        DB.commit();
+        assertEquals(1, DB.table("transaction_tests").count());
+
+        try {
+            DB.commit();
+            fail("Commit without transaction must fail");
+        } catch (LadaljaException e) {}
+    }
+
+}
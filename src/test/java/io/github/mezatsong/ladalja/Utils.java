@@ -1,6 +1,10 @@
 package io.github.mezatsong.ladalja;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.List;
+
+import io.github.mezatsong.ladalja.query.QueryListener;
 
 class UtilsForTest {
 
@@ -13,4 +17,30 @@ class UtilsForTest {
         return DB.connection();
     }
 
+    /**
+     * Register a listener adding each query to the given list, unregister it with DB.unregister when done
+     */
+    static QueryListener recordQueries(final List<String> queries) {
+        QueryListener listener = new QueryListener() {
+
+            @Override
+            public void listenQuery(String query) {
+                queries.add(query);
+            }
+
+            @Override
+            public void listenResultSet(String query, ResultSet result) {
+
+            }
+
+            @Override
+            public void listenUpdatedRows(String query, int rows) {
+
+            }
+
+        };
+        DB.register(listener);
+        return listener;
+    }
+
 }
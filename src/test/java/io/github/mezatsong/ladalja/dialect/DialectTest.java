@@ -0,0 +1,99 @@
+package io.github.mezatsong.ladalja.dialect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DialectTest {
+
+    private static final List<String> COLUMNS = Arrays.asList("id", "name");
+
+    private static <D extends Dialect> D version(D dialect, int major, int minor) {
+        dialect.majorVersion = major;
+        dialect.minorVersion = minor;
+        return dialect;
+    }
+
+    @Test
+    public void testDetection() throws Exception {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + ClassLoader.getSystemResource("test.db").getPath());
+        try {
+            Dialect dialect = Dialect.of(connection.getMetaData());
+            assertTrue(dialect instanceof SQLiteDialect);
+            assertTrue(dialect.supportsGeneratedKeys());
+            assertTrue(dialect.toString().startsWith("SQLite 3." + connection.getMetaData().getDatabaseProductVersion().split("\\.")[1]));
+            assertFalse(dialect.supportsBatchGeneratedKeys());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testTuneUrl() {
+        assertEquals("jdbc:mysql://localhost/db?rewriteBatchedStatements=true", Dialect.tuneUrl("jdbc:mysql://localhost/db"));
+        assertEquals("jdbc:mysql://localhost/db?useSSL=false&rewriteBatchedStatements=true",
+            Dialect.tuneUrl("jdbc:mysql://localhost/db?useSSL=false"));
+        assertEquals("jdbc:mysql://localhost/db?rewriteBatchedStatements=false",
+            Dialect.tuneUrl("jdbc:mysql://localhost/db?rewriteBatchedStatements=false"));
+        assertEquals("jdbc:postgresql://localhost/db?reWriteBatchedInserts=true", Dialect.tuneUrl("jdbc:postgresql://localhost/db"));
+        assertEquals("jdbc:h2:mem:db", Dialect.tuneUrl("jdbc:h2:mem:db"));
+        assertEquals("jdbc:sqlite:test.db", Dialect.tuneUrl("jdbc:sqlite:test.db"));
+    }
+
+    @Test
+    public void testSyntax() {
+        StringBuilder sql = new StringBuilder();
+        new PostgreSQLDialect().quote(sql, "users.id");
+        new MySQLDialect().quote(sql.append(' '), "users.id");
+        assertEquals("\"users\".\"id\" `users`.`id`", sql.toString());
+
+        assertNull(new SQLiteDialect().getLock(Dialect.Lock.UPDATE));
+        assertEquals("lock in share mode", new MySQLDialect().getLock(Dialect.Lock.SHARED));
+        assertEquals("for update", version(new MySQLDialect(), 5, 7).getLock(Dialect.Lock.UPDATE_SKIP_LOCKED));
+        assertEquals("for update skip locked", version(new MySQLDialect(), 8, 0).getLock(Dialect.Lock.UPDATE_SKIP_LOCKED));
+        assertEquals("for share", new PostgreSQLDialect().getLock(Dialect.Lock.SHARED));
+        assertEquals("for update", new H2Dialect().getLock(Dialect.Lock.SHARED));
+
+        assertEquals("delete from `users`", new SQLiteDialect().truncateQuery("users"));
+        assertEquals("truncate `users`", new MySQLDialect().truncateQuery("users"));
+        assertEquals("truncate table \"users\"", new PostgreSQLDialect().truncateQuery("users"));
+
+        assertEquals(999, version(new SQLiteDialect(), 3, 15).getMaxParameters());
+        assertEquals(32766, version(new SQLiteDialect(), 3, 32).getMaxParameters());
+        assertEquals("insert into \"users\" (\"id\",\"name\") values (?,?),(?,?)", new H2Dialect().insertQuery("users", COLUMNS, 2));
+    }
+
+    @Test
+    public void testUpsert() {
+        List<String> id = Collections.singletonList("id");
+        List<String> name = Collections.singletonList("name");
+
+        assertFalse(version(new SQLiteDialect(), 3, 15).supportsUpsert());
+        assertTrue(version(new SQLiteDialect(), 3, 24).supportsUpsert());
+        assertEquals("insert into `users` (`id`,`name`) values (?,?) on conflict (`id`) do update set `name` = excluded.`name`",
+            new SQLiteDialect().upsertQuery("users", COLUMNS, 1, id, name));
+        assertEquals("insert into \"users\" (\"id\",\"name\") values (?,?) on conflict (\"id\") do nothing",
+            new PostgreSQLDialect().upsertQuery("users", COLUMNS, 1, id, Collections.<String>emptyList()));
+        assertEquals("insert into `users` (`id`,`name`) values (?,?),(?,?) on duplicate key update `name` = values(`name`)",
+            new MySQLDialect().upsertQuery("users", COLUMNS, 2, id, name));
+        MySQLDialect mySQL = version(new MySQLDialect(), 8, 0);
+        mySQL.patchVersion = 18;
+        assertFalse(mySQL.supportsRowAlias());
+        mySQL.patchVersion = 19;
+        assertEquals("insert into `users` (`id`,`name`) values (?,?),(?,?) as new on duplicate key update `name` = new.`name`",
+            mySQL.upsertQuery("users", COLUMNS, 2, id, name));
+        assertTrue(version(new MySQLDialect(), 8, 4).supportsRowAlias());
+        assertEquals("merge into \"users\" (\"id\",\"name\") key (\"id\") values (?,?)",
+            new H2Dialect().upsertQuery("users", COLUMNS, 1, id, name));
+    }
+
+}
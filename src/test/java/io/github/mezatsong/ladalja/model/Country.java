@@ -0,0 +1,32 @@
+package io.github.mezatsong.ladalja.model;
+
+import io.github.mezatsong.ladalja.ModelRepository;
+import io.github.mezatsong.ladalja.anotations.Cached;
+
+@Cached(size = 32, ttl = 60000)
+public class Country extends ModelRepository {
+    private Long id;
+    private String name;
+
+    @Override
+    public String getTable() {
+        return "countries";
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+}
@@ -0,0 +1,44 @@
+package io.github.mezatsong.ladalja.model;
+
+import io.github.mezatsong.ladalja.ModelRepository;
+import io.github.mezatsong.ladalja.anotations.Column;
+
+/**
+ * Generic on purpose: no mapper is generated for it, so it is mapped with reflection
+ */
+public class Tag<T> extends ModelRepository {
+    private Long id;
+    @Column("label")
+    private String name;
+    private Double weight;
+
+    @Override
+    public String getTable() {
+        return "tags";
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(Double weight) {
+        this.weight = weight;
+    }
+
+}
@@ -0,0 +1,196 @@
+package io.github.mezatsong.ladalja.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.mezatsong.ladalja.LadaljaException;
+
+public class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        String url = "jdbc:sqlite:" + ClassLoader.getSystemResource("test.db").getPath();
+        pool = new ConnectionPool(url, null, null, 1, 2, 200, 600000, 5);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testNestedAcquireReuseConnection() {
+        PooledConnection first = pool.acquire();
+        PooledConnection second = pool.acquire();
+        assertSame(first, second);
+        assertEquals(1, pool.getLeasedCount());
+
+        pool.release(second);
+        assertEquals(1, pool.getLeasedCount());
+        pool.release(first);
+        assertEquals(0, pool.getLeasedCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testTimeoutWhenExhausted() throws Exception {
+        final PooledConnection[] holders = new PooledConnection[1];
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                holders[0] = pool.acquire();
+            }
+        });
+        other.start();
+        other.join();
+
+        // the other thread is dead, its connection is reclaimed instead of waiting
+        PooledConnection mine = pool.acquire();
+        assertEquals(2, pool.getSize());
+
+        final boolean[] timedOut = {false};
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread blocker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.acquire();
+                acquired.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {}
+            }
+        });
+        blocker.start();
+        acquired.await();
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pool.acquire();
+                } catch (LadaljaException e) {
+                    timedOut[0] = true;
+                }
+            }
+        });
+        waiter.start();
+        waiter.join();
+        assertEquals(true, timedOut[0]);
+
+        done.countDown();
+        blocker.join();
+        pool.release(mine);
+    }
+
+    @Test
+    public void testPinUntilUnpin() {
+        PooledConnection pinned = pool.pin();
+        assertSame(pinned, pool.pin());
+        assertSame(pinned, pool.acquire());
+        pool.release(pinned);
+        assertEquals(1, pool.getLeasedCount());
+
+        pool.unpin();
+        assertEquals(0, pool.getLeasedCount());
+
+        PooledConnection next = pool.acquire();
+        assertSame(pinned, next);
+        pool.release(next);
+    }
+
+    @Test
+    public void testReleaseOnAnotherThread() throws Exception {
+        final PooledConnection first = pool.acquire();
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.release(first);
+            }
+        });
+        other.start();
+        other.join();
+        assertEquals(0, pool.getLeasedCount());
+        assertNull(pool.current());
+
+        PooledConnection next = pool.acquire();
+        assertEquals(1, pool.getLeasedCount());
+        assertEquals(0, pool.getIdleCount());
+        pool.release(next);
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    @Test
+    public void testLeakedResultSetReclaimed() throws Exception {
+        String url = "jdbc:sqlite:" + ClassLoader.getSystemResource("test.db").getPath();
+        final ConnectionPool leaking = new ConnectionPool(url, null, null, 1, 2, 2000, 600000, 5, 8, 100);
+        final ResultSet[] results = new ResultSet[2];
+        final CountDownLatch read = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread[] workers = new Thread[2];
+        try {
+            for (int i = 0; i < 2; i++) {
+                final int index = i;
+                workers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        final PooledConnection pooled = leaking.acquire();
+                        try {
+                            ResultSet result = pooled.getConnection().createStatement().executeQuery("select 1 union select 2");
+                            results[index] = ReleasingResultSet.wrap(result, pooled, new Runnable() {
+                                @Override
+                                public void run() {
+                                    leaking.release(pooled);
+                                }
+                            });
+                            results[index].next();
+                            // the ResultSet is left open while the thread is alive
+                            read.countDown();
+                            done.await();
+                        } catch (SQLException e) {
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                });
+                workers[i].start();
+            }
+            read.await();
+            assertEquals(2, leaking.getLeasedCount());
+
+            PooledConnection mine = leaking.acquire();
+            assertTrue(results[0].isClosed() || results[1].isClosed());
+            leaking.release(mine);
+        } finally {
+            done.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            leaking.close();
+        }
+    }
+
+    @Test
+    public void testClosedPoolRefuseBorrowing() {
+        pool.close();
+        try {
+            pool.acquire();
+            fail("A closed pool must refuse borrowing");
+        } catch (LadaljaException e) {
+            assertEquals(0, pool.getSize());
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package io.github.mezatsong.ladalja.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.PreparedStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+    private ConnectionPool pool;
+
+    private PooledConnection pooled;
+
+    @Before
+    public void setUp() {
+        String url = "jdbc:sqlite:" + ClassLoader.getSystemResource("test.db").getPath();
+        pool = new ConnectionPool(url, null, null, 1, 1, 200, 600000, 5, 2);
+        pooled = pool.acquire();
+    }
+
+    @After
+    public void tearDown() {
+        pool.release(pooled);
+        pool.close();
+    }
+
+    @Test
+    public void testReuseStatement() throws Exception {
+        StatementCache cache = pooled.getStatementCache();
+        PreparedStatement first = cache.prepare("select * from users where ID = ?");
+        cache.release(first);
+        PreparedStatement second = cache.prepare("select * from users where ID = ?");
+        cache.release(second);
+
+        assertSame(first, second);
+        assertEquals(1, pool.getStatementCacheStatistics().getHits());
+        assertEquals(1, pool.getStatementCacheStatistics().getMisses());
+    }
+
+    @Test
+    public void testStatementInUseIsNotShared() throws Exception {
+        StatementCache cache = pooled.getStatementCache();
+        PreparedStatement first = cache.prepare("select * from users");
+        PreparedStatement second = cache.prepare("select * from users");
+        assertNotSame(first, second);
+
+        cache.release(second);
+        assertTrue(second.isClosed());
+        cache.release(first);
+        assertEquals(false, first.isClosed());
+    }
+
+    @Test
+    public void testEvictionCloseLeastRecentlyUsed() throws Exception {
+        StatementCache cache = pooled.getStatementCache();
+        PreparedStatement users = cache.prepare("select * from users");
+        cache.release(users);
+        PreparedStatement roles = cache.prepare("select * from roles");
+        cache.release(roles);
+        cache.release(cache.prepare("select * from users"));
+        PreparedStatement games = cache.prepare("select * from games");
+        cache.release(games);
+
+        assertEquals(2, cache.size());
+        assertTrue(roles.isClosed());
+        assertEquals(false, users.isClosed());
+        assertEquals(1, pool.getStatementCacheStatistics().getEvictions());
+    }
+
+}